@@ -0,0 +1,138 @@
+package ca.corbett.extensions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the outcome of ExtensionManager.activateAllInParallel() or deactivateAllInParallel().
+ * Extensions are activated in "waves": every extension in a wave is started at the same time,
+ * and the next wave doesn't start until the previous one has finished. The waves are worked out
+ * from the activateAfter lists in each extension's AppExtensionInfo. This report lists the waves,
+ * in the order they were run, along with what happened to each extension.
+ * <p>
+ * Extensions are identified here by their fully qualified class name, as elsewhere in ExtensionManager.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ActivationReport {
+
+    /**
+     * Describes what happened to an individual extension.
+     */
+    public enum Status {
+        /**
+         * The extension's onActivate or onDeactivate returned normally.
+         */
+        SUCCEEDED,
+
+        /**
+         * The extension's onActivate or onDeactivate threw an exception.
+         */
+        FAILED,
+
+        /**
+         * The extension was still running when the deadline passed, and was interrupted.
+         */
+        TIMED_OUT,
+
+        /**
+         * The deadline passed before the extension's wave was started, so it was never invoked.
+         */
+        SKIPPED
+    }
+
+    private final List<List<String>> waves;
+    private final Map<String, Status> statuses;
+    private final Map<String, Throwable> errors;
+    private final long elapsedMillis;
+
+    public ActivationReport(List<List<String>> waves, Map<String, Status> statuses, Map<String, Throwable> errors,
+                            long elapsedMillis) {
+        List<List<String>> waveCopy = new ArrayList<>(waves.size());
+        for (List<String> wave : waves) {
+            waveCopy.add(Collections.unmodifiableList(new ArrayList<>(wave)));
+        }
+        this.waves = Collections.unmodifiableList(waveCopy);
+        this.statuses = Collections.unmodifiableMap(new LinkedHashMap<>(statuses));
+        this.errors = Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the waves in the order they were run. Each wave is a list of extension class names.
+     *
+     * @return A List of zero or more waves.
+     */
+    public List<List<String>> getWaves() {
+        return waves;
+    }
+
+    /**
+     * Returns what happened to the named extension.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     * @return The Status of that extension, or null if it was not part of this activation.
+     */
+    public Status getStatus(String className) {
+        return statuses.get(className);
+    }
+
+    /**
+     * Returns the exception thrown by the named extension, if its status is FAILED.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     * @return The exception thrown by that extension, or null.
+     */
+    public Throwable getError(String className) {
+        return errors.get(className);
+    }
+
+    public List<String> getSucceeded() {
+        return getWithStatus(Status.SUCCEEDED);
+    }
+
+    public List<String> getFailed() {
+        return getWithStatus(Status.FAILED);
+    }
+
+    public List<String> getTimedOut() {
+        return getWithStatus(Status.TIMED_OUT);
+    }
+
+    public List<String> getSkipped() {
+        return getWithStatus(Status.SKIPPED);
+    }
+
+    /**
+     * Reports whether every extension succeeded.
+     *
+     * @return true if nothing failed, timed out, or was skipped.
+     */
+    public boolean isComplete() {
+        return getSucceeded().size() == statuses.size();
+    }
+
+    /**
+     * Returns how long the whole activation took, in milliseconds.
+     *
+     * @return The elapsed wall clock time.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    private List<String> getWithStatus(Status status) {
+        List<String> list = new ArrayList<>();
+        for (Map.Entry<String, Status> entry : statuses.entrySet()) {
+            if (entry.getValue() == status) {
+                list.add(entry.getKey());
+            }
+        }
+        return list;
+    }
+}
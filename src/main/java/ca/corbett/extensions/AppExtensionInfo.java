@@ -1,11 +1,17 @@
 package ca.corbett.extensions;
 
-import ca.corbett.extras.io.FileSystemUtil;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +32,25 @@ import java.util.Objects;
  */
 public class AppExtensionInfo {
 
-    protected static Gson gson;
+    /**
+     * The largest extInfo.json document we're willing to parse, in bytes. Anything bigger is
+     * rejected as soon as we've read this much of it.
+     */
+    public static final int MAX_DOCUMENT_LENGTH = 1024 * 1024;
+
+    /**
+     * The longest value we'll accept for any single field, in characters. Documents with
+     * longer values are rejected.
+     */
+    public static final int MAX_FIELD_LENGTH = 256 * 1024;
+
+    /**
+     * Shared by all threads. Gson instances are thread-safe, and this one is created when the
+     * class is initialized, and is volatile, so it's safely published without any locking.
+     * It uses AppExtensionInfoTypeAdapter rather than reflection to read and write AppExtensionInfo.
+     * Subclasses may still assign their own Gson here (or null, to get the default back).
+     */
+    protected static volatile Gson gson = createGson();
 
     protected final String name;
     protected final String version;
@@ -37,6 +61,11 @@ public class AppExtensionInfo {
     protected final String shortDescription;
     protected final String longDescription;
     protected final Map<String, String> customFields;
+    protected final String extensionClass;
+    protected final List<String> extensionClasses;
+    protected final List<String> activateAfter;
+    protected final List<ExtensionDependency> dependencies;
+    private transient volatile VersionRange targetAppVersionRange; // parsed on first use
 
     protected AppExtensionInfo(Builder builder) {
         this.name = builder.name;
@@ -48,6 +77,10 @@ public class AppExtensionInfo {
         this.longDescription = builder.longDescription;
         this.releaseNotes = builder.releaseNotes;
         customFields = builder.customFields;
+        extensionClass = builder.extensionClass;
+        extensionClasses = builder.extensionClasses == null ? null : new ArrayList<>(builder.extensionClasses);
+        activateAfter = builder.activateAfter == null ? null : new ArrayList<>(builder.activateAfter);
+        dependencies = builder.dependencies == null ? null : new ArrayList<>(builder.dependencies);
     }
 
     public String toJson() {
@@ -56,12 +89,16 @@ public class AppExtensionInfo {
 
     /**
      * Attempts to parse an AppExtensionInfo out of the given json. Any field not mentioned in
-     * the json will be returned as null.
+     * the json will be returned as null. Documents longer than MAX_DOCUMENT_LENGTH, or with
+     * any field longer than MAX_FIELD_LENGTH, are rejected.
      *
      * @param json A json representation of an AppExtensionInfo object.
      * @return An AppExtensionInfo object, or null if parsing was not possible.
      */
     public static AppExtensionInfo fromJson(String json) {
+        if (json == null || json.length() > MAX_DOCUMENT_LENGTH) {
+            return null;
+        }
         try {
             return getGson().fromJson(json, AppExtensionInfo.class);
         }
@@ -72,7 +109,10 @@ public class AppExtensionInfo {
 
     /**
      * Attempts to parse an AppExtensionInfo instance out of json read from the given
-     * InputStream. Example usage in an extension:
+     * InputStream, which must be UTF-8. The json is parsed as it is read, rather than being
+     * read into a String first, and reading stops as soon as the document turns out to be longer
+     * than MAX_DOCUMENT_LENGTH. Documents with any field longer than MAX_FIELD_LENGTH are also
+     * rejected. The stream is not closed. Example usage in an extension:
      * <BLOCKQUOTE><PRE>
      * AppExtensionInfo.fromStream(this.getClass().getClassLoader().getResourceAsStream("/path/extInfo.json"));
      * </PRE></BLOCKQUOTE>
@@ -81,8 +121,17 @@ public class AppExtensionInfo {
      * @return An AppExtensionInfo object, or null if parsing was not possible.
      */
     public static AppExtensionInfo fromStream(InputStream stream) {
+        if (stream == null) {
+            return null;
+        }
         try {
-            return fromJson(FileSystemUtil.readStreamToString(stream));
+            JsonReader reader = new JsonReader(new InputStreamReader(new LimitedInputStream(stream, MAX_DOCUMENT_LENGTH),
+                                                                     StandardCharsets.UTF_8));
+            AppExtensionInfo info = getGson().fromJson(reader, AppExtensionInfo.class);
+            if (info == null || reader.peek() != JsonToken.END_DOCUMENT) {
+                return null; // empty, or something after the end of the document
+            }
+            return info;
         }
         catch (RuntimeException | IOException ignored) {
             return null;
@@ -105,10 +154,35 @@ public class AppExtensionInfo {
         return targetAppName;
     }
 
+    /**
+     * Returns the version of the application that this extension targets. This is usually a
+     * plain version number such as "2.1", but it can also be a range of versions that the
+     * extension works with, such as "[2.0,3.0)" or "^2.1" - see VersionRange.
+     *
+     * @return The target app version or range, as given in the extInfo.json.
+     */
     public String getTargetAppVersion() {
         return targetAppVersion;
     }
 
+    /**
+     * Returns the target app version as a parsed VersionRange. A plain version number becomes
+     * a range containing just that version. The result is parsed once and then remembered.
+     *
+     * @return A VersionRange, or null if no target app version was given.
+     * @throws IllegalArgumentException If the target app version can't be parsed.
+     */
+    public VersionRange getTargetAppVersionRange() {
+        VersionRange range = targetAppVersionRange;
+        if (range == null && targetAppVersion != null) {
+            String text = targetAppVersion.trim();
+            boolean isRange = text.startsWith("[") || text.startsWith("(") || text.startsWith("^");
+            range = isRange ? VersionRange.parse(text) : VersionRange.exactly(Version.parse(text));
+            targetAppVersionRange = range;
+        }
+        return range;
+    }
+
     public String getShortDescription() {
         return shortDescription;
     }
@@ -121,6 +195,67 @@ public class AppExtensionInfo {
         return releaseNotes;
     }
 
+    /**
+     * Returns the fully qualified class name of the extension class in this jar, if the
+     * extension declared one. When present, ExtensionManager will load only this class
+     * instead of searching the jar for a suitable extension class.
+     *
+     * @return The declared extension class name, or null if not declared.
+     */
+    public String getExtensionClass() {
+        return extensionClass;
+    }
+
+    /**
+     * Returns the fully qualified class names of all extension classes declared for this jar.
+     * A jar can provide several related extensions, which share a single class loader but are
+     * otherwise separate - each has its own AppExtensionInfo (via its getInfo() method), and
+     * can be enabled and disabled on its own. This list starts with getExtensionClass(), if set,
+     * followed by any others that were declared. Note that other extensions' dependencies on this
+     * jar are resolved before loading using the name here, not the names of the individual
+     * extensions - see DependencyResolver.
+     *
+     * @return A List of zero or more class names.
+     */
+    public List<String> getExtensionClasses() {
+        if (extensionClasses == null || extensionClasses.isEmpty()) {
+            return extensionClass == null ? Collections.emptyList() : Collections.singletonList(extensionClass);
+        }
+        List<String> list = new ArrayList<>();
+        if (extensionClass != null) {
+            list.add(extensionClass);
+        }
+        for (String className : extensionClasses) {
+            if (!list.contains(className)) {
+                list.add(className);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the names of any extensions that must finish activating before this one is
+     * activated. This only affects ordering within ExtensionManager.activateAllInParallel()
+     * and deactivateAllInParallel() - extensions named here that aren't loaded or enabled
+     * are simply ignored.
+     *
+     * @return A List of zero or more extension names (as returned by getName()).
+     */
+    public List<String> getActivateAfter() {
+        return activateAfter == null ? Collections.emptyList() : Collections.unmodifiableList(activateAfter);
+    }
+
+    /**
+     * Returns the other extensions that this extension depends on. ExtensionManager will
+     * load dependencies before the extensions that depend on them, and will refuse to load
+     * an extension whose required dependencies are missing or too old.
+     *
+     * @return A List of zero or more ExtensionDependency instances.
+     */
+    public List<ExtensionDependency> getDependencies() {
+        return dependencies == null ? Collections.emptyList() : Collections.unmodifiableList(dependencies);
+    }
+
     public List<String> getCustomFieldNames() {
         List<String> list = new ArrayList<>();
         if (customFields != null) {
@@ -146,6 +281,10 @@ public class AppExtensionInfo {
         hash = 23 * hash + Objects.hashCode(this.shortDescription);
         hash = 23 * hash + Objects.hashCode(this.longDescription);
         hash = 23 * hash + Objects.hashCode(this.customFields);
+        hash = 23 * hash + Objects.hashCode(this.extensionClass);
+        hash = 23 * hash + Objects.hashCode(this.extensionClasses);
+        hash = 23 * hash + Objects.hashCode(this.activateAfter);
+        hash = 23 * hash + Objects.hashCode(this.dependencies);
         return hash;
     }
 
@@ -185,14 +324,36 @@ public class AppExtensionInfo {
         if (!Objects.equals(this.longDescription, other.longDescription)) {
             return false;
         }
-        return Objects.equals(this.customFields, other.customFields);
+        if (!Objects.equals(this.customFields, other.customFields)) {
+            return false;
+        }
+        if (!Objects.equals(this.extensionClass, other.extensionClass)) {
+            return false;
+        }
+        if (!Objects.equals(this.extensionClasses, other.extensionClasses)) {
+            return false;
+        }
+        if (!Objects.equals(this.activateAfter, other.activateAfter)) {
+            return false;
+        }
+        return Objects.equals(this.dependencies, other.dependencies);
     }
 
     protected static Gson getGson() {
-        if (gson == null) {
-            gson = new GsonBuilder().setPrettyPrinting().create();
+        Gson current = gson;
+        if (current == null) {
+            // If two threads get here at once, they each create an identical Gson, which is harmless:
+            current = createGson();
+            gson = current;
         }
-        return gson;
+        return current;
+    }
+
+    private static Gson createGson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(AppExtensionInfo.class, new AppExtensionInfoTypeAdapter())
+                .setPrettyPrinting()
+                .create();
     }
 
     public static class Builder {
@@ -206,6 +367,10 @@ public class AppExtensionInfo {
         protected String longDescription;
         protected String releaseNotes;
         protected final Map<String, String> customFields;
+        protected String extensionClass;
+        protected List<String> extensionClasses;
+        protected List<String> activateAfter;
+        protected List<ExtensionDependency> dependencies;
 
         public Builder(String name) {
             this.name = name;
@@ -252,8 +417,96 @@ public class AppExtensionInfo {
             return this;
         }
 
+        public Builder setExtensionClass(String className) {
+            this.extensionClass = className;
+            return this;
+        }
+
+        public Builder addExtensionClass(String className) {
+            if (extensionClasses == null) {
+                extensionClasses = new ArrayList<>();
+            }
+            extensionClasses.add(className);
+            return this;
+        }
+
+        public Builder addActivateAfter(String extensionName) {
+            if (activateAfter == null) {
+                activateAfter = new ArrayList<>();
+            }
+            activateAfter.add(extensionName);
+            return this;
+        }
+
+        public Builder addDependency(String extensionName, String minimumVersion) {
+            return addDependency(new ExtensionDependency(extensionName, minimumVersion, false));
+        }
+
+        public Builder addOptionalDependency(String extensionName, String minimumVersion) {
+            return addDependency(new ExtensionDependency(extensionName, minimumVersion, true));
+        }
+
+        public Builder addDependency(ExtensionDependency dependency) {
+            if (dependencies == null) {
+                dependencies = new ArrayList<>();
+            }
+            dependencies.add(dependency);
+            return this;
+        }
+
         public AppExtensionInfo build() {
             return new AppExtensionInfo(this);
         }
     }
+
+    /**
+     * Stops reading with an IOException once more than the given number of bytes have been read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            // Leave the underlying stream for the caller to close.
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("Document is longer than " + limit + " bytes");
+            }
+        }
+    }
 }
@@ -0,0 +1,290 @@
+package ca.corbett.extensions;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hand-written Gson TypeAdapter for AppExtensionInfo, so that reading and writing
+ * extInfo.json doesn't go through Gson's reflective field binding. The json produced is the
+ * same as the reflective version: fields in declaration order, with null fields left out.
+ * Unknown fields are ignored when reading, as before.
+ * <p>
+ * String values longer than AppExtensionInfo.MAX_FIELD_LENGTH are rejected with a
+ * JsonParseException as soon as they are read, rather than after the whole document has
+ * been bound.
+ * </p>
+ * <p>
+ * Instances hold no state, so a single instance can safely be shared between threads.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class AppExtensionInfoTypeAdapter extends TypeAdapter<AppExtensionInfo> {
+
+    @Override
+    public void write(JsonWriter out, AppExtensionInfo info) throws IOException {
+        if (info == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeString(out, "name", info.name);
+        writeString(out, "version", info.version);
+        writeString(out, "targetAppName", info.targetAppName);
+        writeString(out, "targetAppVersion", info.targetAppVersion);
+        writeString(out, "author", info.author);
+        writeString(out, "releaseNotes", info.releaseNotes);
+        writeString(out, "shortDescription", info.shortDescription);
+        writeString(out, "longDescription", info.longDescription);
+        if (info.customFields != null) {
+            out.name("customFields").beginObject();
+            for (Map.Entry<String, String> entry : info.customFields.entrySet()) {
+                out.name(entry.getKey());
+                out.value(entry.getValue());
+            }
+            out.endObject();
+        }
+        writeString(out, "extensionClass", info.extensionClass);
+        writeStrings(out, "extensionClasses", info.extensionClasses);
+        writeStrings(out, "activateAfter", info.activateAfter);
+        if (info.dependencies != null) {
+            out.name("dependencies").beginArray();
+            for (ExtensionDependency dependency : info.dependencies) {
+                if (dependency == null) {
+                    out.nullValue();
+                    continue;
+                }
+                out.beginObject();
+                writeString(out, "name", dependency.name);
+                writeString(out, "version", dependency.version);
+                out.name("optional").value(dependency.optional);
+                out.endObject();
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public AppExtensionInfo read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String name = null;
+        String version = null;
+        String targetAppName = null;
+        String targetAppVersion = null;
+        String author = null;
+        String releaseNotes = null;
+        String shortDescription = null;
+        String longDescription = null;
+        Map<String, String> customFields = null;
+        String extensionClass = null;
+        List<String> extensionClasses = null;
+        List<String> activateAfter = null;
+        List<ExtensionDependency> dependencies = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = readString(in);
+                    break;
+                case "version":
+                    version = readString(in);
+                    break;
+                case "targetAppName":
+                    targetAppName = readString(in);
+                    break;
+                case "targetAppVersion":
+                    targetAppVersion = readString(in);
+                    break;
+                case "author":
+                    author = readString(in);
+                    break;
+                case "releaseNotes":
+                    releaseNotes = readString(in);
+                    break;
+                case "shortDescription":
+                    shortDescription = readString(in);
+                    break;
+                case "longDescription":
+                    longDescription = readString(in);
+                    break;
+                case "customFields":
+                    customFields = readStringMap(in);
+                    break;
+                case "extensionClass":
+                    extensionClass = readString(in);
+                    break;
+                case "extensionClasses":
+                    extensionClasses = readStrings(in);
+                    break;
+                case "activateAfter":
+                    activateAfter = readStrings(in);
+                    break;
+                case "dependencies":
+                    dependencies = readDependencies(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        AppExtensionInfo.Builder builder = new AppExtensionInfo.Builder(name)
+                .setVersion(version)
+                .setTargetAppName(targetAppName)
+                .setTargetAppVersion(targetAppVersion)
+                .setAuthor(author)
+                .setReleaseNotes(releaseNotes)
+                .setShortDescription(shortDescription)
+                .setLongDescription(longDescription)
+                .setExtensionClass(extensionClass);
+        if (customFields != null) {
+            for (Map.Entry<String, String> entry : customFields.entrySet()) {
+                builder.addCustomField(entry.getKey(), entry.getValue());
+            }
+        }
+        if (extensionClasses != null) {
+            for (String className : extensionClasses) {
+                builder.addExtensionClass(className);
+            }
+        }
+        if (activateAfter != null) {
+            for (String extensionName : activateAfter) {
+                builder.addActivateAfter(extensionName);
+            }
+        }
+        if (dependencies != null) {
+            for (ExtensionDependency dependency : dependencies) {
+                builder.addDependency(dependency);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeStrings(JsonWriter out, String name, List<String> values) throws IOException {
+        if (values != null) {
+            out.name(name).beginArray();
+            for (String value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+    }
+
+    /**
+     * Reads a string (or number, or boolean, which Gson would also have accepted for a String field),
+     * enforcing our maximum field length.
+     */
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String value = token == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString();
+        if (value.length() > AppExtensionInfo.MAX_FIELD_LENGTH) {
+            throw new JsonParseException("Value is longer than " + AppExtensionInfo.MAX_FIELD_LENGTH
+                                                 + " characters at " + in.getPath());
+        }
+        return value;
+    }
+
+    private static List<String> readStrings(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            String value = readString(in);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        in.endArray();
+        return values;
+    }
+
+    private static Map<String, String> readStringMap(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (key.length() > AppExtensionInfo.MAX_FIELD_LENGTH) {
+                throw new JsonParseException("Field name is longer than " + AppExtensionInfo.MAX_FIELD_LENGTH
+                                                     + " characters at " + in.getPath());
+            }
+            values.put(key, readString(in));
+        }
+        in.endObject();
+        return values;
+    }
+
+    private static List<ExtensionDependency> readDependencies(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<ExtensionDependency> dependencies = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            String name = null;
+            String version = null;
+            boolean optional = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        name = readString(in);
+                        break;
+                    case "version":
+                        version = readString(in);
+                        break;
+                    case "optional":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        }
+                        else {
+                            optional = in.nextBoolean();
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            dependencies.add(new ExtensionDependency(name, version, optional));
+        }
+        in.endArray();
+        return dependencies;
+    }
+}
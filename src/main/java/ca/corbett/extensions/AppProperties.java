@@ -37,6 +37,20 @@ import java.util.logging.Logger;
  * invoked save() will be correctly loaded in a disabled state - this means that their
  * property values will be loaded correctly, but they won't show up in the PropertiesDialog
  * until the extension is enabled again.
+ * <p>
+ * <b>Quarantined extensions</b><br>
+ * If ExtensionManager has a CircuitBreakerPolicy, it may disable a misbehaving extension
+ * on its own (see ExtensionManager.setCircuitBreakerPolicy). By default, such a quarantine
+ * is treated as temporary and is NOT saved - the next time the application starts, the
+ * extension will be enabled again (assuming the user hadn't disabled it). If you'd rather
+ * that quarantined extensions stay disabled across restarts until the user re-enables them,
+ * use setPersistQuarantine(true).
+ * <p>
+ * <b>Listening to ExtensionManager</b><br>
+ * Once you invoke load(), this class listens to ExtensionManager for quarantines, and for
+ * extensions that are loaded afterwards (for example, by an ExtensionDirectoryWatcher) - those
+ * are disabled straight away if they were disabled the last time you invoked save(). Invoke
+ * close() when you're done with this instance, so that ExtensionManager lets go of it.
  *
  * @author scorbo2
  * @since 2024-12-30
@@ -50,6 +64,24 @@ public abstract class AppProperties<T extends AppExtension> {
 
     private final String appName;
     private final File propsFile;
+    private volatile boolean isPersistQuarantine;
+
+    // Circuit breaker events arrive on whichever thread tripped the breaker, so access to
+    // the properties instance is guarded by this lock:
+    private final Object propsLock = new Object();
+    private final ExtensionManagerListener extensionListener = new ExtensionManagerListener() {
+        @Override
+        public void extensionLoaded(ExtensionManager<?> source, String className) {
+            AppProperties.this.extensionLoaded(className);
+        }
+
+        @Override
+        public void circuitBreakerStateChanged(ExtensionManager<?> source, String className,
+                                               CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+            extensionQuarantineChanged(className, oldState, newState);
+        }
+    };
+    private boolean isListening; // guarded by propsLock
 
     /**
      * If your application has an ExtensionManager, you can supply it here and this
@@ -66,16 +98,71 @@ public abstract class AppProperties<T extends AppExtension> {
         reinitialize();
     }
 
+    /**
+     * Decides whether an extension that is automatically disabled by ExtensionManager's
+     * circuit breaker should be saved as disabled. The default is false.
+     *
+     * @param persist true to save quarantined extensions as disabled, false to treat quarantine as temporary.
+     */
+    public void setPersistQuarantine(boolean persist) {
+        this.isPersistQuarantine = persist;
+    }
+
+    public boolean isPersistQuarantine() {
+        return isPersistQuarantine;
+    }
+
+    /**
+     * Invoked when ExtensionManager's circuit breaker quarantines an extension or lets it
+     * back in, between load() and close(). If isPersistQuarantine() is set, the new enabled
+     * status is recorded right away (it will be written out on the next save()). Otherwise,
+     * nothing is recorded. You can override this to take some other action, such as letting
+     * the user know - but note that this is invoked on whichever thread tripped the breaker.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     * @param oldState  The previous circuit breaker state.
+     * @param newState  The new circuit breaker state.
+     */
+    protected void extensionQuarantineChanged(String className, CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+        if (isPersistQuarantine) {
+            setEnabledInProps(className, newState != CircuitBreaker.State.OPEN);
+        }
+    }
+
+    /**
+     * Invoked when ExtensionManager loads an extension, between load() and close(). If our
+     * properties say that the extension is disabled, it is disabled in ExtensionManager right
+     * away, before anybody activates it. This is invoked on whichever thread loaded the extension.
+     *
+     * @param className The fully qualified class name of the extension that was loaded.
+     */
+    protected void extensionLoaded(String className) {
+        if (!isEnabledInProps(className, true)) {
+            extManager.setExtensionEnabled(className, false, false);
+        }
+    }
+
     /**
      * If you want to take some action after props are loaded (for example, to set window
      * dimensions or other ui state), you can override this method and put your updates
      * AFTER you invoke super load().
+     * <p>
+     * This also starts listening to ExtensionManager for quarantined extensions
+     * (see setPersistQuarantine) and newly loaded extensions (see extensionLoaded),
+     * until close() is invoked.
+     * </p>
      */
     public void load() {
-        try {
-            propsManager.load();
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Exception loading application properties: " + e.getMessage(), e);
+        synchronized (propsLock) {
+            try {
+                propsManager.load();
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception loading application properties: " + e.getMessage(), e);
+            }
+            if (!isListening) {
+                extManager.addExtensionManagerListener(extensionListener);
+                isListening = true;
+            }
         }
 
         // Now that we have loaded all props, figure out which extensions should be enabled/disabled:
@@ -84,7 +171,7 @@ public abstract class AppProperties<T extends AppExtension> {
             // don't care what ExtensionManager has to say on the subject... we only care
             // if the extension is disabled in our properties list, and we'll tell
             // ExtensionManager whether or not it's enabled.
-            boolean isEnabled = propsManager.getPropertiesInstance().getBoolean("extension.enabled." + extension.getClass().getName(), true);
+            boolean isEnabled = isEnabledInProps(extension.getClass().getName(), true);
             extManager.setExtensionEnabled(extension.getClass().getName(), isEnabled, false);
 
             // Also enable or disable any properties for this extension:
@@ -104,7 +191,24 @@ public abstract class AppProperties<T extends AppExtension> {
      */
     public void save() {
         reconcileExtensionEnabledStatus();
-        propsManager.save();
+        synchronized (propsLock) {
+            propsManager.save();
+        }
+    }
+
+    /**
+     * Stops listening to ExtensionManager (see load()). Invoke this when you're
+     * done with this instance - for example, before replacing it with a new one - so that
+     * ExtensionManager doesn't keep it around. This does not save anything. Invoking load()
+     * again will start listening again.
+     */
+    public void close() {
+        synchronized (propsLock) {
+            if (isListening) {
+                extManager.removeExtensionManagerListener(extensionListener);
+                isListening = false;
+            }
+        }
     }
 
     /**
@@ -173,19 +277,26 @@ public abstract class AppProperties<T extends AppExtension> {
      * of a discrepancy, the ExtensionManager will be considered the source of truth. That means
      * that this method might have the side effect of enabling/disabling an extension here
      * in AppProperties if we check and find that ExtensionManager's answer doesn't match ours.
+     * The exception is an extension that has been quarantined by ExtensionManager's circuit
+     * breaker - that is only recorded here if isPersistQuarantine() is set.
      *
      * @param extName      The class name of the extension to check.
      * @param defaultValue A value to return if the status can't be found.
      * @return Whether the named extension is enabled.
      */
     public boolean isExtensionEnabled(String extName, boolean defaultValue) {
-        boolean enabledInProps = propsManager.getPropertiesInstance().getBoolean("extension.enabled." + extName, defaultValue);
+        boolean enabledInProps = isEnabledInProps(extName, defaultValue);
 
         boolean isActuallyEnabled = extManager.isExtensionEnabled(extName);
 
+        // A temporary quarantine doesn't count as a change of opinion:
+        if (!isPersistQuarantine && extManager.getCircuitBreakerState(extName) != CircuitBreaker.State.CLOSED) {
+            return isActuallyEnabled;
+        }
+
         // If extManager has a different opinion than we do, update ourselves:
         if (enabledInProps != isActuallyEnabled) {
-            propsManager.getPropertiesInstance().setBoolean("extension.enabled." + extName, isActuallyEnabled);
+            setEnabledInProps(extName, isActuallyEnabled);
             enabledInProps = isActuallyEnabled;
         }
 
@@ -200,7 +311,7 @@ public abstract class AppProperties<T extends AppExtension> {
      * @param value   The new enabled status for that extension.
      */
     public void setExtensionEnabled(String extName, boolean value) {
-        propsManager.getPropertiesInstance().setBoolean("extension.enabled." + extName, value);
+        setEnabledInProps(extName, value);
 
         // Also notify ExtensionManager about this change:
         extManager.setExtensionEnabled(extName, value);
@@ -248,17 +359,32 @@ public abstract class AppProperties<T extends AppExtension> {
         // method can handling disabling extensions and hiding properties for those extensions.
         props.addAll(extManager.getAllEnabledExtensionProperties());
 
-        propsManager = new PropertiesManager(propsFile, props, appName + " application properties");
+        PropertiesManager newPropsManager = new PropertiesManager(propsFile, props, appName + " application properties");
+        synchronized (propsLock) {
+            propsManager = newPropsManager;
+        }
+    }
+
+    private boolean isEnabledInProps(String extName, boolean defaultValue) {
+        synchronized (propsLock) {
+            return propsManager.getPropertiesInstance().getBoolean("extension.enabled." + extName, defaultValue);
+        }
+    }
+
+    private void setEnabledInProps(String extName, boolean value) {
+        synchronized (propsLock) {
+            propsManager.getPropertiesInstance().setBoolean("extension.enabled." + extName, value);
+        }
     }
 
     /**
      * Invoked internally to reconcile the extension enabled status between our managed
      * properties list and our ExtensionManager, if we have one. These can get out of sync
-     * if the ExtensionManager enables or disables an extension. There's currently no way
-     * to "push" such changes from ExtensionManager to this class, because ExtensionManager
-     * doesn't know that we exist. So, before we do anything that requires us to know
-     * about extensions being enabled or not, we have to "pull" the statuses to ensure
-     * that our managed list is up to date with what's specified in ExtensionManager.
+     * if the ExtensionManager enables or disables an extension. The only changes that
+     * ExtensionManager "pushes" to us are circuit breaker quarantines (see load() and
+     * extensionQuarantineChanged), and only while we're listening. So, before we do anything
+     * that requires us to know about extensions being enabled or not, we have to "pull" the
+     * statuses to ensure that our managed list is up to date with what's specified in ExtensionManager.
      * <p>
      * Side note: in your app, if you need to enable or disable an extension, you can either
      * do it using ExtensionManager.setExtensionEnabled or via the setExtensionEnabled
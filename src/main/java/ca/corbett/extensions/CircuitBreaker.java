@@ -0,0 +1,170 @@
+package ca.corbett.extensions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the recent behaviour of a single extension, and decides when it should be
+ * quarantined and when it should be let back in, according to a CircuitBreakerPolicy.
+ * This class only makes the decisions - ExtensionManager is responsible for actually
+ * disabling and re-enabling the extension, and for notifying listeners.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of a circuit breaker. CLOSED means the extension is running normally,
+     * OPEN means it has been quarantined, and HALF_OPEN means it has been let back in
+     * on probation.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final CircuitBreakerPolicy policy;
+    private final byte[] window;
+    private int windowPos;
+    private int windowCount;
+    private int failureCount;
+    private int slowCount;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probeSuccesses;
+
+    public CircuitBreaker(CircuitBreakerPolicy policy) {
+        this.policy = policy;
+        this.window = new byte[policy.getWindowSize()];
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Records the outcome of a single invocation, and returns the resulting state change, if any.
+     *
+     * @param elapsedNanos How long the invocation took.
+     * @param status       The outcome of the invocation.
+     * @param now          The current System.nanoTime().
+     * @return The state change caused by this invocation, or null if the state didn't change.
+     */
+    public synchronized Transition recordCall(long elapsedNanos, DispatchResult.Status status, long now) {
+        boolean isFailure = status != DispatchResult.Status.SUCCEEDED;
+        boolean isSlow = policy.getSlowCallMillis() > 0
+                && elapsedNanos > TimeUnit.MILLISECONDS.toNanos(policy.getSlowCallMillis());
+        switch (state) {
+            case CLOSED:
+                addToWindow((byte)((isFailure ? FAILED : 0) | (isSlow ? SLOW : 0)));
+                if (windowCount >= policy.getMinimumCalls() && isThresholdExceeded()) {
+                    return open(now);
+                }
+                return null;
+
+            case HALF_OPEN:
+                if (isFailure || isSlow) {
+                    return open(now);
+                }
+                if (++probeSuccesses >= policy.getHalfOpenProbeCount()) {
+                    clearWindow();
+                    return changeState(State.CLOSED);
+                }
+                return null;
+
+            default:
+                // Stragglers from before we opened don't count for anything:
+                return null;
+        }
+    }
+
+    /**
+     * If this breaker is open and has been for long enough, moves it to half-open.
+     *
+     * @param now The current System.nanoTime().
+     * @return The resulting state change, or null if the state didn't change.
+     */
+    public synchronized Transition checkOpenTimeout(long now) {
+        if (state != State.OPEN || now - openedAt < TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis())) {
+            return null;
+        }
+        probeSuccesses = 0;
+        return changeState(State.HALF_OPEN);
+    }
+
+    /**
+     * Forces this breaker back to the closed state and forgets its history.
+     *
+     * @return The resulting state change, or null if it was already closed.
+     */
+    public synchronized Transition reset() {
+        clearWindow();
+        return state == State.CLOSED ? null : changeState(State.CLOSED);
+    }
+
+    private boolean isThresholdExceeded() {
+        if ((double)failureCount / windowCount >= policy.getFailureRateThreshold()) {
+            return true;
+        }
+        return policy.getSlowCallMillis() > 0
+                && (double)slowCount / windowCount >= policy.getSlowCallRateThreshold();
+    }
+
+    private Transition open(long now) {
+        openedAt = now;
+        clearWindow();
+        return changeState(State.OPEN);
+    }
+
+    private Transition changeState(State newState) {
+        Transition transition = new Transition(state, newState);
+        state = newState;
+        return transition;
+    }
+
+    private void addToWindow(byte flags) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowPos];
+            failureCount -= (evicted & FAILED) != 0 ? 1 : 0;
+            slowCount -= (evicted & SLOW) != 0 ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        window[windowPos] = flags;
+        failureCount += (flags & FAILED) != 0 ? 1 : 0;
+        slowCount += (flags & SLOW) != 0 ? 1 : 0;
+        windowPos = (windowPos + 1) % window.length;
+    }
+
+    private void clearWindow() {
+        windowPos = 0;
+        windowCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+
+    /**
+     * Describes a single change of state.
+     */
+    public static final class Transition {
+        private final State oldState;
+        private final State newState;
+
+        Transition(State oldState, State newState) {
+            this.oldState = oldState;
+            this.newState = newState;
+        }
+
+        public State getOldState() {
+            return oldState;
+        }
+
+        public State getNewState() {
+            return newState;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ca.corbett.extensions;
+
+/**
+ * Describes when ExtensionManager should automatically quarantine a misbehaving extension,
+ * and when it should let it back in. ExtensionManager keeps a rolling window of the most
+ * recent hook invocations for each extension (see ExtensionManager.dispatch()). Once that
+ * window holds at least minimumCalls invocations, the circuit breaker for that extension
+ * "opens" (that is, the extension is disabled) if either:
+ * <ul>
+ *     <li>the fraction of invocations that failed or timed out reaches failureRateThreshold, or</li>
+ *     <li>slowCallMillis is set, and the fraction of invocations that took longer than that
+ *     reaches slowCallRateThreshold.</li>
+ * </ul>
+ * After openMillis has elapsed, the circuit becomes "half-open": the extension is re-enabled,
+ * and the next few invocations act as probes. If halfOpenProbeCount of them in a row succeed
+ * in good time, the circuit closes again. If any of them fails or is slow, the circuit opens
+ * again for another openMillis.
+ * <p>
+ * Use the Builder to create instances - any value not specified gets a sensible default.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class CircuitBreakerPolicy {
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallMillis;
+    private final double slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenProbeCount;
+    private final boolean notifyExtension;
+
+    protected CircuitBreakerPolicy(Builder builder) {
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallMillis = builder.slowCallMillis;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.openMillis = builder.openMillis;
+        this.halfOpenProbeCount = builder.halfOpenProbeCount;
+        this.notifyExtension = builder.notifyExtension;
+    }
+
+    /**
+     * The number of most recent invocations that are considered when deciding whether to open.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * The number of invocations that must be in the window before the circuit can open.
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * The fraction (0 to 1) of failed or timed out invocations that will open the circuit.
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Invocations that take longer than this are considered slow. Zero means latency is not checked.
+     */
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    /**
+     * The fraction (0 to 1) of slow invocations that will open the circuit.
+     */
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * How long the circuit stays open before we probe the extension again.
+     */
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    /**
+     * The number of consecutive good probe invocations needed to close the circuit again.
+     */
+    public int getHalfOpenProbeCount() {
+        return halfOpenProbeCount;
+    }
+
+    /**
+     * Whether the extension is sent onDeactivate/onActivate when it is quarantined and let back in.
+     */
+    public boolean isNotifyExtension() {
+        return notifyExtension;
+    }
+
+    public static class Builder {
+
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+        private double failureRateThreshold = 0.5;
+        private long slowCallMillis = 0;
+        private double slowCallRateThreshold = 0.5;
+        private long openMillis = 30_000;
+        private int halfOpenProbeCount = 3;
+        private boolean notifyExtension = true;
+
+        public Builder setWindowSize(int windowSize) {
+            this.windowSize = Math.max(1, windowSize);
+            return this;
+        }
+
+        public Builder setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = Math.max(1, minimumCalls);
+            return this;
+        }
+
+        public Builder setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder setSlowCallMillis(long slowCallMillis) {
+            this.slowCallMillis = Math.max(0, slowCallMillis);
+            return this;
+        }
+
+        public Builder setSlowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder setOpenMillis(long openMillis) {
+            this.openMillis = Math.max(0, openMillis);
+            return this;
+        }
+
+        public Builder setHalfOpenProbeCount(int halfOpenProbeCount) {
+            this.halfOpenProbeCount = Math.max(1, halfOpenProbeCount);
+            return this;
+        }
+
+        public Builder setNotifyExtension(boolean notifyExtension) {
+            this.notifyExtension = notifyExtension;
+            return this;
+        }
+
+        public CircuitBreakerPolicy build() {
+            return new CircuitBreakerPolicy(this);
+        }
+    }
+}
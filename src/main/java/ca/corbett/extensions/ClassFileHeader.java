@@ -0,0 +1,221 @@
+package ca.corbett.extensions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A very lightweight reader for the header portion of a compiled class file. We parse
+ * just enough of the constant pool to find out the name of the class, its superclass,
+ * and the interfaces it directly implements, along with its access flags. This lets
+ * ExtensionManager work out which classes in a jar implement a given extension type
+ * without asking a ClassLoader to actually define (and link) every class in the jar.
+ * <p>
+ * Class names are returned in internal form (slashes rather than dots), exactly as they
+ * appear in the class file. Only the handful of constant pool strings that we actually
+ * need are decoded - everything else is skipped over.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final int accessFlags;
+    private final String className;
+    private final String superClassName;
+    private final List<String> interfaceNames;
+
+    private ClassFileHeader(int accessFlags, String className, String superClassName, List<String> interfaceNames) {
+        this.accessFlags = accessFlags;
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = interfaceNames;
+    }
+
+    /**
+     * Reads a class file header from the given stream. The stream is read to the end,
+     * but it is not closed.
+     *
+     * @param in An InputStream positioned at the start of a class file.
+     * @return A ClassFileHeader describing the class.
+     * @throws IOException If the stream can't be read or is not a valid class file.
+     */
+    public static ClassFileHeader read(InputStream in) throws IOException {
+        return parse(in.readAllBytes());
+    }
+
+    /**
+     * Parses a class file header out of the given class file bytes.
+     *
+     * @param data The contents of a class file.
+     * @return A ClassFileHeader describing the class.
+     * @throws IOException If the data is not a valid class file.
+     */
+    public static ClassFileHeader parse(byte[] data) throws IOException {
+        try {
+            if (readInt(data, 0) != MAGIC) {
+                throw new IOException("Not a class file.");
+            }
+
+            // Walk the constant pool, remembering where each entry starts so that we
+            // can come back and decode only the few strings we actually care about:
+            int poolCount = readU2(data, 8);
+            int[] offsets = new int[poolCount];
+            int pos = 10;
+            for (int i = 1; i < poolCount; i++) {
+                offsets[i] = pos;
+                int tag = data[pos] & 0xFF;
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        pos += 3 + readU2(data, pos + 1);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        pos += 3;
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        pos += 4;
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        pos += 5;
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        pos += 9;
+                        i++; // these take up two slots, for historical reasons
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " at offset " + pos);
+                }
+            }
+
+            int accessFlags = readU2(data, pos);
+            String className = classNameAt(data, offsets, readU2(data, pos + 2));
+            int superIndex = readU2(data, pos + 4);
+            String superClassName = superIndex == 0 ? null : classNameAt(data, offsets, superIndex);
+            int interfaceCount = readU2(data, pos + 6);
+            List<String> interfaces = new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaces.add(classNameAt(data, offsets, readU2(data, pos + 8 + (i * 2))));
+            }
+            return new ClassFileHeader(accessFlags, className, superClassName, Collections.unmodifiableList(interfaces));
+        } catch (IndexOutOfBoundsException e) {
+            // Array or string offsets running off the end of the data:
+            throw new IOException("Truncated or malformed class file.", e);
+        }
+    }
+
+    /**
+     * Returns the name of this class in internal form (for example "java/lang/String").
+     *
+     * @return The internal name of this class.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the name of the superclass in internal form, or null if this is java.lang.Object
+     * (or a module-info).
+     *
+     * @return The internal name of the superclass, or null.
+     */
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * Returns the internal names of all interfaces directly implemented by this class.
+     *
+     * @return A List of zero or more internal class names.
+     */
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (accessFlags & ACC_ABSTRACT) != 0;
+    }
+
+    /**
+     * Reports whether this class could be instantiated - that is, it is not an interface,
+     * an annotation, a module descriptor, or an abstract class.
+     *
+     * @return true if this is a concrete class.
+     */
+    public boolean isConcrete() {
+        return (accessFlags & (ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION | ACC_MODULE)) == 0;
+    }
+
+    private static String classNameAt(byte[] data, int[] offsets, int classIndex) throws IOException {
+        int classOffset = offsets[classIndex];
+        if ((data[classOffset] & 0xFF) != CONSTANT_CLASS) {
+            throw new IOException("Expected a class reference at constant pool index " + classIndex);
+        }
+        int utf8Offset = offsets[readU2(data, classOffset + 1)];
+        if ((data[utf8Offset] & 0xFF) != CONSTANT_UTF8) {
+            throw new IOException("Expected a string at constant pool offset " + utf8Offset);
+        }
+        int length = readU2(data, utf8Offset + 1);
+
+        // Class names are stored in "modified UTF-8", which is identical to regular UTF-8
+        // except for the null character and supplementary characters, neither of which
+        // shows up in class names in practice:
+        return new String(data, utf8Offset + 3, length, StandardCharsets.UTF_8);
+    }
+
+    private static int readU2(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (readU2(data, offset) << 16) | readU2(data, offset + 2);
+    }
+}
@@ -0,0 +1,140 @@
+package ca.corbett.extensions;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Describes how extension class loaders should delegate, on a package by package basis.
+ * Normally, an extension class loader is "parent-first": when asked for a class, it asks its
+ * parent (the shared library class loader, if there is one, and then the application) before
+ * looking in the extension jar itself. That way, a library that has been placed in the shared
+ * library directory (see ExtensionManager.setSharedLibraryDirectory) is loaded once and shared
+ * by every extension, even if some extensions also bundle their own copy of it.
+ * <p>
+ * Sometimes, though, an extension really does need its own version of a library - for
+ * example, because it was built against an incompatible version of it. Packages marked here as
+ * "child-first" are looked for in the extension jar first, and only then in the parent.
+ * </p>
+ * <p>
+ * Package rules apply to the named package and all of its subpackages, and the most specific
+ * rule wins. So you can mark "com.example" as child-first but "com.example.api" as parent-first.
+ * Classes in the platform packages (java.*, javax.* and jdk.*), in this library's own
+ * ca.corbett.extensions package, and in the ca.corbett.extras packages that the AppExtension API
+ * exposes (AbstractProperty and friends) are always parent-first regardless of any rules here,
+ * because extensions must share those with the application. An extension jar that bundles its
+ * own copy of any of them simply has that copy ignored. The same goes for your application's own extension type - don't mark its
+ * package as child-first, or loaded extensions won't be recognized as instances of it.
+ * </p>
+ * <p>
+ * Use the Builder to create instances. With no rules, everything is parent-first.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ClassLoadingPolicy {
+
+    private static final String[] ALWAYS_PARENT_FIRST = {
+            "java", "javax", "jdk", AppExtension.class.getPackageName(), "ca.corbett.extras"
+    };
+
+    private final Map<String, Boolean> packageRules;
+    private final boolean childFirstByDefault;
+
+    protected ClassLoadingPolicy(Builder builder) {
+        this.packageRules = Collections.unmodifiableMap(new TreeMap<>(builder.packageRules));
+        this.childFirstByDefault = builder.childFirstByDefault;
+    }
+
+    /**
+     * Reports whether the given class (or resource, with '/' in place of '.') should be looked
+     * for in the extension jar before asking the parent class loader.
+     *
+     * @param name A fully qualified class name.
+     * @return true to load child-first, false to load parent-first.
+     */
+    public boolean isChildFirst(String name) {
+        for (String pkg : ALWAYS_PARENT_FIRST) {
+            if (isInPackage(name, pkg)) {
+                return false;
+            }
+        }
+        if (packageRules.isEmpty()) {
+            return childFirstByDefault;
+        }
+
+        // Find the most specific rule that matches - that is, the longest matching package name:
+        String bestMatch = null;
+        for (String pkg : packageRules.keySet()) {
+            if (isInPackage(name, pkg) && (bestMatch == null || pkg.length() > bestMatch.length())) {
+                bestMatch = pkg;
+            }
+        }
+        return bestMatch == null ? childFirstByDefault : packageRules.get(bestMatch);
+    }
+
+    /**
+     * Returns the package rules, sorted by package name. A value of true means child-first.
+     *
+     * @return An unmodifiable map of package name to child-first flag.
+     */
+    public Map<String, Boolean> getPackageRules() {
+        return packageRules;
+    }
+
+    /**
+     * Whether packages that don't match any rule are loaded child-first.
+     */
+    public boolean isChildFirstByDefault() {
+        return childFirstByDefault;
+    }
+
+    private static boolean isInPackage(String name, String pkg) {
+        return name.startsWith(pkg) && (name.length() == pkg.length() || name.charAt(pkg.length()) == '.');
+    }
+
+    public static class Builder {
+
+        private final Map<String, Boolean> packageRules = new TreeMap<>();
+        private boolean childFirstByDefault = false;
+
+        /**
+         * Marks the given package, and its subpackages, as child-first.
+         */
+        public Builder addChildFirstPackage(String packageName) {
+            packageRules.put(normalize(packageName), Boolean.TRUE);
+            return this;
+        }
+
+        /**
+         * Marks the given package, and its subpackages, as parent-first. This is only needed
+         * to carve out an exception to a child-first rule, or to setChildFirstByDefault(true).
+         */
+        public Builder addParentFirstPackage(String packageName) {
+            packageRules.put(normalize(packageName), Boolean.FALSE);
+            return this;
+        }
+
+        /**
+         * Sets whether packages that don't match any rule should be loaded child-first.
+         * The default is false.
+         */
+        public Builder setChildFirstByDefault(boolean childFirstByDefault) {
+            this.childFirstByDefault = childFirstByDefault;
+            return this;
+        }
+
+        public ClassLoadingPolicy build() {
+            return new ClassLoadingPolicy(this);
+        }
+
+        private static String normalize(String packageName) {
+            String pkg = packageName.trim();
+            while (pkg.endsWith(".") || pkg.endsWith("*")) {
+                pkg = pkg.substring(0, pkg.length() - 1);
+            }
+            return pkg;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package ca.corbett.extensions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out which candidate extension jars can actually be loaded, and in what order, based
+ * on the dependencies declared in their AppExtensionInfo. This is done purely from the
+ * extInfo.json metadata, before any class loaders are created, so that extensions that can't
+ * possibly work are skipped without the expense of loading them.
+ * <p>
+ * A candidate is rejected if any of its required dependencies is not satisfied, either by
+ * another candidate that is not itself rejected or by an extension that is already loaded.
+ * Rejection cascades: if A requires B and B is rejected, then A is rejected too. Candidates
+ * whose required dependencies form a cycle are all rejected, since there is no order in
+ * which they could be loaded - unless one of those dependencies can also be satisfied by some
+ * other candidate outside the cycle, which breaks it. Optional dependencies only affect load order.
+ * </p>
+ * <p>
+ * The surviving candidates are put in load order: each extension comes after any candidates
+ * that satisfy its dependencies (required or optional), and otherwise the original order of
+ * the candidates is preserved.
+ * </p>
+ * <p>
+ * Candidates are matched against dependencies using the name and version in the jar's
+ * extInfo.json. A jar that provides several extensions (see AppExtensionInfo.getExtensionClasses())
+ * only has one extInfo.json, and the names of the individual extensions in it aren't known until
+ * they are loaded - so, a dependency on such a jar has to use the name in its extInfo.json.
+ * A dependency on the name of one of the other extensions in it can only be satisfied once
+ * that jar has been loaded, by a later resolve().
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class DependencyResolver {
+
+    private DependencyResolver() {
+    }
+
+    /**
+     * Resolves dependencies among the given candidates.
+     *
+     * @param candidates A Map of jar file to the AppExtensionInfo found in it. Iteration order is respected.
+     * @param available  A Map of extension name to version for extensions that are already loaded,
+     *                   and which can therefore satisfy dependencies. ExtensionManager includes both
+     *                   the extInfo.json name of each loaded jar and the names of the individual
+     *                   extensions in it. Can be empty.
+     * @return A Result containing the load order and the reason for each rejection.
+     */
+    public static Result resolve(Map<File, AppExtensionInfo> candidates, Map<String, String> available) {
+        Map<File, AppExtensionInfo> remaining = new LinkedHashMap<>(candidates);
+        Map<File, String> rejected = new LinkedHashMap<>();
+
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = rejectUnsatisfied(remaining, available, rejected);
+            isChanged |= rejectCycles(remaining, available, rejected);
+        }
+
+        return new Result(sortForLoading(remaining, available), rejected);
+    }
+
+    /**
+     * Rejects every remaining candidate that has a required dependency that nobody can satisfy,
+     * and keeps going until no more candidates are rejected.
+     */
+    private static boolean rejectUnsatisfied(Map<File, AppExtensionInfo> remaining, Map<String, String> available,
+                                             Map<File, String> rejected) {
+        boolean isAnyRejected = false;
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = false;
+            for (Map.Entry<File, AppExtensionInfo> entry : new ArrayList<>(remaining.entrySet())) {
+                for (ExtensionDependency dependency : entry.getValue().getDependencies()) {
+                    if (dependency.isOptional()) {
+                        continue;
+                    }
+                    if (!isAvailable(dependency, available) && findProviders(dependency, entry.getKey(), remaining).isEmpty()) {
+                        remaining.remove(entry.getKey());
+                        rejected.put(entry.getKey(), "required dependency " + dependency + " is not available");
+                        isChanged = true;
+                        isAnyRejected = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return isAnyRejected;
+    }
+
+    /**
+     * Finds cycles among the required dependencies of the remaining candidates, and rejects
+     * everything caught in one. First we work out which candidates can be loaded in some order
+     * (those with every required dependency satisfied by something that can itself be loaded,
+     * or that is already loaded). Everything else is stuck, and only dependencies between stuck
+     * candidates can form a cycle - a dependency that some loadable candidate satisfies doesn't
+     * hold anything up, even if another of its providers is stuck.
+     */
+    private static boolean rejectCycles(Map<File, AppExtensionInfo> remaining, Map<String, String> available,
+                                        Map<File, String> rejected) {
+        Set<File> loadable = findLoadable(remaining, available);
+        if (loadable.size() == remaining.size()) {
+            return false;
+        }
+        Map<File, Set<File>> edges = new LinkedHashMap<>();
+        for (Map.Entry<File, AppExtensionInfo> entry : remaining.entrySet()) {
+            if (loadable.contains(entry.getKey())) {
+                continue;
+            }
+            Set<File> targets = new LinkedHashSet<>();
+            for (ExtensionDependency dependency : entry.getValue().getDependencies()) {
+                if (!dependency.isOptional() && !isAvailable(dependency, available)) {
+                    targets.addAll(findProviders(dependency, entry.getKey(), remaining));
+                }
+            }
+            edges.put(entry.getKey(), targets);
+        }
+
+        boolean isAnyRejected = false;
+        for (List<File> cycle : new CycleFinder(edges).findCycles()) {
+            List<String> names = new ArrayList<>(cycle.size());
+            for (File jar : cycle) {
+                names.add(remaining.get(jar).getName());
+            }
+            for (File jar : cycle) {
+                rejected.put(jar, "dependency cycle among " + String.join(", ", names));
+            }
+            remaining.keySet().removeAll(cycle);
+            isAnyRejected = true;
+        }
+        return isAnyRejected;
+    }
+
+    /**
+     * Returns the candidates whose required dependencies can all be satisfied, either by an
+     * extension that's already loaded or by another candidate that can itself be loaded.
+     */
+    private static Set<File> findLoadable(Map<File, AppExtensionInfo> remaining, Map<String, String> available) {
+        Set<File> loadable = new LinkedHashSet<>();
+        boolean isChanged = true;
+        while (isChanged) {
+            isChanged = false;
+            for (Map.Entry<File, AppExtensionInfo> entry : remaining.entrySet()) {
+                if (!loadable.contains(entry.getKey())
+                        && isSatisfiedBy(entry.getKey(), entry.getValue(), loadable, remaining, available)) {
+                    loadable.add(entry.getKey());
+                    isChanged = true;
+                }
+            }
+        }
+        return loadable;
+    }
+
+    /**
+     * Reports whether every required dependency of the given candidate is either already loaded,
+     * or satisfied by one of the given candidates.
+     */
+    private static boolean isSatisfiedBy(File jar, AppExtensionInfo info, Set<File> candidates,
+                                         Map<File, AppExtensionInfo> remaining, Map<String, String> available) {
+        for (ExtensionDependency dependency : info.getDependencies()) {
+            if (dependency.isOptional() || isAvailable(dependency, available)) {
+                continue;
+            }
+            if (Collections.disjoint(findProviders(dependency, jar, remaining), candidates)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the given candidates in load order, so that each one comes after any of the
+     * others that satisfy its dependencies. If that isn't possible (because optional
+     * dependencies form a cycle, or a dependency has several providers), we take the
+     * earliest remaining candidate whose required dependencies are already satisfied.
+     */
+    private static List<File> sortForLoading(Map<File, AppExtensionInfo> remaining, Map<String, String> available) {
+        Map<File, Set<File>> waitingOn = new LinkedHashMap<>();
+        for (Map.Entry<File, AppExtensionInfo> entry : remaining.entrySet()) {
+            Set<File> providers = new LinkedHashSet<>();
+            for (ExtensionDependency dependency : entry.getValue().getDependencies()) {
+                providers.addAll(findProviders(dependency, entry.getKey(), remaining));
+            }
+            waitingOn.put(entry.getKey(), providers);
+        }
+
+        List<File> loadOrder = new ArrayList<>(remaining.size());
+        while (!waitingOn.isEmpty()) {
+            File next = null;
+            for (Map.Entry<File, Set<File>> entry : waitingOn.entrySet()) {
+                if (Collections.disjoint(entry.getValue(), waitingOn.keySet())) {
+                    next = entry.getKey();
+                    break;
+                }
+            }
+            if (next == null) {
+                Set<File> loaded = new LinkedHashSet<>(loadOrder);
+                for (File candidate : waitingOn.keySet()) {
+                    if (isSatisfiedBy(candidate, remaining.get(candidate), loaded, remaining, available)) {
+                        next = candidate;
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                next = waitingOn.keySet().iterator().next();
+            }
+            waitingOn.remove(next);
+            loadOrder.add(next);
+        }
+        return loadOrder;
+    }
+
+    private static boolean isAvailable(ExtensionDependency dependency, Map<String, String> available) {
+        return available.containsKey(dependency.getName())
+                && dependency.isSatisfiedBy(dependency.getName(), available.get(dependency.getName()));
+    }
+
+    private static List<File> findProviders(ExtensionDependency dependency, File dependent, Map<File, AppExtensionInfo> remaining) {
+        List<File> providers = new ArrayList<>(1);
+        for (Map.Entry<File, AppExtensionInfo> entry : remaining.entrySet()) {
+            AppExtensionInfo info = entry.getValue();
+            if (!entry.getKey().equals(dependent) && dependency.isSatisfiedBy(info.getName(), info.getVersion())) {
+                providers.add(entry.getKey());
+            }
+        }
+        return providers;
+    }
+
+    /**
+     * Finds the strongly connected components of a small directed graph (Tarjan's algorithm),
+     * and reports those that contain a cycle.
+     */
+    private static class CycleFinder {
+
+        private final Map<File, Set<File>> edges;
+        private final Map<File, Integer> index = new HashMap<>();
+        private final Map<File, Integer> lowLink = new HashMap<>();
+        private final List<File> stack = new ArrayList<>();
+        private final Set<File> onStack = new LinkedHashSet<>();
+        private final List<List<File>> cycles = new ArrayList<>();
+        private int nextIndex;
+
+        CycleFinder(Map<File, Set<File>> edges) {
+            this.edges = edges;
+        }
+
+        List<List<File>> findCycles() {
+            for (File node : edges.keySet()) {
+                if (!index.containsKey(node)) {
+                    visit(node);
+                }
+            }
+            return cycles;
+        }
+
+        private void visit(File node) {
+            index.put(node, nextIndex);
+            lowLink.put(node, nextIndex);
+            nextIndex++;
+            stack.add(node);
+            onStack.add(node);
+
+            for (File target : edges.get(node)) {
+                if (!index.containsKey(target)) {
+                    visit(target);
+                    lowLink.put(node, Math.min(lowLink.get(node), lowLink.get(target)));
+                } else if (onStack.contains(target)) {
+                    lowLink.put(node, Math.min(lowLink.get(node), index.get(target)));
+                }
+            }
+
+            if (lowLink.get(node).equals(index.get(node))) {
+                List<File> component = new ArrayList<>();
+                File member;
+                do {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    component.add(0, member);
+                } while (!member.equals(node));
+                if (component.size() > 1) {
+                    cycles.add(component);
+                }
+            }
+        }
+    }
+
+    /**
+     * The outcome of dependency resolution.
+     */
+    public static class Result {
+
+        private final List<File> loadOrder;
+        private final Map<File, String> rejected;
+
+        public Result(List<File> loadOrder, Map<File, String> rejected) {
+            this.loadOrder = Collections.unmodifiableList(new ArrayList<>(loadOrder));
+            this.rejected = Collections.unmodifiableMap(new LinkedHashMap<>(rejected));
+        }
+
+        /**
+         * Returns the jar files that can be loaded, in the order in which they should be loaded.
+         *
+         * @return A List of zero or more jar files.
+         */
+        public List<File> getLoadOrder() {
+            return loadOrder;
+        }
+
+        /**
+         * Returns the jar files that should not be loaded, along with a human-readable reason for each.
+         *
+         * @return A Map of jar file to rejection reason.
+         */
+        public Map<File, String> getRejected() {
+            return rejected;
+        }
+    }
+}
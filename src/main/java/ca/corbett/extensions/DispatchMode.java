@@ -0,0 +1,29 @@
+package ca.corbett.extensions;
+
+/**
+ * Controls how ExtensionManager.dispatch() invokes a hook on each enabled extension.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public enum DispatchMode {
+
+    /**
+     * Invoke the hook on each extension one at a time, in extension name order.
+     * If no timeout is given, the hook is invoked directly on the calling thread.
+     */
+    SERIAL,
+
+    /**
+     * Invoke the hook on all extensions at once, using the dispatch Executor, and wait
+     * for them all to finish (or time out). Results are still reported in extension name order.
+     */
+    PARALLEL,
+
+    /**
+     * Invoke the hook on each extension one at a time, in extension name order, and stop
+     * as soon as one of them returns a non-null result. Extensions that throw or time out
+     * are skipped over.
+     */
+    FIRST_RESULT
+}
@@ -0,0 +1,162 @@
+package ca.corbett.extensions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the aggregated outcome of dispatching a hook to some set of extensions
+ * via ExtensionManager.dispatch(). There is one Outcome for each extension that the hook
+ * was actually invoked on, in extension name order, regardless of the order in which the
+ * invocations finished.
+ *
+ * @param <T> The extension type (or capability type, if dispatching by type).
+ * @param <R> The type of result returned by the hook.
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class DispatchResult<T, R> {
+
+    /**
+     * Describes how an individual hook invocation turned out.
+     */
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT
+    }
+
+    private final String hookName;
+    private final List<Outcome<T, R>> outcomes;
+
+    public DispatchResult(String hookName, List<Outcome<T, R>> outcomes) {
+        this.hookName = hookName;
+        this.outcomes = Collections.unmodifiableList(new ArrayList<>(outcomes));
+    }
+
+    public String getHookName() {
+        return hookName;
+    }
+
+    /**
+     * Returns all outcomes, one per extension that the hook was invoked on, in extension name order.
+     *
+     * @return A List of zero or more Outcomes.
+     */
+    public List<Outcome<T, R>> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * Returns the non-null results of all successful invocations, in extension name order.
+     *
+     * @return A List of zero or more results.
+     */
+    public List<R> getResults() {
+        List<R> results = new ArrayList<>(outcomes.size());
+        for (Outcome<T, R> outcome : outcomes) {
+            if (outcome.getStatus() == Status.SUCCEEDED && outcome.getResult() != null) {
+                results.add(outcome.getResult());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the first non-null result in extension name order, or null if there wasn't one.
+     * This is the natural way to read the result of a FIRST_RESULT dispatch.
+     *
+     * @return The first non-null result, or null.
+     */
+    public R getFirstResult() {
+        for (Outcome<T, R> outcome : outcomes) {
+            if (outcome.getStatus() == Status.SUCCEEDED && outcome.getResult() != null) {
+                return outcome.getResult();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all outcomes that either failed or timed out.
+     *
+     * @return A List of zero or more failed Outcomes.
+     */
+    public List<Outcome<T, R>> getFailures() {
+        List<Outcome<T, R>> failures = new ArrayList<>();
+        for (Outcome<T, R> outcome : outcomes) {
+            if (outcome.getStatus() != Status.SUCCEEDED) {
+                failures.add(outcome);
+            }
+        }
+        return failures;
+    }
+
+    public boolean hasFailures() {
+        for (Outcome<T, R> outcome : outcomes) {
+            if (outcome.getStatus() != Status.SUCCEEDED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The result of invoking a hook on a single extension.
+     *
+     * @param <T> The extension type.
+     * @param <R> The type of result returned by the hook.
+     */
+    public static class Outcome<T, R> {
+
+        private final T extension;
+        private final Status status;
+        private final R result;
+        private final Throwable error;
+        private final long elapsedNanos;
+
+        public Outcome(T extension, Status status, R result, Throwable error, long elapsedNanos) {
+            this.extension = extension;
+            this.status = status;
+            this.result = result;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public T getExtension() {
+            return extension;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns whatever the hook returned, or null if it failed or timed out.
+         *
+         * @return The hook result, or null.
+         */
+        public R getResult() {
+            return result;
+        }
+
+        /**
+         * Returns whatever the hook threw, if it failed.
+         *
+         * @return The error, or null if the hook didn't fail.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Returns how long we spent on this invocation. For invocations that timed out,
+         * this is how long we waited before giving up.
+         *
+         * @return The elapsed time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ca.corbett.extensions;
+
+import java.io.File;
+
+/**
+ * Pairs up a candidate extension jar file with the AppExtensionInfo that was found in it.
+ * These are produced by ExtensionManager.streamCandidateExtensionJars(), and can be handed
+ * to ExtensionManager.loadExtension() to load the extension from that jar.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionCandidate {
+
+    private final File jarFile;
+    private final AppExtensionInfo extInfo;
+
+    public ExtensionCandidate(File jarFile, AppExtensionInfo extInfo) {
+        this.jarFile = jarFile;
+        this.extInfo = extInfo;
+    }
+
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    public AppExtensionInfo getExtInfo() {
+        return extInfo;
+    }
+
+    @Override
+    public String toString() {
+        return jarFile.getAbsolutePath() + " (" + extInfo.getName() + " " + extInfo.getVersion() + ")";
+    }
+}
@@ -0,0 +1,67 @@
+package ca.corbett.extensions;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * The class loader that ExtensionManager creates for each extension jar. It behaves like an
+ * ordinary URLClassLoader (that is, parent-first), except for the packages that the given
+ * ClassLoadingPolicy marks as child-first: classes and resources in those packages are looked
+ * for in the extension jar before asking the parent.
+ * <p>
+ * The parent is the shared library class loader if ExtensionManager has one (see
+ * ExtensionManager.setSharedLibraryDirectory), or the system class loader otherwise.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final ClassLoadingPolicy policy;
+
+    public ExtensionClassLoader(String name, URL[] urls, ClassLoader parent, ClassLoadingPolicy policy) {
+        super(name, urls, parent);
+        this.policy = policy;
+    }
+
+    public ClassLoadingPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!policy.isChildFirst(name)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    c = findClass(name);
+                } catch (ClassNotFoundException notInJar) {
+                    return super.loadClass(name, resolve);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        if (policy.isChildFirst(name.replace('/', '.'))) {
+            URL url = findResource(name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return super.getResource(name);
+    }
+}
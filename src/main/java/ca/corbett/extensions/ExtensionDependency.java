@@ -0,0 +1,144 @@
+package ca.corbett.extensions;
+
+import java.util.Objects;
+
+/**
+ * Describes a dependency of one extension on another, as declared in the "dependencies"
+ * section of an extInfo.json file:
+ * <BLOCKQUOTE><PRE>
+ * "dependencies": [
+ *   { "name": "Image utilities", "version": "1.2" },
+ *   { "name": "Fancy borders", "optional": true }
+ * ]
+ * </PRE></BLOCKQUOTE>
+ * The name refers to the name of the other extension (as given in its own extInfo.json).
+ * The version is the minimum acceptable version of that extension, and may be omitted
+ * to accept any version. A required dependency must be present (and new enough) for this
+ * extension to be loaded at all. An optional dependency doesn't have to be present, but if it
+ * is present and new enough, it will be loaded first.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionDependency {
+
+    protected final String name;
+    protected final String version;
+    protected final boolean optional;
+    private transient volatile VersionRange versionRange; // parsed on first use
+
+    public ExtensionDependency(String name, String version, boolean optional) {
+        this.name = name;
+        this.version = version;
+        this.optional = optional;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the minimum acceptable version of the named extension, or null if any version will do.
+     * This can also be a range of acceptable versions, such as "[1.2,2.0)" or "^1.2" - see VersionRange.
+     *
+     * @return A version string, or null.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isOptional() {
+        return optional;
+    }
+
+    /**
+     * Reports whether an extension with the given name and version would satisfy this dependency.
+     *
+     * @param extensionName    The name of some extension.
+     * @param extensionVersion The version of that extension.
+     * @return true if this is the extension we're looking for, and it's new enough.
+     */
+    public boolean isSatisfiedBy(String extensionName, String extensionVersion) {
+        if (!Objects.equals(name, extensionName)) {
+            return false;
+        }
+        if (version == null || version.isBlank()) {
+            return true;
+        }
+        if (extensionVersion == null) {
+            return false;
+        }
+        Version candidate;
+        VersionRange range = versionRange;
+        try {
+            candidate = Version.parse(extensionVersion);
+            if (range == null) {
+                range = VersionRange.parse(version);
+                versionRange = range;
+            }
+        } catch (IllegalArgumentException iae) {
+            // Not something we can parse. If we were given a plain version,
+            // we can still fall back to comparing the text:
+            char first = version.trim().charAt(0);
+            boolean isRange = first == '[' || first == '(' || first == '^';
+            return !isRange && compareVersions(extensionVersion, version) >= 0;
+        }
+        return range.contains(candidate);
+    }
+
+    /**
+     * Compares two dotted version strings segment by segment, so that "1.10" is newer than "1.9".
+     * Numeric segments are compared as numbers, anything else is compared as text, and missing
+     * trailing segments count as zero. Versions that Version can parse are compared as Versions,
+     * so that pre-release qualifiers are ordered properly.
+     *
+     * @param a A version string.
+     * @param b Another version string.
+     * @return Negative, zero, or positive as a is older than, the same as, or newer than b.
+     */
+    public static int compareVersions(String a, String b) {
+        try {
+            return Version.parse(a).compareTo(Version.parse(b));
+        } catch (IllegalArgumentException ignored) {
+            // Fall through to the more forgiving comparison below.
+        }
+        String[] aParts = a.trim().split("\\.");
+        String[] bParts = b.trim().split("\\.");
+        for (int i = 0; i < Math.max(aParts.length, bParts.length); i++) {
+            String aPart = i < aParts.length ? aParts[i] : "0";
+            String bPart = i < bParts.length ? bParts[i] : "0";
+            int result;
+            try {
+                result = Long.compare(Long.parseLong(aPart), Long.parseLong(bPart));
+            } catch (NumberFormatException nfe) {
+                result = aPart.compareTo(bPart);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return name + (version == null ? "" : " " + version) + (optional ? " (optional)" : "");
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, version, optional);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        ExtensionDependency other = (ExtensionDependency)obj;
+        return optional == other.optional && Objects.equals(name, other.name) && Objects.equals(version, other.version);
+    }
+}
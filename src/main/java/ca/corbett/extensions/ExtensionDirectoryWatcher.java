@@ -0,0 +1,392 @@
+package ca.corbett.extensions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches an extension directory for jar files being added, removed or replaced, and keeps
+ * an ExtensionManager in step with it: new jars are loaded and activated, removed jars are
+ * deactivated and unloaded, and replaced jars are hot-swapped in place via
+ * ExtensionManager.replaceExtension(). Jars that haven't changed are left alone.
+ * Usually you'd create one of these via ExtensionManager.watchDirectory() rather than directly.
+ * <p>
+ * <b>Debouncing</b> - copying a large jar into place typically generates a burst of file
+ * system events, and the jar isn't usable until the copy is finished. So, we wait until the
+ * directory has been quiet for the debounce period (one second by default) before acting on
+ * anything. We also remember the size and last modified time of every jar we've dealt with,
+ * and only act on jars for which these have actually changed. A jar that can't be read yet
+ * will be retried the next time it changes.
+ * </p>
+ * <p>
+ * <b>Lifecycle</b> - a replaced extension keeps the enabled or disabled status of the version
+ * it replaced, and if the new version can't be loaded or activated, the old one stays in service.
+ * Jars that contain more than one extension are the exception: their extensions are all unloaded
+ * and then loaded again from the new jar, because the new jar might not contain the same ones.
+ * Newly discovered extensions are loaded in dependency order, and activated if they are still
+ * enabled once loading is done - an ExtensionManagerListener can disable one from its
+ * extensionLoaded() event, as AppProperties does for extensions that the user has disabled.
+ * onActivate/onDeactivate exceptions are logged rather than stopping the watcher.
+ * ExtensionManagerListeners are notified of every load, unload and replacement by the
+ * ExtensionManager itself.
+ * </p>
+ * <p>
+ * All changes are applied on the watcher's own daemon thread.
+ * </p>
+ *
+ * @param <T> The extension type managed by the ExtensionManager.
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionDirectoryWatcher<T extends AppExtension> implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ExtensionDirectoryWatcher.class.getName());
+
+    /**
+     * The default time to wait for the directory to go quiet before acting on changes.
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 1000;
+
+    private final ExtensionManager<T> extManager;
+    private final Path directory;
+    private final Class<T> extClass;
+    private final String appName;
+    private final VersionRange requirement;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, FileStamp> knownJars = new HashMap<>();
+    private final List<Path> startupJars = new ArrayList<>();
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private volatile WatchService watchService;
+    private volatile Thread thread;
+
+    /**
+     * Creates a watcher for the given directory. Nothing happens until start() is invoked.
+     * The appName and minimumVersion are checked as for ExtensionManager.loadExtensions().
+     *
+     * @throws IllegalArgumentException If minimumVersion is not a valid version or VersionRange.
+     */
+    public ExtensionDirectoryWatcher(ExtensionManager<T> extManager, File directory, Class<T> extClass,
+                                     String appName, String minimumVersion) {
+        this.extManager = extManager;
+        this.directory = directory.toPath().toAbsolutePath();
+        this.extClass = extClass;
+        this.appName = appName;
+        this.requirement = minimumVersion == null ? null : VersionRange.parse(minimumVersion);
+    }
+
+    /**
+     * Sets how long the directory must be quiet before we act on changes. This can be
+     * changed while the watcher is running.
+     *
+     * @param debounceMillis The quiet period, in milliseconds.
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = Math.max(0, debounceMillis);
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    public boolean isRunning() {
+        Thread t = thread;
+        return t != null && t.isAlive();
+    }
+
+    /**
+     * Starts watching. Jars in the directory that extensions are already loaded from are taken
+     * as the starting point - only later changes to them are acted on. Any other jars in the
+     * directory are dealt with as if they had just arrived, once the debounce period has passed,
+     * so that jars dropped in between loading extensions and starting the watcher aren't missed.
+     * So, you would normally load extensions from the directory first (see
+     * ExtensionManager.loadExtensions) and then start watching it.
+     *
+     * @throws IOException If the directory can't be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        registerRecursively(directory);
+        for (Path jar : findJars(directory)) {
+            if (extManager.findExtensionsLoadedFrom(jar.toFile()).isEmpty()) {
+                startupJars.add(jar);
+            } else {
+                knownJars.put(jar, FileStamp.of(jar));
+            }
+        }
+        thread = new Thread(this::run, "ExtensionDirectoryWatcher-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching. Extensions that were loaded remain loaded.
+     */
+    @Override
+    public synchronized void close() {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        try {
+            service.close();
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "ExtensionDirectoryWatcher: problem closing watch service.", ioe);
+        }
+        Thread t = thread;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The watcher thread: gathers up changed jar paths until things go quiet, then deals with them.
+     */
+    private void run() {
+        Set<Path> pending = new TreeSet<>(startupJars);
+        startupJars.clear();
+        long lastEventTime = System.nanoTime();
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long waitMillis = debounceMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastEventTime);
+                    key = waitMillis > 0 ? watchService.poll(waitMillis, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key != null) {
+                    collectChanges(key, pending);
+                    lastEventTime = System.nanoTime();
+                } else if (!pending.isEmpty()) {
+                    List<Path> batch = new ArrayList<>(pending);
+                    pending.clear();
+                    try {
+                        processChanges(batch);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "ExtensionDirectoryWatcher: problem processing changes in "
+                                + directory, e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // We've been closed; nothing more to do.
+        }
+    }
+
+    /**
+     * Pulls the events off the given key and adds any affected jar files to the pending set.
+     */
+    private void collectChanges(WatchKey key, Set<Path> pending) {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                // We've missed some events, so check everything:
+                pending.addAll(knownJars.keySet());
+                pending.addAll(findJars(directory));
+                continue;
+            }
+            Path changed = dir.resolve((Path)event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                // A new subdirectory might have arrived with jars already in it:
+                try {
+                    registerRecursively(changed);
+                } catch (IOException ioe) {
+                    logger.log(Level.WARNING, "ExtensionDirectoryWatcher: unable to watch new directory " + changed, ioe);
+                }
+                pending.addAll(findJars(changed));
+            } else if (isJar(changed)) {
+                pending.add(changed);
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // If a whole directory was deleted or moved away, we only hear about the directory,
+                // so we have to check every jar we knew of underneath it:
+                for (Path known : knownJars.keySet()) {
+                    if (known.startsWith(changed)) {
+                        pending.add(known);
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Deals with a batch of jar files that may have changed: extensions whose jar has disappeared
+     * (or no longer qualifies) are unloaded, extensions whose jar has been replaced are swapped for
+     * the new version, and new jars are loaded.
+     *
+     * @param changedJars The jar files that may have changed.
+     */
+    protected void processChanges(List<Path> changedJars) {
+        Map<File, AppExtensionInfo> toLoad = new LinkedHashMap<>();
+
+        for (Path jar : changedJars) {
+            FileStamp stamp = FileStamp.of(jar);
+            if (Objects.equals(stamp, knownJars.get(jar))) {
+                continue; // nothing actually changed
+            }
+            if (stamp == null) {
+                knownJars.remove(jar);
+            } else {
+                knownJars.put(jar, stamp);
+            }
+
+            File jarFile = jar.toFile();
+            AppExtensionInfo extInfo = stamp == null ? null : extManager.extractExtInfoCached(jarFile);
+            boolean qualifies = extInfo != null
+                    && extManager.jarFileMeetsRequirementRange(jarFile, extInfo, appName, requirement);
+            List<String> oldClassNames = extManager.findExtensionsLoadedFrom(jarFile);
+            if (oldClassNames.isEmpty()) {
+                if (qualifies) {
+                    toLoad.put(jarFile, extInfo);
+                }
+                continue;
+            }
+
+            // The jar was replaced: swap in the new version without an unload/load gap.
+            // If that fails, the old version stays in service until the jar changes again:
+            if (qualifies && oldClassNames.size() == 1) {
+                String oldClassName = oldClassNames.get(0);
+                if (extManager.replaceExtension(oldClassName, jarFile, extClass)) {
+                    logger.log(Level.INFO, "ExtensionDirectoryWatcher: replaced extension {0} from {1}",
+                            new Object[]{oldClassName, jar});
+                }
+                continue;
+            }
+
+            // The jar is gone, or no longer qualifies, or it holds several extensions
+            // (in which case we reload whatever the new jar contains):
+            for (String oldClassName : oldClassNames) {
+                logger.log(Level.INFO, "ExtensionDirectoryWatcher: unloading extension {0} from {1}",
+                        new Object[]{oldClassName, jar});
+                try {
+                    extManager.unloadExtension(oldClassName);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "ExtensionDirectoryWatcher: extension " + oldClassName
+                            + " threw an exception while being deactivated.", e);
+                }
+            }
+            if (qualifies) {
+                toLoad.put(jarFile, extInfo);
+            }
+        }
+
+        for (File jarFile : extManager.resolveDependencies(toLoad)) {
+            if (!extManager.loadExtension(new ExtensionCandidate(jarFile, toLoad.get(jarFile)), extClass)) {
+                continue;
+            }
+            for (String className : extManager.findExtensionsLoadedFrom(jarFile)) {
+                logger.log(Level.INFO, "ExtensionDirectoryWatcher: loaded extension {0} from {1}",
+                        new Object[]{className, jarFile});
+                if (!extManager.isExtensionEnabled(className)) {
+                    continue; // only enabled extensions get activated, just like activateAll()
+                }
+                T extension = extManager.getLoadedExtension(className);
+                try {
+                    extManager.invokeLifecycle(extension, true);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "ExtensionDirectoryWatcher: extension " + className
+                            + " threw an exception while being activated.", e);
+                }
+            }
+        }
+        extManager.saveScanCache();
+    }
+
+    private void registerRecursively(Path root) throws IOException {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+                WatchKey key = dir.register(watchService,
+                                            StandardWatchEventKinds.ENTRY_CREATE,
+                                            StandardWatchEventKinds.ENTRY_DELETE,
+                                            StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, dir);
+            }
+        }
+    }
+
+    private static List<Path> findJars(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(path -> isJar(path) && Files.isRegularFile(path)).collect(Collectors.toList());
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "ExtensionDirectoryWatcher: unable to list jars in " + root, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static boolean isJar(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().toLowerCase().endsWith(".jar");
+    }
+
+    /**
+     * The size and last modified time of a jar, which together tell us whether it has changed.
+     */
+    private static final class FileStamp {
+        private final long size;
+        private final long lastModified;
+
+        private FileStamp(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the current stamp of the given file, or null if it doesn't exist.
+         */
+        static FileStamp of(Path path) {
+            File file = path.toFile();
+            return file.isFile() ? new FileStamp(file.length(), file.lastModified()) : null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp)obj;
+            return size == other.size && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+    }
+}
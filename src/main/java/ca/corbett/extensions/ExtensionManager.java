@@ -5,18 +5,48 @@ import ca.corbett.extras.properties.AbstractProperty;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * Provides a mechanism for scanning for and loading instances of AppExtension
@@ -30,6 +60,13 @@ import java.util.logging.Logger;
  *     version requirements in the candidate extension jar are met. See extractExtInfo
  *     for more details.
  * </p>
+ * <p>
+ *     <b>Thread safety</b><br>
+ *     ExtensionManager is safe to use from multiple threads. Query methods like
+ *     getEnabledLoadedExtensions() and isExtensionEnabled() never block, even while
+ *     another thread is loading, unloading, enabling or disabling extensions - they
+ *     simply see the state of things either just before or just after that change.
+ * </p>
  *
  * @param <T> Any class that implements AppExtension - this is the class we'll scan for.
  * @author scorbo2
@@ -39,10 +76,178 @@ public abstract class ExtensionManager<T extends AppExtension> {
 
     protected static final Logger logger = Logger.getLogger(ExtensionManager.class.getName());
 
-    private final Map<String, ExtensionWrapper> loadedExtensions;
+    /**
+     * The name of the jar manifest attribute that an extension can use to declare its extension class.
+     */
+    public static final String MANIFEST_EXTENSION_CLASS = "Extension-Class";
+
+    /**
+     * The name of the jar manifest attribute that an extension can use to say where its extInfo.json is.
+     */
+    public static final String MANIFEST_EXTENSION_INFO = "Extension-Info";
+
+    /**
+     * The canonical location of the extInfo.json file within an extension jar.
+     */
+    public static final String EXT_INFO_LOCATION = "META-INF/extInfo.json";
+
+    /**
+     * The location of ServiceLoader-style provider configuration files within a jar.
+     */
+    public static final String SERVICES_PREFIX = "META-INF/services/";
+
+    /**
+     * The registry of loaded extensions. A Registry is never modified once published - every
+     * change produces a new one under registryLock, which then replaces this reference.
+     * Readers can therefore use whatever snapshot they find here without any locking,
+     * and will never block behind a load, unload, or enable/disable.
+     */
+    private volatile Registry registry;
+    private final Object registryLock = new Object();
+    private volatile ExtensionScanCache scanCache;
+    private volatile Executor dispatchExecutor;
+    private final Map<String, ExtensionMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile boolean isMetricsEnabled = true;
+    private volatile CircuitBreakerPolicy circuitBreakerPolicy;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final List<ExtensionManagerListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ClassLoadingPolicy classLoadingPolicy = new ClassLoadingPolicy.Builder().build();
+    private volatile File sharedLibraryDirectory;
+    private volatile URLClassLoader sharedClassLoader;
+    private volatile boolean isLazyLoading;
 
     public ExtensionManager() {
-        loadedExtensions = new HashMap<>();
+        registry = new Registry(Collections.emptyMap());
+    }
+
+    /**
+     * Supplies an optional ExtensionScanCache, which will be consulted during
+     * findCandidateExtensionJars and loadExtensions so that jar files that haven't changed
+     * since the last scan don't have to be opened again. The cache is saved automatically
+     * at the end of each scan or load. Pass null to go back to scanning every jar every time.
+     *
+     * @param scanCache The ExtensionScanCache to use, or null for none.
+     */
+    public void setScanCache(ExtensionScanCache scanCache) {
+        this.scanCache = scanCache;
+    }
+
+    /**
+     * Returns the ExtensionScanCache in use, if any.
+     *
+     * @return The current ExtensionScanCache, or null if there isn't one.
+     */
+    public ExtensionScanCache getScanCache() {
+        return scanCache;
+    }
+
+    /**
+     * Sets up a shared library directory. Every jar in that directory (and its subdirectories) is
+     * loaded once, into a single class loader that sits between the application and every
+     * extension class loader. Extensions can then use those libraries without bundling them - and
+     * if they do bundle their own copy, the shared copy is used instead (unless the ClassLoadingPolicy
+     * says otherwise), so that common libraries are only defined once no matter how many extensions
+     * use them.
+     * <p>
+     * This must be done before any extensions are loaded from jar files, because the class loaders
+     * of extensions that are already loaded can't be re-parented. Pass null to go back to having
+     * no shared libraries.
+     * </p>
+     *
+     * @param directory The directory containing shared library jars, or null for none.
+     * @return true if the shared libraries were set up, false if extensions are already loaded
+     *         from jars, or the directory doesn't exist.
+     */
+    public boolean setSharedLibraryDirectory(File directory) {
+        if (directory != null && !directory.isDirectory()) {
+            logger.log(Level.WARNING, "setSharedLibraryDirectory: {0} is not a directory.", directory.getAbsolutePath());
+            return false;
+        }
+        URLClassLoader oldLoader;
+        synchronized (registryLock) {
+            for (ExtensionWrapper wrapper : registry.byClassName.values()) {
+                if (wrapper.classLoader != null) {
+                    logger.log(Level.WARNING, "setSharedLibraryDirectory: extensions have already been loaded from jars; "
+                            + "shared libraries must be set up before loading extensions.");
+                    return false;
+                }
+            }
+            oldLoader = sharedClassLoader;
+            sharedClassLoader = directory == null ? null : createSharedClassLoader(directory);
+            sharedLibraryDirectory = directory;
+        }
+        closeClassLoader(oldLoader);
+        return true;
+    }
+
+    /**
+     * Returns the shared library directory, if one has been set.
+     *
+     * @return The shared library directory, or null.
+     */
+    public File getSharedLibraryDirectory() {
+        return sharedLibraryDirectory;
+    }
+
+    /**
+     * Sets the ClassLoadingPolicy that decides, package by package, whether extension class loaders
+     * look in the extension jar or in the shared libraries and application first. This applies to
+     * extensions loaded after this call. By default, everything is parent-first.
+     *
+     * @param policy The ClassLoadingPolicy to use. Null resets to the default.
+     */
+    public void setClassLoadingPolicy(ClassLoadingPolicy policy) {
+        this.classLoadingPolicy = policy == null ? new ClassLoadingPolicy.Builder().build() : policy;
+    }
+
+    public ClassLoadingPolicy getClassLoadingPolicy() {
+        return classLoadingPolicy;
+    }
+
+    /**
+     * Turns lazy loading on or off. With lazy loading on, loadExtensions() and friends only
+     * register the AppExtensionInfo and jar location of each extension - no class loader is
+     * created and nothing is instantiated. That happens the first time the extension is really
+     * needed: when it is returned from getLoadedExtension(), getAllLoadedExtensions(),
+     * getEnabledLoadedExtensions() or getEnabledExtensions(), when a hook is dispatched to it,
+     * or when it is activated or deactivated. So, start-up only costs as much as reading the
+     * extInfo.json of each jar, and extensions that are never used never cost any more than that.
+     * <p>
+     * Lazy loading only applies to jars whose extension class is known up front - that is, declared
+     * in the extInfo.json, or remembered by the ExtensionScanCache. Other jars have to be searched to
+     * find their extension class, so they are loaded right away as usual. Note that the list methods
+     * above instantiate every deferred extension that they return at once: getEnabledLoadedExtensions(),
+     * getEnabledExtensions(), dispatch(), broadcast() and activateAll() instantiate every enabled one,
+     * and getAllLoadedExtensions() instantiates all of them, disabled or not. Use
+     * getLoadedExtensionInfo() if you just want to show the user what's installed.
+     * </p>
+     * <p>
+     * AppProperties.load() needs the config properties of every extension, so it goes through
+     * getAllLoadedExtensions() - if your application uses AppProperties, every extension is
+     * instantiated when the properties are loaded, and lazy loading only saves you the work
+     * done before that point.
+     * </p>
+     * <p>
+     * If a deferred extension fails to load when it is first needed, it is unloaded (and listeners
+     * are notified) as if it had never been loaded successfully.
+     * </p>
+     *
+     * @param isLazyLoading Whether to defer instantiation of extensions loaded after this call.
+     */
+    public void setLazyLoading(boolean isLazyLoading) {
+        this.isLazyLoading = isLazyLoading;
+    }
+
+    public boolean isLazyLoading() {
+        return isLazyLoading;
+    }
+
+    public void addExtensionManagerListener(ExtensionManagerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeExtensionManagerListener(ExtensionManagerListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -51,7 +256,7 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @return A count of loaded extensions (enabled or not).
      */
     public int getLoadedExtensionCount() {
-        return loadedExtensions.size();
+        return registry.byClassName.size();
     }
 
     /**
@@ -62,7 +267,7 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @return True if the named extension has been loaded by this manager.
      */
     public boolean isExtensionLoaded(String className) {
-        return loadedExtensions.get(className) != null;
+        return registry.byClassName.get(className) != null;
     }
 
     /**
@@ -72,7 +277,7 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @return True if the extension is enabled, false if disabled or not found.
      */
     public boolean isExtensionEnabled(String className) {
-        ExtensionWrapper wrapper = loadedExtensions.get(className);
+        ExtensionWrapper wrapper = registry.byClassName.get(className);
         return wrapper != null && wrapper.isEnabled;
     }
 
@@ -100,23 +305,21 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @param notify    Whether to send a message to the extension notifying them of the change.
      */
     public void setExtensionEnabled(String className, boolean isEnabled, boolean notify) {
-        ExtensionWrapper wrapper = loadedExtensions.get(className);
-        if (wrapper != null) {
-            // Toggling to enabled?
-            if (isEnabled && !wrapper.isEnabled) {
-                wrapper.isEnabled = true;
-                if (notify) {
-                    wrapper.extension.onActivate();
-                }
+        ExtensionWrapper wrapper;
+        synchronized (registryLock) {
+            wrapper = registry.byClassName.get(className);
+            if (wrapper == null || wrapper.isEnabled == isEnabled) {
+                return;
             }
+            wrapper.isEnabled = isEnabled;
+            registry = new Registry(registry.byClassName);
+        }
 
-            // Toggling to disabled?
-            if (!isEnabled && wrapper.isEnabled) {
-                wrapper.isEnabled = false;
-                if (notify) {
-                    wrapper.extension.onDeactivate();
-                }
-            }
+        // We notify the extension outside the lock, so that a slow extension doesn't hold up
+        // anybody else who wants to change the registry:
+        T extension = notify && wrapper.isDeferred ? instantiateDeferred(className, wrapper) : wrapper.extension;
+        if (notify && extension != null) {
+            invokeLifecycle(extension, isEnabled);
         }
     }
 
@@ -128,7 +331,7 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @return The File representing the extensions source jar, or null if not found or built-in.
      */
     public File getSourceJar(String className) {
-        ExtensionWrapper wrapper = loadedExtensions.get(className);
+        ExtensionWrapper wrapper = registry.byClassName.get(className);
         return wrapper != null ? wrapper.sourceJar : null;
     }
 
@@ -139,42 +342,101 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * @return The extension.
      */
     public T getLoadedExtension(String className) {
-        ExtensionWrapper wrapper = loadedExtensions.get(className);
-        return wrapper != null ? wrapper.extension : null;
+        ExtensionWrapper wrapper = registry.byClassName.get(className);
+        if (wrapper == null) {
+            return null;
+        }
+        return wrapper.isDeferred ? instantiateDeferred(className, wrapper) : wrapper.extension;
+    }
+
+    /**
+     * Returns the AppExtensionInfo of the named extension. Unlike getLoadedExtension(className).getInfo(),
+     * this does not force a deferred extension to be instantiated (see setLazyLoading).
+     *
+     * @param className the fully qualified class name of the extension in question.
+     * @return The AppExtensionInfo for that extension, or null if it isn't loaded.
+     */
+    public AppExtensionInfo getLoadedExtensionInfo(String className) {
+        ExtensionWrapper wrapper = registry.byClassName.get(className);
+        if (wrapper == null) {
+            return null;
+        }
+        if (wrapper.isDeferred) {
+            return wrapper.extInfo;
+        }
+        T extension = wrapper.extension;
+        return extension == null ? null : extension.getInfo();
+    }
+
+    /**
+     * Reports whether the named extension has actually been instantiated. This is always true
+     * for loaded extensions unless lazy loading is on (see setLazyLoading).
+     *
+     * @param className the fully qualified class name of the extension in question.
+     * @return true if the extension is loaded and instantiated, false if it is deferred or not loaded.
+     */
+    public boolean isExtensionInstantiated(String className) {
+        ExtensionWrapper wrapper = registry.byClassName.get(className);
+        return wrapper != null && !wrapper.isDeferred;
     }
 
     /**
      * Returns a list of all loaded extensions - beware that this method will return
      * extensions even if they are marked as disabled! If you only want to get the
      * extensions that are currently enabled, use getEnabledLoadedExtensions() instead.
+     * <p>
+     * The returned list is an unmodifiable snapshot, which is computed only when extensions
+     * are loaded or unloaded, so this method is very cheap to call.
+     * </p>
      *
      * @return A List of zero or more extensions sorted by name.
      */
     public List<T> getAllLoadedExtensions() {
-        List<ExtensionWrapper> wrapperList = getAllLoadedExtensionWrappers();
-        List<T> extList = new ArrayList<>();
-        for (ExtensionWrapper wrapper : wrapperList) {
-            extList.add(wrapper.extension);
-        }
-        return extList;
+        return getInstantiatedRegistry(false).allExtensions;
     }
 
     /**
      * Returns a list of all loaded extensions that are marked as enabled.
-     * This list is computed each time this method is called as extensions can
-     * be enabled and disabled at pretty much any point.
+     * The returned list is an unmodifiable snapshot, which is recomputed whenever an extension
+     * is loaded, unloaded, enabled or disabled - so this method is very cheap to call,
+     * but don't hang on to the list for too long, as it won't reflect subsequent changes.
      *
-     * @return A List of zero or more enabled and loaded extensions.
+     * @return A List of zero or more enabled and loaded extensions, sorted by name.
      */
     public List<T> getEnabledLoadedExtensions() {
-        List<ExtensionWrapper> wrapperList = getAllLoadedExtensionWrappers();
-        List<T> extList = new ArrayList<>();
-        for (ExtensionWrapper wrapper : wrapperList) {
-            if (wrapper.isEnabled) {
-                extList.add(wrapper.extension);
-            }
+        return getInstantiatedRegistry(true).enabledExtensions;
+    }
+
+    /**
+     * Returns all enabled extensions that extend or implement the given type, sorted by name.
+     * This is handy if your extension type has optional sub-interfaces that only some of your
+     * extensions implement - instead of filtering getEnabledLoadedExtensions() with instanceof
+     * every time, you can ask for exactly the extensions you want:
+     * <BLOCKQUOTE><PRE>
+     * for (ImageFilterCapable ext : extManager.getEnabledExtensions(ImageFilterCapable.class)) {
+     *     ext.filter(image);
+     * }
+     * </PRE></BLOCKQUOTE>
+     * <p>
+     * Extensions are indexed by type when they are loaded, enabled or disabled, so this lookup
+     * is cheap and does not allocate. The returned list is an unmodifiable snapshot.
+     * Every extension is an Object, so asking for Object.class gives the same list as
+     * getEnabledLoadedExtensions().
+     * </p>
+     *
+     * @param type The class or interface to look for.
+     * @param <S>  The type to look for.
+     * @return A List of zero or more enabled extensions that are instances of the given type.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> List<S> getEnabledExtensions(Class<S> type) {
+        // These casts are safe, because the index only contains instances of the given type:
+        Registry registry = getInstantiatedRegistry(true);
+        if (type == Object.class) {
+            return (List<S>) registry.enabledExtensions; // not indexed, since it would just duplicate this list
         }
-        return extList;
+        List<S> list = (List<S>) registry.enabledByType.get(type);
+        return list == null ? Collections.emptyList() : list;
     }
 
     /**
@@ -185,12 +447,8 @@ public abstract class ExtensionManager<T extends AppExtension> {
      */
     public List<AbstractProperty> getAllEnabledExtensionProperties() {
         List<AbstractProperty> propList = new ArrayList<>();
-        List<ExtensionWrapper> wrapperList = getAllLoadedExtensionWrappers();
-        for (ExtensionWrapper wrapper : wrapperList) {
-            if (wrapper.extension == null || !wrapper.isEnabled) {
-                continue;
-            }
-            List<AbstractProperty> list = wrapper.extension.getConfigProperties();
+        for (T extension : getEnabledLoadedExtensions()) {
+            List<AbstractProperty> list = extension.getConfigProperties();
             if (list != null) {
                 propList.addAll(list);
             }
@@ -218,7 +476,8 @@ public abstract class ExtensionManager<T extends AppExtension> {
         wrapper.sourceJar = null;
         wrapper.isEnabled = isEnabled;
         wrapper.extension = extension;
-        loadedExtensions.put(extension.getClass().getName(), wrapper);
+        registerWrapper(extension.getClass().getName(), wrapper, true);
+        fireExtensionLoaded(extension.getClass().getName());
     }
 
     /**
@@ -226,13 +485,8 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * starting up - use deactivateAll() to signal shutdown.
      */
     public void activateAll() {
-        for (ExtensionWrapper wrapper : getAllLoadedExtensionWrappers()) {
-            if (wrapper.extension == null) {
-                continue;
-            }
-            if (wrapper.isEnabled) {
-                wrapper.extension.onActivate();
-            }
+        for (T extension : getEnabledLoadedExtensions()) {
+            invokeLifecycle(extension, true);
         }
     }
 
@@ -241,227 +495,1555 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * shutting down - use activateAll() to signal startup.
      */
     public void deactivateAll() {
-        for (ExtensionWrapper wrapper : getAllLoadedExtensionWrappers()) {
-            if (wrapper.extension == null) {
-                continue;
-            }
-            if (wrapper.isEnabled) {
-                wrapper.extension.onDeactivate();
-            }
+        for (T extension : getEnabledLoadedExtensions()) {
+            invokeLifecycle(extension, false);
         }
     }
 
     /**
-     * Removes all extensions that were previously loaded in this ExtensionManager,
-     * and returns it to an empty state. Client applications
-     * should use this with caution - if you have queried for configuration properties
-     * from all extensions before invoking this, then you should once again invoke
-     * getAllEnabledExtensionProperties() because the list of properties will
-     * likely decrease as extensions are unloaded, and your UI should remove the properties
-     * that no longer exist.
+     * Sends an onActivate() message to all enabled extensions, running as many of them at the
+     * same time as possible. Extensions can declare (via AppExtensionInfo.getActivateAfter()) that
+     * they must only be activated after certain other extensions have finished activating.
+     * We sort the extensions into "waves" based on those declarations: the first wave contains
+     * all extensions that don't have to wait for anybody, the second wave contains those that
+     * only wait for extensions in the first wave, and so on. All extensions in a wave are activated
+     * concurrently on the dispatch Executor (see setDispatchExecutor), and each wave starts when the
+     * previous one has finished.
+     * <p>
+     * The whole thing is bounded by the given deadline. Any extension that is still running when
+     * the deadline passes is interrupted and reported as timed out, and any wave that hasn't
+     * started by then is skipped. An extension that throws an exception is reported as failed,
+     * but does not stop the extensions that come after it from being activated.
+     * </p>
+     * <p>
+     * If the activateAfter declarations form a cycle, the extensions involved are activated
+     * together in a final wave, and a warning is logged.
+     * </p>
      *
-     * @return The count of extensions that were actually removed as a result of this call.
+     * @param deadlineMillis The maximum total time to spend on activation, or 0 for no limit.
+     * @return An ActivationReport describing what happened to each extension.
      */
-    public int unloadAllExtensions() {
-        List<String> extensionClasses = new ArrayList<>(loadedExtensions.keySet());
-        int removedCount = 0;
-        for (String extensionClass : extensionClasses) {
-            if (unloadExtension(extensionClass)) {
-                removedCount++;
-            }
-        }
-        return removedCount;
+    public ActivationReport activateAllInParallel(long deadlineMillis) {
+        return runLifecycleInWaves(computeActivationWaves(getEnabledLoadedExtensions()), true, deadlineMillis);
     }
 
     /**
-     * Unregisters the given extension, if it was registered. The extension will receive a
-     * deactivate() message before it is unloaded, if it was enabled. Client applications
-     * should use this with caution - if you have queried for configuration properties
-     * from all extensions before invoking this, then you should once again invoke
-     * getAllEnabledExtensionProperties() because the list of properties will
-     * likely decrease as extensions are unloaded, and your UI should remove the properties
-     * that no longer exist.
+     * Sends an onDeactivate() message to all enabled extensions, running as many of them at the
+     * same time as possible. This is the mirror image of activateAllInParallel(): the waves are
+     * run in reverse order, so that each extension is deactivated before anything it was
+     * activated after.
      *
-     * @param className The class of the extension to be unregistered.
-     * @return true if an extension was actually removed as a result of this call.
+     * @param deadlineMillis The maximum total time to spend on deactivation, or 0 for no limit.
+     * @return An ActivationReport describing what happened to each extension.
      */
-    public boolean unloadExtension(String className) {
-       ExtensionWrapper wrapper = loadedExtensions.get(className);
-       boolean removedSomething = false;
-       if (wrapper != null) {
-           if (wrapper.extension != null && wrapper.isEnabled) {
-               wrapper.extension.onDeactivate();
-           }
-           loadedExtensions.remove(className);
-           removedSomething = true;
-       }
-       return removedSomething;
+    public ActivationReport deactivateAllInParallel(long deadlineMillis) {
+        List<List<T>> waves = computeActivationWaves(getEnabledLoadedExtensions());
+        Collections.reverse(waves);
+        return runLifecycleInWaves(waves, false, deadlineMillis);
     }
 
     /**
-     * Scans the given directory looking for candidate jar files that contain an extension matching
-     * the given parameters. For each jar that is found, an attempt will be made to load the
-     * extension class out of that jar file. All successfully loaded extension classes will
-     * then be loaded into this ExtensionManager.
-     * <p>
-     * Note that this is a shorthand way of doing this more manually (or jar by jar) via
-     * the findCandidateExtensionJars, extractExtInfo, and jarFileMeetsRequirements methods.
-     * Generally, this is the better entry point, but if you have a specific jar file that
-     * you want to scan and load from, those other methods can be used instead.
-     * </p>
+     * Sorts the given extensions into activation waves, based on the activateAfter list in
+     * each extension's AppExtensionInfo. Within each wave, extensions keep the order in which
+     * they were given. Any extensions caught in a cycle end up together in the last wave.
      *
-     * @param directory      The directory to scan.
-     * @param extClass       The implementation class to look for.
-     * @param appName        The application name to match against.
-     * @param minimumVersion The minimum application version that the extension must target.
-     * @return The count of extensions that were loaded by this operation.
+     * @param extensions The extensions to sort.
+     * @return A List of waves, each of which is a List of one or more extensions.
      */
-    public int loadExtensions(File directory, Class<T> extClass, String appName, String minimumVersion) {
-        Map<File, AppExtensionInfo> map = findCandidateExtensionJars(directory, appName, minimumVersion);
-        if (map.isEmpty()) {
-            return 0;
+    protected List<List<T>> computeActivationWaves(List<T> extensions) {
+        // Work out who has to wait for whom. Extensions are referred to by name in
+        // activateAfter, and we ignore any names that aren't in the list we were given:
+        Map<String, List<T>> byName = new HashMap<>();
+        for (T extension : extensions) {
+            byName.computeIfAbsent(extension.getInfo().getName(), k -> new ArrayList<>()).add(extension);
         }
-        List<File> jarList = new ArrayList<>(map.keySet());
-        jarList.sort(new Comparator<File>() {
-            @Override
-            public int compare(File o1, File o2) {
-                return o1.getAbsolutePath().compareTo(o2.getAbsolutePath());
+        Map<T, Set<T>> waitingOn = new LinkedHashMap<>();
+        for (T extension : extensions) {
+            Set<T> predecessors = new HashSet<>();
+            for (String name : extension.getInfo().getActivateAfter()) {
+                for (T other : byName.getOrDefault(name, Collections.emptyList())) {
+                    if (other != extension) {
+                        predecessors.add(other);
+                    }
+                }
             }
+            waitingOn.put(extension, predecessors);
+        }
 
-        });
-        int extensionsLoaded = 0;
-        for (File jarFile : jarList) {
-            T extension = loadExtensionFromJar(jarFile, extClass);
-            if (extension != null) {
-                ExtensionWrapper wrapper = new ExtensionWrapper();
-                wrapper.sourceJar = jarFile;
-                wrapper.extension = extension;
-                wrapper.isEnabled = true;
-                loadedExtensions.put(extension.getClass().getName(), wrapper);
-                extensionsLoaded++;
+        // Peel off everybody who isn't waiting on anybody who is left:
+        List<List<T>> waves = new ArrayList<>();
+        while (!waitingOn.isEmpty()) {
+            List<T> wave = new ArrayList<>();
+            for (Map.Entry<T, Set<T>> entry : waitingOn.entrySet()) {
+                if (Collections.disjoint(entry.getValue(), waitingOn.keySet())) {
+                    wave.add(entry.getKey());
+                }
+            }
+            if (wave.isEmpty()) {
+                wave.addAll(waitingOn.keySet());
+                logger.log(Level.WARNING, "activateAfter declarations form a cycle; activating these together: {0}",
+                        getClassNames(wave));
             }
+            waitingOn.keySet().removeAll(wave);
+            waves.add(wave);
         }
-        return extensionsLoaded;
+        return waves;
     }
 
     /**
-     * Scans the given directory looking for Jar files that contain an extInfo.json file, and
-     * if one is found, will check its parameters against the given appName and minimumVersion
-     * to make sure the extension would work for that application. The return is a Map of
-     * File to AppExtensionInfo, which can then be loaded via one of the loadExtension methods.
-     * Note that this method does not actually try to load the extension, it simply scans
-     * to find which jar file would be good candidates for loading. This can therefore be
-     * used for autodiscovery of extension jars in a given directory safely, without actually
-     * loading them. Note that both appName and minimumVersion are optional (you can pass null
-     * to disable those checks), but the result may be jar files that contain extensions
-     * for the wrong app, or for the wrong version of the app, or both.
-     *
-     * @param directory      The directory to scan (will be scanned recursively).
-     * @param appName        The application name to check for, or null to skip this check.
-     * @param minimumVersion The minimum required app version, or null to skip this check.
-     * @return A Map of jar files to AppExtensionInfo objects.
+     * Invoked internally to run onActivate or onDeactivate on the given waves of extensions.
      */
-    public Map<File, AppExtensionInfo> findCandidateExtensionJars(File directory, String appName, String minimumVersion) {
-        Map<File, AppExtensionInfo> map = new HashMap<>();
-
-        // Start by finding all jar files in the target directory:
-        List<File> jarFiles = FileSystemUtil.findFiles(directory, true, "jar");
+    private ActivationReport runLifecycleInWaves(List<List<T>> waves, boolean activate, long deadlineMillis) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        boolean hasDeadline = deadlineMillis > 0;
+        Map<String, ActivationReport.Status> statuses = new LinkedHashMap<>();
+        Map<String, Throwable> errors = new LinkedHashMap<>();
+        List<List<String>> waveNames = new ArrayList<>();
+        String operation = activate ? ExtensionMetrics.ON_ACTIVATE : ExtensionMetrics.ON_DEACTIVATE;
 
-        // Now try scanning for an extInfo.json file:
-        for (File jarFile : jarFiles) {
-            AppExtensionInfo extInfo = extractExtInfo(jarFile);
-            if (extInfo == null) {
+        for (List<T> wave : waves) {
+            waveNames.add(getClassNames(wave));
+            if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                for (T extension : wave) {
+                    statuses.put(extension.getClass().getName(), ActivationReport.Status.SKIPPED);
+                }
                 continue;
             }
-            if (jarFileMeetsRequirements(jarFile, extInfo, appName, minimumVersion)) {
-                map.put(jarFile, extInfo);
+
+            List<TimedHook<T, Void>> calls = new ArrayList<>(wave.size());
+            for (T extension : wave) {
+                calls.add(startHook(operation, extension, ext -> {
+                    invokeLifecycle(ext, activate);
+                    return null;
+                }));
+            }
+            for (TimedHook<T, Void> call : calls) {
+                DispatchResult.Outcome<T, Void> outcome = awaitHook(operation, call, hasDeadline, deadline);
+                String className = call.extension.getClass().getName();
+                switch (outcome.getStatus()) {
+                    case SUCCEEDED:
+                        statuses.put(className, ActivationReport.Status.SUCCEEDED);
+                        break;
+                    case TIMED_OUT:
+                        statuses.put(className, ActivationReport.Status.TIMED_OUT);
+                        break;
+                    default:
+                        statuses.put(className, ActivationReport.Status.FAILED);
+                        errors.put(className, outcome.getError());
+                        break;
+                }
             }
         }
+        return new ActivationReport(waveNames, statuses, errors, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
 
-        return map;
+    private static List<String> getClassNames(List<?> extensions) {
+        List<String> names = new ArrayList<>(extensions.size());
+        for (Object extension : extensions) {
+            names.add(extension.getClass().getName());
+        }
+        return names;
     }
 
     /**
-     * Checks if the given jar file and extension info meet the given requirements (that is,
-     * that the application name and minimum version requirements are met). This does not guarantee
-     * that an extension can be successfully loaded out of the given jar file, but it is
-     * a pretty good indicator.
+     * Invoked internally to send an onActivate or onDeactivate message to the given extension,
+     * recording metrics for the call. Any exception thrown by the extension is passed on to the caller.
      *
-     * @param jarFile        The jar file in question.
-     * @param extInfo        The extension info that was extracted from that jar via extractExtInfo
-     * @param appName        The name of the application to check for.
-     * @param minimumVersion The minimum app version that the extension must target.
-     * @return true if the jar file looks good, false otherwise.
+     * @param extension The extension to notify.
+     * @param activate  true to send onActivate, false to send onDeactivate.
      */
-    public boolean jarFileMeetsRequirements(File jarFile, AppExtensionInfo extInfo, String appName, String minimumVersion) {
-        // Check app name if one was given:
-        if (appName != null && !appName.equals(extInfo.getTargetAppName())) {
-            logger.log(Level.WARNING,
-                    "jarFileMeetsRequirements: skipping jar {0} because target app name \"{1}\" does not match given app name \"{2}\".",
-                    new Object[]{jarFile.getAbsolutePath(), extInfo.getTargetAppName(), appName});
-            return false;
-        }
-
-        // Check minimum app version if one was given:
-        if (minimumVersion != null) {
-            try {
-                float minVersion = Float.parseFloat(minimumVersion);
-                float extRequires = extInfo.getTargetAppVersion() == null ? -1 : Float.parseFloat(extInfo.getTargetAppVersion());
-                if (extRequires < minVersion) {
-                    logger.log(Level.WARNING, "jarFileMeetsRequirements: Jar file {0} contains an older extension with version {1}, below the required version of {2}; skipping.",
-                            new Object[]{jarFile.getAbsolutePath(), extInfo.getTargetAppVersion(), minimumVersion});
-                    return false;
-                }
-            } catch (NumberFormatException nfe) {
-                logger.log(Level.WARNING, "jarFileMeetsRequirements: unable to parse version information for jar file {0}: App version: \"{1}\", extension targets version \"{2}\".",
-                        new Object[]{jarFile.getAbsolutePath(), minimumVersion, extInfo.getTargetAppVersion()});
-                return false;
+    protected void invokeLifecycle(T extension, boolean activate) {
+        long start = System.nanoTime();
+        DispatchResult.Status status = DispatchResult.Status.FAILED;
+        try {
+            if (activate) {
+                extension.onActivate();
+            } else {
+                extension.onDeactivate();
             }
+            status = DispatchResult.Status.SUCCEEDED;
+        } finally {
+            recordMetrics(extension, activate ? ExtensionMetrics.ON_ACTIVATE : ExtensionMetrics.ON_DEACTIVATE,
+                    System.nanoTime() - start, status);
         }
+    }
 
-        return true;
+    /**
+     * Turns metrics recording on or off. Metrics are recorded by default - the overhead is
+     * a couple of atomic increments per call, which is negligible next to most extension
+     * hooks. Turning this off does not discard metrics already recorded; use resetMetrics() for that.
+     *
+     * @param isEnabled Whether to record metrics for lifecycle calls and dispatched hooks.
+     */
+    public void setMetricsEnabled(boolean isEnabled) {
+        this.isMetricsEnabled = isEnabled;
+    }
+
+    public boolean isMetricsEnabled() {
+        return isMetricsEnabled;
     }
 
     /**
-     * Scans the given jar file looking for any classes that matches T. The first matching
-     * class found will be loaded as an extension of type T and returned. Multiple extension
-     * implementations in the same jar file is therefore not supported - package them into
-     * separate jar files instead.
+     * Returns the metrics recorded for the named extension: invocation counts, error counts
+     * and latency histograms for its onActivate and onDeactivate calls, and for each hook
+     * dispatched to it. Metrics are kept after an extension is unloaded, so that they
+     * carry over if the same extension is loaded again.
      *
-     * @param jarFile        The jar file to scan.
-     * @param extensionClass The implementing class to look for.
-     * @return An implementation of T if one could be found and loaded, otherwise null.
+     * @param className The fully qualified class name of the extension in question.
+     * @return The ExtensionMetrics for that extension, or null if nothing has been recorded for it.
      */
-    public T loadExtensionFromJar(File jarFile, Class<T> extensionClass) {
-        try {
-            try (JarFile jar = new JarFile(jarFile.getAbsolutePath())) {
-                Enumeration<JarEntry> e = jar.entries();
-                URL[] urls = {new URL("jar:file:" + jarFile.getAbsolutePath() + "!/")};
-                try (URLClassLoader cl = URLClassLoader.newInstance(urls)) {
+    public ExtensionMetrics getMetrics(String className) {
+        return metrics.get(className);
+    }
 
-                    while (e.hasMoreElements()) {
-                        JarEntry je = e.nextElement();
-                        if (je.isDirectory() || !je.getName().endsWith(".class")) {
-                            continue;
-                        }
-                        // -6 because of .class
-                        String className = je.getName().substring(0, je.getName().length() - 6);
-                        className = className.replace('/', '.');
+    /**
+     * Returns the metrics for all extensions for which anything has been recorded, keyed by
+     * extension class name and sorted by class name.
+     *
+     * @return An unmodifiable Map of class name to ExtensionMetrics.
+     */
+    public Map<String, ExtensionMetrics> getAllMetrics() {
+        return Collections.unmodifiableMap(new TreeMap<>(metrics));
+    }
 
-                        // Check to make sure we don't already have one with this class name:
-                        if (getLoadedExtension(className) != null) {
-                            logger.log(Level.INFO, "Skipping already loaded extension: {0}", className);
-                            continue;
-                        }
+    /**
+     * Discards all metrics recorded so far.
+     */
+    public void resetMetrics() {
+        metrics.clear();
+    }
 
-                        // Load this class:
-                        Class candidate = cl.loadClass(className);
+    /**
+     * Records a single invocation of the given operation on the given extension, if metrics are enabled.
+     *
+     * @param extension    The extension that was invoked.
+     * @param operation    The operation name (a hook name, or one of the ExtensionMetrics lifecycle names).
+     * @param elapsedNanos How long the invocation took.
+     * @param status       The outcome of the invocation.
+     */
+    protected void recordMetrics(Object extension, String operation, long elapsedNanos, DispatchResult.Status status) {
+        if (!isMetricsEnabled || extension == null) {
+            return;
+        }
+        metrics.computeIfAbsent(extension.getClass().getName(), ExtensionMetrics::new)
+               .record(operation, elapsedNanos, status);
+    }
 
-                        // What I want to do:
-                        //    if (T.isAssignableFrom(candidate))
-                        // or:
-                        //    if (candidate instanceof T)
-                        // But these are both illegal in Java because of type erasure.
+    /**
+     * Supplies the Executor to use for dispatching hooks asynchronously - that is, for
+     * PARALLEL dispatches, and for any dispatch with a timeout. If not set, a shared
+     * pool of daemon threads is used.
+     *
+     * @param executor The Executor to use for hook dispatch, or null to use the default.
+     */
+    public void setDispatchExecutor(Executor executor) {
+        this.dispatchExecutor = executor;
+    }
+
+    /**
+     * Returns the Executor that will be used for asynchronous hook dispatch.
+     *
+     * @return The dispatch Executor supplied via setDispatchExecutor, or the default one.
+     */
+    protected Executor getDispatchExecutor() {
+        Executor executor = dispatchExecutor;
+        return executor != null ? executor : DefaultDispatchExecutor.INSTANCE;
+    }
+
+    /**
+     * Invokes the given hook on every enabled extension, and gathers up the results.
+     * This saves your application from having to hand-roll a loop over
+     * getEnabledLoadedExtensions() for each of your extension points, and lets you choose
+     * how the extensions are invoked (see DispatchMode). For example:
+     * <BLOCKQUOTE><PRE>
+     * DispatchResult&lt;MyExtension, MyModelObject&gt; result = extManager.dispatch("loadFromFile",
+     *         ext -&gt; ext.isFormatSupported(file) ? ext.loadFromFile(file) : null,
+     *         DispatchMode.FIRST_RESULT, 5000);
+     * MyModelObject model = result.getFirstResult();
+     * </PRE></BLOCKQUOTE>
+     * <p>
+     * Any exception thrown by the hook is caught and reported in the result, and does not stop
+     * the hook from being invoked on the remaining extensions. If a timeout is given, any
+     * invocation that takes longer than that is abandoned (its thread is interrupted) and
+     * reported as timed out, so one slow extension can't hold up the whole dispatch
+     * for more than the timeout.
+     * </p>
+     *
+     * @param hookName      A descriptive name for the hook, used for logging.
+     * @param hook          The hook to invoke on each extension.
+     * @param mode          How to invoke the extensions - see DispatchMode.
+     * @param timeoutMillis The maximum time to wait for each invocation, or 0 to wait forever.
+     * @param <R>           The type returned by the hook.
+     * @return A DispatchResult containing the outcome of each invocation, in extension name order.
+     */
+    public <R> DispatchResult<T, R> dispatch(String hookName, Function<? super T, ? extends R> hook,
+                                             DispatchMode mode, long timeoutMillis) {
+        checkCircuitBreakers();
+        return dispatch(hookName, getEnabledLoadedExtensions(), hook, mode, timeoutMillis);
+    }
+
+    /**
+     * Identical to dispatch(String, Function, DispatchMode, long), except that the hook is only
+     * invoked on the enabled extensions that implement the given type. See getEnabledExtensions(Class).
+     *
+     * @param hookName      A descriptive name for the hook, used for logging.
+     * @param type          The class or interface that extensions must implement to receive this hook.
+     * @param hook          The hook to invoke on each extension.
+     * @param mode          How to invoke the extensions - see DispatchMode.
+     * @param timeoutMillis The maximum time to wait for each invocation, or 0 to wait forever.
+     * @param <S>           The type that extensions must implement.
+     * @param <R>           The type returned by the hook.
+     * @return A DispatchResult containing the outcome of each invocation, in extension name order.
+     */
+    public <S, R> DispatchResult<S, R> dispatch(String hookName, Class<S> type, Function<? super S, ? extends R> hook,
+                                                DispatchMode mode, long timeoutMillis) {
+        checkCircuitBreakers();
+        return dispatch(hookName, getEnabledExtensions(type), hook, mode, timeoutMillis);
+    }
+
+    /**
+     * A convenience for dispatching hooks that don't return anything.
+     * See dispatch(String, Function, DispatchMode, long) for details.
+     *
+     * @param hookName      A descriptive name for the hook, used for logging.
+     * @param hook          The hook to invoke on each extension.
+     * @param mode          How to invoke the extensions - see DispatchMode.
+     * @param timeoutMillis The maximum time to wait for each invocation, or 0 to wait forever.
+     * @return A DispatchResult containing the outcome of each invocation, in extension name order.
+     */
+    public DispatchResult<T, Void> broadcast(String hookName, Consumer<? super T> hook, DispatchMode mode, long timeoutMillis) {
+        checkCircuitBreakers();
+        return dispatch(hookName, getEnabledLoadedExtensions(), ext -> {
+            hook.accept(ext);
+            return null;
+        }, mode, timeoutMillis);
+    }
+
+    /**
+     * Invoked internally to dispatch the given hook to the given list of extensions.
+     *
+     * @param hookName      A descriptive name for the hook, used for logging.
+     * @param targets       The extensions to invoke, in the order in which results should be reported.
+     * @param hook          The hook to invoke on each extension.
+     * @param mode          How to invoke the extensions - see DispatchMode.
+     * @param timeoutMillis The maximum time to wait for each invocation, or 0 to wait forever.
+     * @param <S>           The extension type.
+     * @param <R>           The type returned by the hook.
+     * @return A DispatchResult containing the outcome of each invocation.
+     */
+    protected <S, R> DispatchResult<S, R> dispatch(String hookName, List<S> targets, Function<? super S, ? extends R> hook,
+                                                   DispatchMode mode, long timeoutMillis) {
+        List<DispatchResult.Outcome<S, R>> outcomes = new ArrayList<>(targets.size());
+        if (mode == DispatchMode.PARALLEL) {
+            // Start everything at once, then wait for them in order:
+            List<TimedHook<S, R>> calls = new ArrayList<>(targets.size());
+            for (S extension : targets) {
+                calls.add(startHook(hookName, extension, hook));
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            for (TimedHook<S, R> call : calls) {
+                DispatchResult.Outcome<S, R> outcome = awaitHook(hookName, call, timeoutMillis > 0, deadline);
+                recordOutcome(outcome.getExtension(), hookName, outcome.getElapsedNanos(), outcome.getStatus());
+                outcomes.add(outcome);
+            }
+        } else {
+            for (S extension : targets) {
+                DispatchResult.Outcome<S, R> outcome;
+                if (timeoutMillis > 0) {
+                    TimedHook<S, R> call = startHook(hookName, extension, hook);
+                    outcome = awaitHook(hookName, call, true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+                } else {
+                    outcome = invokeHook(hookName, extension, hook);
+                }
+                recordOutcome(extension, hookName, outcome.getElapsedNanos(), outcome.getStatus());
+                outcomes.add(outcome);
+                if (mode == DispatchMode.FIRST_RESULT
+                        && outcome.getStatus() == DispatchResult.Status.SUCCEEDED
+                        && outcome.getResult() != null) {
+                    break;
+                }
+            }
+        }
+        return new DispatchResult<>(hookName, outcomes);
+    }
+
+    /**
+     * Invoked internally to record the outcome of a single hook invocation, both in the
+     * metrics and in the circuit breaker for that extension.
+     *
+     * @param extension    The extension that was invoked.
+     * @param hookName     The name of the hook.
+     * @param elapsedNanos How long the invocation took.
+     * @param status       The outcome of the invocation.
+     */
+    protected void recordOutcome(Object extension, String hookName, long elapsedNanos, DispatchResult.Status status) {
+        recordMetrics(extension, hookName, elapsedNanos, status);
+        CircuitBreakerPolicy policy = circuitBreakerPolicy;
+        if (policy == null || extension == null) {
+            return;
+        }
+        String className = extension.getClass().getName();
+        if (!registry.byClassName.containsKey(className)) {
+            return; // unloaded while the hook was running
+        }
+        CircuitBreaker breaker = circuitBreakers.computeIfAbsent(className, k -> new CircuitBreaker(policy));
+        applyTransition(className, breaker.recordCall(elapsedNanos, status, System.nanoTime()));
+    }
+
+    /**
+     * Turns on automatic quarantine of misbehaving extensions, according to the given policy.
+     * Each extension gets its own circuit breaker, which watches the outcome of every hook
+     * dispatched to that extension via dispatch() or broadcast(). When an extension fails
+     * or runs slow too often, it is disabled via setExtensionEnabled(), and listeners are
+     * notified via ExtensionManagerListener.circuitBreakerStateChanged(). After a cooling-off
+     * period it is re-enabled on probation, and either stays enabled or is disabled again
+     * depending on how it behaves. See CircuitBreakerPolicy for details.
+     * <p>
+     * Circuit breakers only move from open to half-open when somebody looks at them - this
+     * happens automatically at the start of every dispatch, but if your application dispatches
+     * only rarely, you can invoke checkCircuitBreakers() from a timer as well.
+     * </p>
+     * <p>
+     * Changing or removing the policy resets all circuit breakers. Any extension that is
+     * currently quarantined remains disabled until it is explicitly re-enabled.
+     * </p>
+     *
+     * @param policy The CircuitBreakerPolicy to apply to all extensions, or null to turn circuit breakers off.
+     */
+    public void setCircuitBreakerPolicy(CircuitBreakerPolicy policy) {
+        this.circuitBreakerPolicy = policy;
+        circuitBreakers.clear();
+    }
+
+    public CircuitBreakerPolicy getCircuitBreakerPolicy() {
+        return circuitBreakerPolicy;
+    }
+
+    /**
+     * Reports the current state of the circuit breaker for the named extension.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     * @return The state of its circuit breaker - CLOSED if circuit breakers are off or nothing has gone wrong.
+     */
+    public CircuitBreaker.State getCircuitBreakerState(String className) {
+        CircuitBreaker breaker = circuitBreakers.get(className);
+        return breaker == null ? CircuitBreaker.State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Moves any open circuit breakers whose cooling-off period has expired to the half-open
+     * state, re-enabling their extensions on probation. This is invoked automatically
+     * at the start of every dispatch.
+     */
+    public void checkCircuitBreakers() {
+        if (circuitBreakers.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<String, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+            applyTransition(entry.getKey(), entry.getValue().checkOpenTimeout(now));
+        }
+    }
+
+    /**
+     * Forgets everything the circuit breaker for the named extension knows, and closes it.
+     * If the extension was quarantined, it is re-enabled.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     */
+    public void resetCircuitBreaker(String className) {
+        CircuitBreaker breaker = circuitBreakers.get(className);
+        if (breaker != null) {
+            applyTransition(className, breaker.reset());
+        }
+    }
+
+    /**
+     * Invoked internally to act on a circuit breaker state change: the extension is disabled
+     * when its breaker opens, and re-enabled when it moves to half-open or closed. Then
+     * listeners are notified. An extension that is already misbehaving may well throw from
+     * onActivate or onDeactivate as well - if so, that is logged, and listeners are still notified.
+     */
+    private void applyTransition(String className, CircuitBreaker.Transition transition) {
+        if (transition == null) {
+            return;
+        }
+        CircuitBreakerPolicy policy = circuitBreakerPolicy;
+        boolean notify = policy == null || policy.isNotifyExtension();
+        try {
+            if (transition.getNewState() == CircuitBreaker.State.OPEN) {
+                logger.log(Level.WARNING, "Extension {0} is misbehaving and has been disabled.", className);
+                setExtensionEnabled(className, false, notify);
+            } else if (transition.getOldState() == CircuitBreaker.State.OPEN) {
+                logger.log(Level.INFO, "Re-enabling extension {0} after circuit breaker timeout.", className);
+                setExtensionEnabled(className, true, notify);
+            }
+        } catch (RuntimeException re) {
+            logger.log(Level.WARNING, "Extension " + className + " threw an exception while its circuit breaker went from "
+                    + transition.getOldState() + " to " + transition.getNewState(), re);
+        }
+        fireEvent(listener -> listener.circuitBreakerStateChanged(this, className,
+                                                                  transition.getOldState(), transition.getNewState()));
+    }
+
+    /**
+     * Invoked internally to let listeners know that an extension has been loaded and registered.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     */
+    protected void fireExtensionLoaded(String className) {
+        fireEvent(listener -> listener.extensionLoaded(this, className));
+    }
+
+    /**
+     * Invoked internally to let listeners know that an extension has been unloaded.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     */
+    protected void fireExtensionUnloaded(String className) {
+        fireEvent(listener -> listener.extensionUnloaded(this, className));
+    }
+
+    /**
+     * Invoked internally to let listeners know that an extension has been swapped for a new version.
+     *
+     * @param className The fully qualified class name of the extension in question.
+     */
+    protected void fireExtensionReplaced(String className) {
+        fireEvent(listener -> listener.extensionReplaced(this, className));
+    }
+
+    private void fireEvent(Consumer<ExtensionManagerListener> event) {
+        for (ExtensionManagerListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "ExtensionManagerListener threw an exception.", e);
+            }
+        }
+    }
+
+    /**
+     * Invoked internally to run a hook on the calling thread.
+     */
+    private <S, R> DispatchResult.Outcome<S, R> invokeHook(String hookName, S extension, Function<? super S, ? extends R> hook) {
+        long start = System.nanoTime();
+        try {
+            R result = hook.apply(extension);
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.SUCCEEDED, result, null, System.nanoTime() - start);
+        } catch (VirtualMachineError vme) {
+            throw vme;
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, "Extension " + extension.getClass().getName() + " failed in hook " + hookName, t);
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.FAILED, null, t, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Invoked internally to start a hook running on our dispatch Executor.
+     */
+    private <S, R> TimedHook<S, R> startHook(String hookName, S extension, Function<? super S, ? extends R> hook) {
+        TimedHook<S, R> call = new TimedHook<>(extension, hook);
+        try {
+            getDispatchExecutor().execute(call.task);
+        } catch (RejectedExecutionException ree) {
+            logger.log(Level.WARNING, "Unable to dispatch hook " + hookName + " to extension " + extension.getClass().getName(), ree);
+            call.task.cancel(false);
+        }
+        return call;
+    }
+
+    /**
+     * Invoked internally to wait for a hook started by startHook to finish, up to the given deadline.
+     */
+    private <S, R> DispatchResult.Outcome<S, R> awaitHook(String hookName, TimedHook<S, R> call, boolean hasDeadline, long deadline) {
+        S extension = call.extension;
+        try {
+            R result = hasDeadline
+                    ? call.task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                    : call.task.get();
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.SUCCEEDED, result, null, call.getElapsedNanos());
+        } catch (TimeoutException te) {
+            call.task.cancel(true);
+            logger.log(Level.WARNING, "Extension {0} timed out in hook {1}; abandoning it.",
+                    new Object[]{extension.getClass().getName(), hookName});
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.TIMED_OUT, null, null, call.getElapsedNanos());
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause() == null ? ee : ee.getCause();
+            logger.log(Level.WARNING, "Extension " + extension.getClass().getName() + " failed in hook " + hookName, cause);
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.FAILED, null, cause, call.getElapsedNanos());
+        } catch (InterruptedException | CancellationException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            call.task.cancel(true);
+            return new DispatchResult.Outcome<>(extension, DispatchResult.Status.FAILED, null, e, call.getElapsedNanos());
+        }
+    }
+
+    /**
+     * Removes all extensions that were previously loaded in this ExtensionManager,
+     * and returns it to an empty state. Client applications
+     * should use this with caution - if you have queried for configuration properties
+     * from all extensions before invoking this, then you should once again invoke
+     * getAllEnabledExtensionProperties() because the list of properties will
+     * likely decrease as extensions are unloaded, and your UI should remove the properties
+     * that no longer exist.
+     *
+     * @return The count of extensions that were actually removed as a result of this call.
+     */
+    public int unloadAllExtensions() {
+        List<String> extensionClasses = new ArrayList<>(registry.byClassName.keySet());
+        int removedCount = 0;
+        for (String extensionClass : extensionClasses) {
+            if (unloadExtension(extensionClass)) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * Unregisters the given extension, if it was registered. The extension will receive a
+     * deactivate() message before it is unloaded, if it was enabled. Client applications
+     * should use this with caution - if you have queried for configuration properties
+     * from all extensions before invoking this, then you should once again invoke
+     * getAllEnabledExtensionProperties() because the list of properties will
+     * likely decrease as extensions are unloaded, and your UI should remove the properties
+     * that no longer exist.
+     *
+     * @param className The class of the extension to be unregistered.
+     * @return true if an extension was actually removed as a result of this call.
+     */
+    public boolean unloadExtension(String className) {
+       // Remove it from the registry first, so that nobody else can get at it while it shuts down:
+       ExtensionWrapper wrapper = unregisterWrapper(className);
+       if (wrapper == null) {
+           return false;
+       }
+       circuitBreakers.remove(className);
+       try {
+           if (wrapper.extension != null && wrapper.isEnabled) {
+               invokeLifecycle(wrapper.extension, false);
+           }
+       } finally {
+           // Close the class loader (unless other extensions from the same jar are still using it)
+           // and drop our references so that the extension's classes can be garbage collected,
+           // even if it didn't shut down cleanly:
+           releaseClassLoader(wrapper);
+           wrapper.extension = null;
+           fireExtensionUnloaded(className);
+       }
+       return true;
+    }
+
+    /**
+     * Replaces the named extension, which must already be loaded, with the version of that same
+     * class found in the given jar file. This is how you ship a fix to a single extension without
+     * disturbing anything else: the new version is loaded into a fresh class loader and activated
+     * (if the extension is enabled) while the old version carries on running. Then the registry is
+     * switched over to the new version in one step, and only after that is the old version
+     * deactivated and unloaded. So, there is never a moment when the extension is missing -
+     * readers see either the old version or the new one.
+     * <p>
+     * The new version keeps the enabled or disabled status of the old one. If the new version can't
+     * be loaded, its required dependencies are not loaded, or its onActivate() throws an exception,
+     * nothing is swapped and the old version stays in place. The circuit breaker for the extension
+     * (if any) is reset, but its metrics are kept. Registered ExtensionManagerListeners receive
+     * an extensionReplaced event once the swap is complete.
+     * </p>
+     *
+     * @param className The fully qualified class name of the extension to replace.
+     * @param jarFile   The jar file containing the new version of that class.
+     * @param extClass  The implementation class to look for.
+     * @return true if the extension was replaced, false if the old version is still in place
+     *         (or there was no such extension loaded).
+     */
+    public boolean replaceExtension(String className, File jarFile, Class<T> extClass) {
+        ExtensionWrapper oldWrapper = registry.byClassName.get(className);
+        if (oldWrapper == null) {
+            logger.log(Level.WARNING, "replaceExtension: extension {0} is not loaded; nothing to replace.", className);
+            return false;
+        }
+        AppExtensionInfo extInfo = extractExtInfoCached(jarFile);
+        ExtensionDependency missing = extInfo == null ? null : findMissingDependency(extInfo);
+        if (missing != null) {
+            logger.log(Level.WARNING, "replaceExtension: not replacing {0} from jar {1}: required dependency {2} is not loaded.",
+                    new Object[]{className, jarFile.getAbsolutePath(), missing});
+            return false;
+        }
+
+        // Load and start up the new version off to the side, while the old one is still in service:
+        ExtensionWrapper newWrapper = loadExtensionWrapper(jarFile, extClass, className, true);
+        if (newWrapper == null) {
+            logger.log(Level.WARNING, "replaceExtension: unable to load {0} from jar {1}; keeping the old version.",
+                    new Object[]{className, jarFile.getAbsolutePath()});
+            return false;
+        }
+        boolean isEnabled = oldWrapper.isEnabled;
+        newWrapper.isEnabled = isEnabled;
+        newWrapper.extInfo = extInfo;
+        if (isEnabled) {
+            try {
+                invokeLifecycle(newWrapper.extension, true);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "replaceExtension: new version of " + className
+                        + " failed to activate; keeping the old version.", e);
+                releaseClassLoader(newWrapper);
+                return false;
+            }
+        }
+
+        // Swap it in, but only if nobody else has unloaded, replaced, enabled or disabled the
+        // old version while we were busy - otherwise we'd be undoing their change:
+        newWrapper.name = newWrapper.extension.getInfo().getName();
+        boolean swapped = false;
+        synchronized (registryLock) {
+            if (registry.byClassName.get(className) == oldWrapper && oldWrapper.isEnabled == isEnabled) {
+                Map<String, ExtensionWrapper> newMap = new HashMap<>(registry.byClassName);
+                newMap.put(className, newWrapper);
+                registry = new Registry(newMap);
+                swapped = true;
+            }
+        }
+        if (!swapped) {
+            logger.log(Level.WARNING, "replaceExtension: extension {0} changed while its replacement was loading; "
+                    + "discarding the replacement.", className);
+            retireWrapper(className, newWrapper);
+            return false;
+        }
+        circuitBreakers.remove(className);
+        ExtensionScanCache cache = scanCache;
+        if (cache != null) {
+            List<String> classNames = cache.getExtensionClassNames(jarFile);
+            if (classNames == null || !classNames.contains(className)) {
+                cache.putExtensionClassName(jarFile, className);
+            }
+        }
+
+        // Now that nobody can reach the old version any more, shut it down:
+        retireWrapper(className, oldWrapper);
+        fireExtensionReplaced(className);
+        return true;
+    }
+
+    /**
+     * Invoked internally to shut down an extension that is no longer in the registry: it is
+     * deactivated (if it was enabled), and its class loader is released. Exceptions thrown by the
+     * extension are logged. Unlike unloadExtension(), we leave the wrapper pointing at the extension,
+     * so that a reader still holding the registry snapshot from just before the swap gets the old
+     * version rather than null.
+     */
+    private void retireWrapper(String className, ExtensionWrapper wrapper) {
+        try {
+            if (wrapper.extension != null && wrapper.isEnabled) {
+                invokeLifecycle(wrapper.extension, false);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Extension " + className + " threw an exception while being deactivated.", e);
+        } finally {
+            releaseClassLoader(wrapper);
+        }
+    }
+
+    /**
+     * Returns the class name of the extension that was loaded from the given jar file, if any.
+     * If more than one extension was loaded from that jar, the first one (in class name order)
+     * is returned - see findExtensionsLoadedFrom.
+     *
+     * @param jarFile A jar file.
+     * @return The fully qualified class name of the extension loaded from that jar, or null.
+     */
+    public String findExtensionLoadedFrom(File jarFile) {
+        List<String> classNames = findExtensionsLoadedFrom(jarFile);
+        return classNames.isEmpty() ? null : classNames.get(0);
+    }
+
+    /**
+     * Returns the class names of all extensions that were loaded from the given jar file.
+     *
+     * @param jarFile A jar file.
+     * @return A List of fully qualified class names, sorted by name. Empty if nothing was loaded from that jar.
+     */
+    public List<String> findExtensionsLoadedFrom(File jarFile) {
+        File target = jarFile.getAbsoluteFile();
+        List<String> classNames = new ArrayList<>();
+        for (Map.Entry<String, ExtensionWrapper> entry : registry.byClassName.entrySet()) {
+            File sourceJar = entry.getValue().sourceJar;
+            if (sourceJar != null && sourceJar.getAbsoluteFile().equals(target)) {
+                classNames.add(entry.getKey());
+            }
+        }
+        Collections.sort(classNames);
+        return classNames;
+    }
+
+    /**
+     * Watches the given directory for extension jars being added, removed, or replaced, and
+     * loads, unloads, or hot-swaps just those extensions, without disturbing any others. This lets
+     * long-running applications pick up new or updated extensions without a restart. Newly loaded
+     * extensions are activated (if enabled), and removed ones are deactivated, so they go through the same
+     * lifecycle as if the application had been restarted. Registered ExtensionManagerListeners
+     * are notified of each load, unload and replacement. See ExtensionDirectoryWatcher for details.
+     * <p>
+     * Extensions that are already loaded from this directory are left alone unless their jar changes.
+     * Any other jars already in the directory are picked up shortly after the watcher starts.
+     * Use close() on the returned watcher to stop watching.
+     * </p>
+     *
+     * @param directory      The directory to watch (will be watched recursively).
+     * @param extClass       The implementation class to look for.
+     * @param appName        The application name to match against.
+     * @param minimumVersion The minimum application version (or range of versions) that the extension must target.
+     * @return A running ExtensionDirectoryWatcher, or null if the directory could not be watched.
+     * @throws IllegalArgumentException If minimumVersion is not a valid version or VersionRange.
+     */
+    public ExtensionDirectoryWatcher<T> watchDirectory(File directory, Class<T> extClass, String appName, String minimumVersion) {
+        ExtensionDirectoryWatcher<T> watcher = new ExtensionDirectoryWatcher<>(this, directory, extClass, appName, minimumVersion);
+        try {
+            watcher.start();
+            return watcher;
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "ExtensionManager.watchDirectory: unable to watch directory " + directory.getAbsolutePath(), ioe);
+            return null;
+        }
+    }
+
+    /**
+     * Scans the given directory looking for candidate jar files that contain an extension matching
+     * the given parameters. For each jar that is found, an attempt will be made to load the
+     * extension class out of that jar file. All successfully loaded extension classes will
+     * then be loaded into this ExtensionManager.
+     * <p>
+     * Before anything is loaded, the dependencies declared in each jar's extInfo.json are
+     * resolved (see resolveDependencies). Jars whose required dependencies can't be satisfied,
+     * or that are part of a dependency cycle, are skipped without being opened, and the rest
+     * are loaded so that each extension's dependencies are loaded before it is.
+     * </p>
+     * <p>
+     * Note that this is a shorthand way of doing this more manually (or jar by jar) via
+     * the findCandidateExtensionJars, extractExtInfo, and jarFileMeetsRequirements methods.
+     * Generally, this is the better entry point, but if you have a specific jar file that
+     * you want to scan and load from, those other methods can be used instead.
+     * </p>
+     *
+     * @param directory      The directory to scan.
+     * @param extClass       The implementation class to look for.
+     * @param appName        The application name to match against.
+     * @param minimumVersion The minimum application version that the extension must target.
+     * @return The count of extensions that were loaded by this operation.
+     */
+    public int loadExtensions(File directory, Class<T> extClass, String appName, String minimumVersion) {
+        return loadExtensions(directory, extClass, appName, minimumVersion, null);
+    }
+
+    /**
+     * Identical to loadExtensions(File, Class, String, String), except that the initial scan
+     * for candidate jar files is done in parallel using the given Executor. See
+     * findCandidateExtensionJars(File, String, String, Executor) for details.
+     *
+     * @param directory      The directory to scan.
+     * @param extClass       The implementation class to look for.
+     * @param appName        The application name to match against.
+     * @param minimumVersion The minimum application version that the extension must target.
+     * @param scanExecutor   The Executor to use for scanning jar files, or null to scan serially.
+     * @return The count of extensions that were loaded by this operation.
+     */
+    public int loadExtensions(File directory, Class<T> extClass, String appName, String minimumVersion, Executor scanExecutor) {
+        return loadExtensions(directory, extClass, appName, minimumVersion, scanExecutor, new LoadTracker(null, null))
+                .getLoadedCount();
+    }
+
+    /**
+     * Does the same thing as loadExtensions(File, Class, String, String), but in the background,
+     * so that your application can get on with other things (such as showing a splash screen)
+     * in the meantime. Loading is done on the dispatch Executor (see setDispatchExecutor).
+     * See loadExtensionsAsync(File, Class, String, String, Executor, Consumer) for details.
+     *
+     * @param directory      The directory to scan.
+     * @param extClass       The implementation class to look for.
+     * @param appName        The application name to match against.
+     * @param minimumVersion The minimum application version that the extension must target.
+     * @param progress       A callback to receive progress updates, or null.
+     * @return A CompletableFuture that will complete with a LoadReport once loading is finished.
+     */
+    public CompletableFuture<LoadReport> loadExtensionsAsync(File directory, Class<T> extClass, String appName,
+                                                             String minimumVersion, Consumer<LoadProgress> progress) {
+        return loadExtensionsAsync(directory, extClass, appName, minimumVersion, getDispatchExecutor(), progress);
+    }
+
+    /**
+     * Does the same thing as loadExtensions(File, Class, String, String), but in the background
+     * on the given Executor. Each extension is registered as soon as it has been loaded, so it
+     * shows up in getAllLoadedExtensions() and friends right away, without waiting for the
+     * rest of the batch. The optional progress callback receives a LoadProgress after each jar
+     * is scanned, loaded, rejected, or fails to load - it is invoked on the loading thread, so if
+     * it touches the UI, it should hand off to the event dispatch thread.
+     * <p>
+     * Cancelling the returned future stops loading after the jar that is currently being loaded.
+     * Extensions that were already loaded stay loaded. As with the synchronous version,
+     * extensions are not activated - use activateAll() or activateAllInParallel() once the
+     * future completes.
+     * </p>
+     *
+     * @param directory      The directory to scan.
+     * @param extClass       The implementation class to look for.
+     * @param appName        The application name to match against.
+     * @param minimumVersion The minimum application version that the extension must target.
+     * @param executor       The Executor on which to do the loading.
+     * @param progress       A callback to receive progress updates, or null.
+     * @return A CompletableFuture that will complete with a LoadReport once loading is finished.
+     */
+    public CompletableFuture<LoadReport> loadExtensionsAsync(File directory, Class<T> extClass, String appName,
+                                                             String minimumVersion, Executor executor,
+                                                             Consumer<LoadProgress> progress) {
+        CompletableFuture<LoadReport> future = new CompletableFuture<>();
+        LoadTracker tracker = new LoadTracker(progress, future::isCancelled);
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(loadExtensions(directory, extClass, appName, minimumVersion, null, tracker));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+        return future;
+    }
+
+    /**
+     * Invoked internally to do the actual work of loadExtensions and loadExtensionsAsync.
+     */
+    private LoadReport loadExtensions(File directory, Class<T> extClass, String appName, String minimumVersion,
+                                      Executor scanExecutor, LoadTracker tracker) {
+        Map<File, AppExtensionInfo> map = scanCandidates(directory, appName, minimumVersion, scanExecutor, tracker);
+        List<File> jarList = resolveDependencies(map, tracker);
+        ExtensionScanCache cache = scanCache;
+        for (File jarFile : jarList) {
+            if (tracker.isCancelled()) {
+                break;
+            }
+
+            // Our dependencies were put ahead of us, but loadAndRegister double-checks
+            // that they actually loaded successfully:
+            loadAndRegister(jarFile, map.get(jarFile), extClass, tracker);
+        }
+        if (cache != null) {
+            cache.save();
+        }
+        return tracker.toReport();
+    }
+
+    /**
+     * Loads the extension(s) out of the given candidate jar, and registers them with this
+     * ExtensionManager. This is meant for use with streamCandidateExtensionJars(), so that
+     * extensions can be loaded while the scan is still going on. As with loadExtensions(),
+     * the extensions are not activated.
+     * <p>
+     * Unlike loadExtensions(), no dependency ordering is done here: if the candidate declares
+     * required dependencies, they must already be loaded, or the candidate is skipped.
+     * </p>
+     *
+     * @param candidate The candidate to load, as returned by streamCandidateExtensionJars().
+     * @param extClass  The implementation class to look for.
+     * @return true if at least one extension was loaded and registered.
+     */
+    public boolean loadExtension(ExtensionCandidate candidate, Class<T> extClass) {
+        return !loadAndRegister(candidate.getJarFile(), candidate.getExtInfo(), extClass, new LoadTracker(null, null)).isEmpty();
+    }
+
+    /**
+     * Invoked internally to load and register the extension(s) from a single candidate jar, after
+     * checking that its required dependencies are loaded.
+     *
+     * @return The class names of the extensions that were loaded, empty if nothing was loaded.
+     */
+    private List<String> loadAndRegister(File jarFile, AppExtensionInfo extInfo, Class<T> extClass, LoadTracker tracker) {
+        ExtensionDependency missing = findMissingDependency(extInfo);
+        if (missing != null) {
+            logger.log(Level.WARNING, "Skipping extension jar {0}: required dependency {1} is not loaded.",
+                    new Object[]{jarFile.getAbsolutePath(), missing});
+            tracker.rejected(jarFile, "required dependency " + missing + " is not loaded");
+            return Collections.emptyList();
+        }
+        // The extInfo takes precedence over any other declaration (see findDeclaredExtensionClasses):
+        ExtensionScanCache cache = scanCache;
+        List<String> declaredClassNames = extInfo.getExtensionClasses();
+        if (declaredClassNames.isEmpty() && cache != null) {
+            List<String> cachedClassNames = cache.getExtensionClassNames(jarFile);
+            if (cachedClassNames != null) {
+                declaredClassNames = cachedClassNames;
+            }
+        }
+
+        // A deferred extension gets its metadata from the jar's extInfo, so we can only
+        // defer jars that contain exactly one extension:
+        if (isLazyLoading && declaredClassNames.size() == 1) {
+            return registerDeferred(jarFile, extInfo, extClass, declaredClassNames.get(0), tracker);
+        }
+        List<ExtensionWrapper> wrappers = loadExtensionWrappers(jarFile, extClass, declaredClassNames);
+        if (wrappers.isEmpty()) {
+            tracker.failed(jarFile, "no suitable extension could be loaded from this jar");
+            return Collections.emptyList();
+        }
+        List<String> classNames = new ArrayList<>(wrappers.size());
+        for (ExtensionWrapper wrapper : wrappers) {
+            String className = wrapper.extension.getClass().getName();
+            wrapper.extInfo = extInfo;
+            if (!registerWrapper(className, wrapper, false)) {
+                logger.log(Level.INFO, "Skipping already loaded extension: {0}", className);
+                releaseClassLoader(wrapper);
+                continue;
+            }
+            classNames.add(className);
+        }
+        if (classNames.isEmpty()) {
+            tracker.rejected(jarFile, "all extensions in this jar are already loaded");
+            return classNames;
+        }
+        if (cache != null) {
+            cache.putExtensionClassNames(jarFile, classNames);
+        }
+        tracker.loaded(jarFile, classNames);
+        for (String className : classNames) {
+            fireExtensionLoaded(className);
+        }
+        return classNames;
+    }
+
+    /**
+     * Invoked internally to register an extension without instantiating it. See setLazyLoading.
+     *
+     * @return A list containing the class name of the extension that was registered, or an empty list if it was already loaded.
+     */
+    private List<String> registerDeferred(File jarFile, AppExtensionInfo extInfo, Class<T> extClass, String className,
+                                          LoadTracker tracker) {
+        ExtensionWrapper wrapper = new ExtensionWrapper();
+        wrapper.sourceJar = jarFile;
+        wrapper.isEnabled = true;
+        wrapper.isDeferred = true;
+        wrapper.extInfo = extInfo;
+        wrapper.extensionClass = extClass;
+        if (!registerWrapper(className, wrapper, false)) {
+            logger.log(Level.INFO, "Skipping already loaded extension: {0}", className);
+            tracker.rejected(jarFile, "extension " + className + " is already loaded");
+            return Collections.emptyList();
+        }
+        logger.log(Level.FINE, "Deferred loading of extension {0} from jar {1}", new Object[]{className, jarFile.getAbsolutePath()});
+        tracker.loaded(jarFile, Collections.singletonList(className));
+        fireExtensionLoaded(className);
+        return Collections.singletonList(className);
+    }
+
+    /**
+     * Invoked internally to instantiate a deferred extension on first use. Only one thread
+     * does the work; any others asking for the same extension wait for it.
+     *
+     * @return The extension, or null if it could not be loaded (in which case it has been unloaded).
+     */
+    private T instantiateDeferred(String className, ExtensionWrapper wrapper) {
+        synchronized (wrapper) {
+            if (!wrapper.isDeferred) {
+                return wrapper.extension;
+            }
+            ExtensionWrapper loaded = loadExtensionWrapper(wrapper.sourceJar, wrapper.extensionClass, className, true);
+            if (loaded != null) {
+                wrapper.classLoader = loaded.classLoader;
+                wrapper.extension = loaded.extension;
+                wrapper.isDeferred = false;
+            }
+        }
+
+        if (wrapper.extension == null) {
+            logger.log(Level.SEVERE, "Unable to load deferred extension {0} from jar {1}; unloading it.",
+                    new Object[]{className, wrapper.sourceJar.getAbsolutePath()});
+            unloadExtension(className);
+            return null;
+        }
+
+        // Republish the registry so that the list snapshots include this extension. If it was
+        // unloaded while we were busy loading it, then it's up to us to clean up:
+        boolean isRegistered;
+        synchronized (registryLock) {
+            isRegistered = registry.byClassName.get(className) == wrapper;
+            if (isRegistered) {
+                registry = new Registry(registry.byClassName);
+            }
+        }
+        if (!isRegistered) {
+            releaseClassLoader(wrapper);
+            wrapper.extension = null;
+            return null;
+        }
+        logger.log(Level.FINE, "Instantiated deferred extension {0}", className);
+        return wrapper.extension;
+    }
+
+    /**
+     * Invoked internally to get a registry snapshot in which every extension (or every enabled
+     * extension, if isEnabledOnly is set) has been instantiated. If lazy loading is off, this is
+     * just the current registry.
+     */
+    private Registry getInstantiatedRegistry(boolean isEnabledOnly) {
+        Registry current = registry;
+        if (isEnabledOnly ? !current.hasDeferredEnabled : !current.hasDeferred) {
+            return current;
+        }
+        for (Map.Entry<String, ExtensionWrapper> entry : current.byClassName.entrySet()) {
+            ExtensionWrapper wrapper = entry.getValue();
+            if (wrapper.isDeferred && (wrapper.isEnabled || !isEnabledOnly)) {
+                instantiateDeferred(entry.getKey(), wrapper);
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Works out which of the given candidate jars can be loaded, based on the dependencies
+     * declared in their extInfo.json, and returns them in the order in which they should be
+     * loaded. Extensions that are already loaded in this ExtensionManager count towards
+     * satisfying dependencies, under the name in their jar's extInfo.json as well as under
+     * their own name. The same check is repeated just before each jar is loaded. Rejected jars are logged and left out. This only looks at the
+     * metadata - no class loaders are created. See DependencyResolver for details.
+     *
+     * @param candidates A Map of jar files to AppExtensionInfo, as returned by findCandidateExtensionJars.
+     * @return The jar files that can be loaded, in dependency order (otherwise in path order).
+     */
+    public List<File> resolveDependencies(Map<File, AppExtensionInfo> candidates) {
+        return resolveDependencies(candidates, new LoadTracker(null, null));
+    }
+
+    private List<File> resolveDependencies(Map<File, AppExtensionInfo> candidates, LoadTracker tracker) {
+        List<File> jarList = new ArrayList<>(candidates.keySet());
+        jarList.sort(Comparator.comparing(File::getAbsolutePath));
+        Map<File, AppExtensionInfo> sorted = new LinkedHashMap<>();
+        for (File jarFile : jarList) {
+            sorted.put(jarFile, candidates.get(jarFile));
+        }
+
+        DependencyResolver.Result result = DependencyResolver.resolve(sorted, getAvailableExtensions());
+        for (Map.Entry<File, String> entry : result.getRejected().entrySet()) {
+            logger.log(Level.WARNING, "Skipping extension jar {0}: {1}",
+                    new Object[]{entry.getKey().getAbsolutePath(), entry.getValue()});
+            tracker.rejected(entry.getKey(), entry.getValue());
+        }
+        return result.getLoadOrder();
+    }
+
+    /**
+     * Returns the names and versions that currently loaded extensions can satisfy dependencies
+     * with. Both resolveDependencies() and the check just before each jar is loaded use this,
+     * so that they always agree. Each loaded jar contributes the name and version from its
+     * extInfo.json, which is what DependencyResolver matches candidates on, and each instantiated
+     * extension also contributes the name and version from its own getInfo(). For a jar that
+     * provides several extensions, those are different, and either one will do. An extension
+     * that is still deferred (see setLazyLoading) can only contribute its jar's extInfo.json,
+     * so that we don't have to instantiate it here.
+     */
+    private Map<String, String> getAvailableExtensions() {
+        Map<String, String> versions = new HashMap<>();
+        for (ExtensionWrapper wrapper : registry.byClassName.values()) {
+            AppExtensionInfo jarInfo = wrapper.extInfo;
+            if (jarInfo != null) {
+                versions.put(jarInfo.getName(), jarInfo.getVersion());
+            }
+            T extension = wrapper.isDeferred ? null : wrapper.extension;
+            AppExtensionInfo info = extension == null ? null : extension.getInfo();
+            if (info != null) {
+                versions.put(info.getName(), info.getVersion());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Checks that the required dependencies of the given extension are actually loaded
+     * (see getAvailableExtensions).
+     *
+     * @return The first missing required dependency, or null if they're all present.
+     */
+    private ExtensionDependency findMissingDependency(AppExtensionInfo extInfo) {
+        if (extInfo.getDependencies().isEmpty()) {
+            return null;
+        }
+        Map<String, String> loaded = getAvailableExtensions();
+        for (ExtensionDependency dependency : extInfo.getDependencies()) {
+            if (!dependency.isOptional() && (!loaded.containsKey(dependency.getName())
+                    || !dependency.isSatisfiedBy(dependency.getName(), loaded.get(dependency.getName())))) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scans the given directory looking for Jar files that contain an extInfo.json file, and
+     * if one is found, will check its parameters against the given appName and minimumVersion
+     * to make sure the extension would work for that application. The return is a Map of
+     * File to AppExtensionInfo, which can then be loaded via one of the loadExtension methods.
+     * Note that this method does not actually try to load the extension, it simply scans
+     * to find which jar file would be good candidates for loading. This can therefore be
+     * used for autodiscovery of extension jars in a given directory safely, without actually
+     * loading them. Note that both appName and minimumVersion are optional (you can pass null
+     * to disable those checks), but the result may be jar files that contain extensions
+     * for the wrong app, or for the wrong version of the app, or both.
+     *
+     * @param directory      The directory to scan (will be scanned recursively).
+     * @param appName        The application name to check for, or null to skip this check.
+     * @param minimumVersion The minimum required app version, or null to skip this check.
+     * @return A Map of jar files to AppExtensionInfo objects.
+     */
+    public Map<File, AppExtensionInfo> findCandidateExtensionJars(File directory, String appName, String minimumVersion) {
+        return scanCandidates(directory, appName, minimumVersion, null, new LoadTracker(null, null));
+    }
+
+    /**
+     * Identical to findCandidateExtensionJars(File, String, String), except that jar files are
+     * opened and their extInfo.json parsed concurrently using the given Executor. This is
+     * worthwhile if your extension directory contains a large number of jar files.
+     * If you don't have an Executor handy, ForkJoinPool.commonPool() is a reasonable choice.
+     * <p>
+     *     The results are merged back in sorted order by jar path once all jars have been
+     *     opened, and the jarFileMeetsRequirements check is done at that time, on the
+     *     calling thread. So, the returned map and the logging output are the same as
+     *     for a serial scan of the same directory.
+     * </p>
+     *
+     * @param directory      The directory to scan (will be scanned recursively).
+     * @param appName        The application name to check for, or null to skip this check.
+     * @param minimumVersion The minimum required app version, or null to skip this check.
+     * @param executor       The Executor to use for scanning, or null to scan serially on the calling thread.
+     * @return A Map of jar files to AppExtensionInfo objects.
+     */
+    public Map<File, AppExtensionInfo> findCandidateExtensionJars(File directory, String appName, String minimumVersion, Executor executor) {
+        return scanCandidates(directory, appName, minimumVersion, executor, new LoadTracker(null, null));
+    }
+
+    /**
+     * A lazy alternative to findCandidateExtensionJars: the directory is walked as the returned
+     * Stream is consumed, and each qualifying jar is emitted (along with its AppExtensionInfo)
+     * as soon as it has been checked, without building up a list of all jar files or all
+     * results first. This keeps memory use flat on very large extension directories, and lets
+     * you start loading extensions (see loadExtension(ExtensionCandidate, Class)) before the
+     * scan has finished:
+     * <BLOCKQUOTE><PRE>
+     * try (Stream&lt;ExtensionCandidate&gt; candidates = extManager.streamCandidateExtensionJars(dir, "MyApp", "1.0")) {
+     *     candidates.forEach(candidate -&gt; extManager.loadExtension(candidate, MyAppExtension.class));
+     * }
+     * </PRE></BLOCKQUOTE>
+     * <p>
+     * The Stream holds open directory handles, so it must be closed when you're done with it, as
+     * above. Closing it also saves the scan cache, if there is one. Jars are emitted in the order
+     * in which they are found in the file system, which is not necessarily sorted. An I/O error
+     * part way through the walk is thrown as an UncheckedIOException from the Stream operation.
+     * </p>
+     *
+     * @param directory      The directory to scan (will be scanned recursively).
+     * @param appName        The application name to check for, or null to skip this check.
+     * @param minimumVersion The minimum required app version, or null to skip this check.
+     * @return A lazily populated Stream of candidate jars, which must be closed after use.
+     */
+    public Stream<ExtensionCandidate> streamCandidateExtensionJars(File directory, String appName, String minimumVersion) {
+        VersionRange requirement;
+        try {
+            requirement = minimumVersion == null ? null : VersionRange.parse(minimumVersion);
+        } catch (IllegalArgumentException iae) {
+            logger.log(Level.SEVERE, "ExtensionManager.streamCandidateExtensionJars: unable to parse app version requirement \"{0}\".",
+                    minimumVersion);
+            return Stream.empty();
+        }
+        Stream<Path> paths;
+        try {
+            paths = Files.walk(directory.toPath());
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "ExtensionManager.streamCandidateExtensionJars: unable to scan directory "
+                    + directory.getAbsolutePath(), ioe);
+            return Stream.empty();
+        }
+        return paths
+                .filter(path -> path.getFileName() != null
+                        && path.getFileName().toString().toLowerCase().endsWith(".jar")
+                        && Files.isRegularFile(path))
+                .map(Path::toFile)
+                .map(jarFile -> {
+                    AppExtensionInfo extInfo = extractExtInfoCached(jarFile);
+                    return extInfo == null ? null : new ExtensionCandidate(jarFile, extInfo);
+                })
+                .filter(candidate -> candidate != null
+                        && jarFileMeetsRequirementRange(candidate.getJarFile(), candidate.getExtInfo(), appName, requirement))
+                .onClose(this::saveScanCache);
+    }
+
+    /**
+     * Invoked internally to scan for candidate jars, either serially or using the given Executor,
+     * and to report each jar that is scanned or rejected to the given LoadTracker.
+     */
+    private Map<File, AppExtensionInfo> scanCandidates(File directory, String appName, String minimumVersion,
+                                                       Executor executor, LoadTracker tracker) {
+        List<File> jarFiles = FileSystemUtil.findFiles(directory, true, "jar");
+        jarFiles.sort(Comparator.comparing(File::getAbsolutePath));
+        tracker.setJarCount(jarFiles.size());
+
+        // Parse the version requirement just once, rather than for every jar:
+        VersionRange requirement = null;
+        boolean isRequirementValid = true;
+        if (minimumVersion != null) {
+            try {
+                requirement = VersionRange.parse(minimumVersion);
+            } catch (IllegalArgumentException iae) {
+                logger.log(Level.SEVERE, "ExtensionManager.findCandidateExtensionJars: unable to parse app version requirement \"{0}\".",
+                        minimumVersion);
+                isRequirementValid = false;
+            }
+        }
+
+        // If we have an Executor, kick off all the extraction work up front:
+        List<CompletableFuture<AppExtensionInfo>> futures = new ArrayList<>(jarFiles.size());
+        if (executor != null) {
+            for (File jarFile : jarFiles) {
+                futures.add(CompletableFuture.supplyAsync(() -> extractExtInfoCached(jarFile), executor));
+            }
+        }
+
+        // Now collect the results in jar order so that the outcome is deterministic:
+        Map<File, AppExtensionInfo> map = new LinkedHashMap<>();
+        for (int i = 0; i < jarFiles.size(); i++) {
+            File jarFile = jarFiles.get(i);
+            AppExtensionInfo extInfo;
+            try {
+                extInfo = executor == null ? extractExtInfoCached(jarFile) : futures.get(i).join();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "ExtensionManager.findCandidateExtensionJars: unable to scan jar file " + jarFile.getAbsolutePath(), e);
+                tracker.scanned(jarFile);
+                tracker.failed(jarFile, "unable to scan jar file: " + e.getMessage());
+                continue;
+            }
+            tracker.scanned(jarFile);
+            if (extInfo == null) {
+                tracker.rejected(jarFile, "no extInfo.json found");
+                continue;
+            }
+            if (isRequirementValid && jarFileMeetsRequirementRange(jarFile, extInfo, appName, requirement)) {
+                map.put(jarFile, extInfo);
+            } else {
+                tracker.rejected(jarFile, "extension does not target this application or version");
+            }
+        }
+
+        saveScanCache();
+        return map;
+    }
+
+    /**
+     * Checks if the given jar file and extension info meet the given requirements (that is,
+     * that the application name and minimum version requirements are met). This does not guarantee
+     * that an extension can be successfully loaded out of the given jar file, but it is
+     * a pretty good indicator.
+     * <p>
+     *     Versions are compared segment by segment, so "1.10" is newer than "1.9", and versions
+     *     like "2.1.3" are fine. The minimumVersion can also be a range, such as "[2.0,3.0)" or
+     *     "^2.0", to turn away extensions that target some future version of the application -
+     *     see VersionRange. Likewise, an extension can give a range as its target app version,
+     *     in which case it is accepted if that range overlaps the one given here.
+     * </p>
+     *
+     * @param jarFile        The jar file in question.
+     * @param extInfo        The extension info that was extracted from that jar via extractExtInfo
+     * @param appName        The name of the application to check for, or null to skip this check.
+     * @param minimumVersion The minimum app version (or range of versions) that the extension must target,
+     *                       or null to skip this check.
+     * @return true if the jar file looks good, false otherwise.
+     */
+    public boolean jarFileMeetsRequirements(File jarFile, AppExtensionInfo extInfo, String appName, String minimumVersion) {
+        VersionRange requirement = null;
+        if (minimumVersion != null) {
+            try {
+                requirement = VersionRange.parse(minimumVersion);
+            } catch (IllegalArgumentException iae) {
+                logger.log(Level.WARNING, "jarFileMeetsRequirements: unable to parse app version requirement \"{0}\"; skipping jar file {1}.",
+                        new Object[]{minimumVersion, jarFile.getAbsolutePath()});
+                return false;
+            }
+        }
+        return jarFileMeetsRequirementRange(jarFile, extInfo, appName, requirement);
+    }
+
+    /**
+     * Checks if the given jar file and extension info meet the given requirements (that is,
+     * that the application name matches, and the version that the extension targets falls within
+     * the given range of app versions). This is jarFileMeetsRequirements for callers that have
+     * already parsed the version requirement, so that it isn't parsed again for every jar.
+     *
+     * @param jarFile     The jar file in question.
+     * @param extInfo     The extension info that was extracted from that jar via extractExtInfo
+     * @param appName     The name of the application to check for, or null to skip this check.
+     * @param requirement The app versions that the extension must target, or null to skip this check.
+     * @return true if the jar file looks good, false otherwise.
+     */
+    boolean jarFileMeetsRequirementRange(File jarFile, AppExtensionInfo extInfo, String appName, VersionRange requirement) {
+        // Check app name if one was given:
+        if (appName != null && !appName.equals(extInfo.getTargetAppName())) {
+            logger.log(Level.WARNING,
+                    "jarFileMeetsRequirements: skipping jar {0} because target app name \"{1}\" does not match given app name \"{2}\".",
+                    new Object[]{jarFile.getAbsolutePath(), extInfo.getTargetAppName(), appName});
+            return false;
+        }
+
+        // Check app version if a requirement was given:
+        if (requirement != null) {
+            VersionRange target;
+            try {
+                target = extInfo.getTargetAppVersionRange();
+            } catch (IllegalArgumentException iae) {
+                logger.log(Level.WARNING, "jarFileMeetsRequirements: unable to parse version information for jar file {0}: App version: \"{1}\", extension targets version \"{2}\".",
+                        new Object[]{jarFile.getAbsolutePath(), requirement, extInfo.getTargetAppVersion()});
+                return false;
+            }
+            if (target == null || !requirement.intersects(target)) {
+                logger.log(Level.WARNING, "jarFileMeetsRequirements: Jar file {0} contains an extension targeting version {1}, outside the required version of {2}; skipping.",
+                        new Object[]{jarFile.getAbsolutePath(), extInfo.getTargetAppVersion(), requirement});
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Loads an extension of type T out of the given jar file. If the jar declares its extension
+     * class (see findDeclaredExtensionClasses), then only that class is loaded. Otherwise, we fall
+     * back to scanning the jar file looking for any concrete class that matches T (see
+     * findExtensionClassNames). The first matching class found will be loaded as an extension
+     * of type T and returned. If the jar declares several extension classes, only the first one
+     * is returned here - use loadExtensions() or loadExtension() to load them all.
+     * <p>
+     *     Note that the class loader for the jar file remains open for as long as the returned
+     *     extension is in use, so that it can continue to load classes and resources from its jar.
+     *     Extensions loaded via loadExtensions() have their class loader closed for them when
+     *     they are unloaded, but if you use this method directly, that's up to you.
+     * </p>
+     *
+     * @param jarFile        The jar file to scan.
+     * @param extensionClass The implementing class to look for.
+     * @return An implementation of T if one could be found and loaded, otherwise null.
+     */
+    public T loadExtensionFromJar(File jarFile, Class<T> extensionClass) {
+        ExtensionWrapper wrapper = loadExtensionWrapper(jarFile, extensionClass, null);
+        return wrapper == null ? null : wrapper.extension;
+    }
+
+    /**
+     * Invoked internally to load a single extension from the given jar file. If the name of the
+     * extension class is already known (from the extInfo.json, or from the scan cache), then
+     * only that class is loaded. Otherwise, we look for a declared extension class in the jar
+     * itself (see findDeclaredExtensionClasses), and only if nothing is declared anywhere do we
+     * search the jar for it.
+     * <p>
+     *     The returned wrapper owns the class loader that was created for the jar file.
+     *     That class loader stays open for the lifetime of the extension, so that the
+     *     extension can continue to load classes and resources from its jar as needed.
+     *     It is closed when the extension is unloaded. If no extension is found,
+     *     the class loader is closed immediately.
+     * </p>
+     *
+     * @param jarFile           The jar file to scan.
+     * @param extensionClass    The implementing class to look for.
+     * @param declaredClassName The fully qualified name of the extension class, or null if not known.
+     * @return A new, enabled ExtensionWrapper, or null if no extension could be loaded.
+     */
+    protected ExtensionWrapper loadExtensionWrapper(File jarFile, Class<T> extensionClass, String declaredClassName) {
+        return loadExtensionWrapper(jarFile, extensionClass, declaredClassName, false);
+    }
+
+    /**
+     * Invoked internally to load a single extension from the given jar file. Normally, extension
+     * classes that are already loaded are skipped, but replaceExtension() and lazy loading need to
+     * load an already registered class into a fresh class loader, so they pass allowLoaded=true.
+     */
+    private ExtensionWrapper loadExtensionWrapper(File jarFile, Class<T> extensionClass, String declaredClassName,
+                                                  boolean allowLoaded) {
+        List<String> classNames = declaredClassName == null
+                ? Collections.emptyList() : Collections.singletonList(declaredClassName);
+        List<ExtensionWrapper> wrappers = loadExtensionWrappers(jarFile, extensionClass, classNames, allowLoaded, true);
+        return wrappers.isEmpty() ? null : wrappers.get(0);
+    }
+
+    /**
+     * Invoked internally to load every extension from the given jar file. If the names of the
+     * extension classes are already known (from the extInfo.json, or from the scan cache), then
+     * only those classes are loaded. Otherwise, we look for declared extension classes in the jar
+     * itself, and only if nothing is declared anywhere do we search the jar - in which case, just
+     * the first suitable class is loaded, as before. Declared classes that are already loaded, or
+     * that fail to load, are skipped without affecting the others.
+     * <p>
+     *     All of the returned wrappers share one class loader for the jar, which stays open until
+     *     the last of them is unloaded.
+     * </p>
+     *
+     * @param jarFile            The jar file to scan.
+     * @param extensionClass     The implementing class to look for.
+     * @param declaredClassNames The fully qualified names of the extension classes, or an empty list if not known.
+     * @return A List of new, enabled ExtensionWrappers, empty if no extension could be loaded.
+     */
+    protected List<ExtensionWrapper> loadExtensionWrappers(File jarFile, Class<T> extensionClass,
+                                                           List<String> declaredClassNames) {
+        return loadExtensionWrappers(jarFile, extensionClass, declaredClassNames, false, false);
+    }
+
+    private List<ExtensionWrapper> loadExtensionWrappers(File jarFile, Class<T> extensionClass, List<String> declaredClassNames,
+                                                         boolean allowLoaded, boolean firstOnly) {
+        URLClassLoader cl = null;
+        List<T> extensions = new ArrayList<>();
+        try {
+            try (JarFile jar = new JarFile(jarFile.getAbsolutePath())) {
+                cl = createExtensionClassLoader(jarFile);
+
+                // If we know which classes we want, load only those ones:
+                List<String> classNames = declaredClassNames;
+                if (classNames.isEmpty()) {
+                    classNames = findDeclaredExtensionClasses(jar, extensionClass);
+                }
+                for (String className : classNames) {
+                    if (!allowLoaded && isExtensionLoaded(className)) {
+                        logger.log(Level.INFO, "Skipping already loaded extension: {0}", className);
+                        continue;
+                    }
+                    try {
+                        T extension = loadDeclaredExtension(jarFile, cl, className, extensionClass);
+                        if (extension != null) {
+                            extensions.add(extension);
+                            if (firstOnly) {
+                                break;
+                            }
+                        }
+                    } catch (Exception | LinkageError e) {
+                        logger.log(Level.WARNING, "Caught exception while loading extension " + className
+                                + " from jar " + jarFile.getAbsolutePath(), e);
+                    }
+                }
+
+                // Otherwise we have to go looking for it. We read the class file headers
+                // to work out which classes are candidates, so that only those ones
+                // actually get defined by the class loader:
+                if (classNames.isEmpty()) {
+                    for (String className : findExtensionClassNames(jar, cl, extensionClass)) {
+                        // Check to make sure we don't already have one with this class name:
+                        if (!allowLoaded && isExtensionLoaded(className)) {
+                            logger.log(Level.INFO, "Skipping already loaded extension: {0}", className);
+                            continue;
+                        }
+
+                        // Load this class:
+                        Class<?> candidate = cl.loadClass(className);
+
+                        // What I want to do:
+                        //    if (T.isAssignableFrom(candidate))
+                        // or:
+                        //    if (candidate instanceof T)
+                        // But these are both illegal in Java because of type erasure.
                         // T is just a compile-time convenience and it is discarded at runtime.
                         // So, we have to force callers to pass in the class even though we're already
                         // typed with it, sigh.
@@ -469,18 +2051,296 @@ public abstract class ExtensionManager<T extends AppExtension> {
                             logger.log(Level.FINE, "Found qualifying AppExtension class: {0} in jar: {1}",
                                     new Object[]{candidate.getCanonicalName(),
                                             jarFile.getAbsolutePath()});
-                            return (T) candidate.newInstance();
+                            extensions.add(extensionClass.cast(candidate.getDeclaredConstructor().newInstance()));
+                            break;
                         }
                     }
                 }
+                if (extensions.isEmpty()) {
+                    logger.log(Level.WARNING, "Jar file {0} contains no suitable extension.", new Object[]{jarFile.getAbsolutePath()});
+                }
             }
-        } catch (Exception e) {
+        } catch (Exception | LinkageError e) {
             logger.log(Level.WARNING, "Caught exception while loading extension from jar " + jarFile.getAbsolutePath(), e);
+            extensions.clear();
+        }
+
+        if (extensions.isEmpty()) {
+            closeClassLoader(cl);
+            return Collections.emptyList();
+        }
+
+        // If there's more than one, they share the class loader, so we have to count references:
+        AtomicInteger loaderRefs = extensions.size() > 1 ? new AtomicInteger(extensions.size()) : null;
+        List<ExtensionWrapper> wrappers = new ArrayList<>(extensions.size());
+        for (T extension : extensions) {
+            ExtensionWrapper wrapper = new ExtensionWrapper();
+            wrapper.sourceJar = jarFile;
+            wrapper.extension = extension;
+            wrapper.classLoader = cl;
+            wrapper.loaderRefs = loaderRefs;
+            wrapper.isEnabled = true;
+            wrappers.add(wrapper);
+        }
+        return wrappers;
+    }
+
+    /**
+     * Invoked internally to create the class loader for the given extension jar. This is an
+     * ExtensionClassLoader using the current ClassLoadingPolicy, whose parent is the shared library
+     * class loader if there is one, or the system class loader otherwise.
+     *
+     * @param jarFile The extension jar.
+     * @return A new class loader for that jar.
+     * @throws IOException If the jar file location can't be turned into a URL.
+     */
+    protected URLClassLoader createExtensionClassLoader(File jarFile) throws IOException {
+        URL[] urls = {new URL("jar:file:" + jarFile.getAbsolutePath() + "!/")};
+        URLClassLoader shared = sharedClassLoader;
+        ClassLoader parent = shared != null ? shared : ClassLoader.getSystemClassLoader();
+        return new ExtensionClassLoader(jarFile.getName(), urls, parent, classLoadingPolicy);
+    }
+
+    /**
+     * Invoked internally to create the shared library class loader for the given directory.
+     */
+    private URLClassLoader createSharedClassLoader(File directory) {
+        List<File> jarFiles = FileSystemUtil.findFiles(directory, true, "jar");
+        jarFiles.sort(Comparator.comparing(File::getAbsolutePath));
+        List<URL> urls = new ArrayList<>(jarFiles.size());
+        for (File jarFile : jarFiles) {
+            try {
+                urls.add(jarFile.toURI().toURL());
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to add shared library " + jarFile.getAbsolutePath(), ioe);
+            }
+        }
+        logger.log(Level.INFO, "Loaded {0} shared libraries from {1}", new Object[]{urls.size(), directory.getAbsolutePath()});
+        return new URLClassLoader("extension-shared-libraries", urls.toArray(new URL[0]), ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     * Invoked internally to close a class loader that we created for an extension jar.
+     * Once closed, the class loader can no longer load new classes or resources from
+     * the jar, and the jar file itself is released. Errors are logged and otherwise ignored.
+     *
+     * @param classLoader The class loader to close. Can be null.
+     */
+    protected void closeClassLoader(URLClassLoader classLoader) {
+        if (classLoader == null) {
+            return;
+        }
+        try {
+            classLoader.close();
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "ExtensionManager: problem closing extension class loader", ioe);
+        }
+    }
+
+    /**
+     * Invoked internally to let go of the given wrapper's class loader. The class loader is closed
+     * unless other extensions from the same jar are still using it.
+     *
+     * @param wrapper The wrapper whose class loader is no longer needed.
+     */
+    protected void releaseClassLoader(ExtensionWrapper wrapper) {
+        URLClassLoader cl = wrapper.classLoader;
+        wrapper.classLoader = null;
+        if (cl != null && (wrapper.loaderRefs == null || wrapper.loaderRefs.decrementAndGet() == 0)) {
+            closeClassLoader(cl);
+        }
+    }
+
+    /**
+     * Invoked internally to load and instantiate the named extension class, which the
+     * jar file has declared as its extension class. No other class in the jar is touched.
+     *
+     * @param jarFile        The jar file in question (for logging).
+     * @param cl             The class loader for that jar file.
+     * @param className      The fully qualified name of the extension class.
+     * @param extensionClass The implementing class to look for.
+     * @return An implementation of T, or null if the declared class is not suitable.
+     * @throws ReflectiveOperationException If the class can't be found or instantiated.
+     */
+    protected T loadDeclaredExtension(File jarFile, ClassLoader cl, String className, Class<T> extensionClass)
+            throws ReflectiveOperationException {
+        Class<?> candidate = cl.loadClass(className);
+        if (!extensionClass.isAssignableFrom(candidate)) {
+            logger.log(Level.WARNING, "Jar file {0} declares extension class {1}, but it is not a {2}; skipping.",
+                    new Object[]{jarFile.getAbsolutePath(), className, extensionClass.getName()});
             return null;
         }
+        logger.log(Level.FINE, "Loading declared AppExtension class: {0} from jar: {1}",
+                new Object[]{className, jarFile.getAbsolutePath()});
+        return extensionClass.cast(candidate.getDeclaredConstructor().newInstance());
+    }
 
-        logger.log(Level.WARNING, "Jar file {0} contains no suitable extension.", new Object[]{jarFile.getAbsolutePath()});
-        return null;
+    /**
+     * Invoked internally to find all concrete classes in the given jar file that implement
+     * or extend the given extension class, in jar entry order. This is done by reading the
+     * class file headers of each class in the jar to build up a picture of the type hierarchy
+     * within the jar, so none of the classes in the jar are actually loaded by this method.
+     * Supertypes that live outside the jar (the extension class itself, or some abstract
+     * class provided by the application) are looked up through the given class loader, without
+     * initializing them - those classes come from the application and are already loaded anyway.
+     *
+     * @param jar            The jar file to search.
+     * @param cl             The class loader for that jar.
+     * @param extensionClass The implementing class to look for.
+     * @return A List of zero or more fully qualified class names.
+     * @throws IOException If the jar can't be read.
+     */
+    protected List<String> findExtensionClassNames(JarFile jar, ClassLoader cl, Class<T> extensionClass) throws IOException {
+        Map<String, ClassFileHeader> headers = new LinkedHashMap<>();
+        Enumeration<JarEntry> e = jar.entries();
+        while (e.hasMoreElements()) {
+            JarEntry je = e.nextElement();
+            if (je.isDirectory() || !je.getName().endsWith(".class")) {
+                continue;
+            }
+            try (InputStream in = jar.getInputStream(je)) {
+                ClassFileHeader header = ClassFileHeader.read(in);
+                headers.put(header.getClassName(), header);
+            } catch (IOException ioe) {
+                logger.log(Level.FINE, "Skipping unreadable class file {0} in jar {1}: {2}",
+                        new Object[]{je.getName(), jar.getName(), ioe.getMessage()});
+            }
+        }
+
+        List<String> classNames = new ArrayList<>();
+        Map<String, Boolean> resolved = new HashMap<>();
+        String targetName = extensionClass.getName().replace('.', '/');
+        for (ClassFileHeader header : headers.values()) {
+            if (header.isConcrete() && isSubtypeOf(header.getClassName(), targetName, extensionClass, headers, resolved, cl)) {
+                classNames.add(header.getClassName().replace('/', '.'));
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Invoked internally to determine whether the given class (in internal form) is a subtype of
+     * the given target type. Results are memoized in the given resolved map.
+     */
+    private boolean isSubtypeOf(String className, String targetName, Class<T> target,
+                                Map<String, ClassFileHeader> headers, Map<String, Boolean> resolved, ClassLoader cl) {
+        if (className == null) {
+            return false;
+        }
+        if (className.equals(targetName)) {
+            return true;
+        }
+        Boolean result = resolved.get(className);
+        if (result != null) {
+            return result;
+        }
+        resolved.put(className, Boolean.FALSE); // guards against malformed circular hierarchies
+
+        ClassFileHeader header = headers.get(className);
+        boolean isSubtype = false;
+        if (header != null) {
+            isSubtype = isSubtypeOf(header.getSuperClassName(), targetName, target, headers, resolved, cl);
+            for (String interfaceName : header.getInterfaceNames()) {
+                if (isSubtype) {
+                    break;
+                }
+                isSubtype = isSubtypeOf(interfaceName, targetName, target, headers, resolved, cl);
+            }
+        } else if (!className.startsWith("java/")) {
+            // Not in this jar, so it must come from the application (or it's missing entirely):
+            try {
+                isSubtype = target.isAssignableFrom(Class.forName(className.replace('/', '.'), false, cl));
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                isSubtype = false;
+            }
+        }
+        resolved.put(className, isSubtype);
+        return isSubtype;
+    }
+
+    /**
+     * Invoked internally to look for an explicit declaration of the extension class inside the
+     * given jar file. If several are declared, the first one is returned. See
+     * findDeclaredExtensionClasses for details.
+     *
+     * @param jar            The jar file to check.
+     * @param extensionClass The implementing class that we're looking for.
+     * @return The fully qualified name of the declared extension class, or null if nothing is declared.
+     * @throws IOException If the jar can't be read.
+     */
+    protected String findDeclaredExtensionClass(JarFile jar, Class<T> extensionClass) throws IOException {
+        List<String> classNames = findDeclaredExtensionClasses(jar, extensionClass);
+        return classNames.isEmpty() ? null : classNames.get(0);
+    }
+
+    /**
+     * Invoked internally to look for explicit declarations of extension classes inside the
+     * given jar file. Declaring your extension classes saves ExtensionManager from having to load
+     * every class in your jar to find them, which can be a big deal for larger extensions - and it's
+     * the only way to provide more than one extension in a single jar. We check the following places,
+     * in order, and use the first one that declares anything:
+     * <ol>
+     *     <li>The "extensionClass" and "extensionClasses" fields of the jar's extInfo.json.</li>
+     *     <li>An "Extension-Class" attribute in the main section of the jar manifest. Several
+     *         classes can be listed, separated by commas or spaces.</li>
+     *     <li>A META-INF/services file named either for the extension type you're loading
+     *         or for AppExtension itself, in the usual ServiceLoader format (one class per line).</li>
+     * </ol>
+     * This is the one place that order is defined. When loading extensions from a directory, the
+     * extInfo.json has already been read, so its declarations are used directly and the jar is
+     * only checked here if it declares nothing - which comes to the same thing.
+     *
+     * @param jar            The jar file to check.
+     * @param extensionClass The implementing class that we're looking for.
+     * @return The fully qualified names of the declared extension classes, or an empty list if nothing is declared.
+     * @throws IOException If the jar can't be read.
+     */
+    protected List<String> findDeclaredExtensionClasses(JarFile jar, Class<T> extensionClass) throws IOException {
+        JarEntry extInfoEntry = findExtInfoEntry(jar);
+        if (extInfoEntry != null) {
+            AppExtensionInfo extInfo;
+            try (InputStream in = jar.getInputStream(extInfoEntry)) {
+                extInfo = AppExtensionInfo.fromStream(in);
+            }
+            if (extInfo != null && !extInfo.getExtensionClasses().isEmpty()) {
+                return extInfo.getExtensionClasses();
+            }
+        }
+
+        List<String> classNames = new ArrayList<>();
+        Manifest manifest = jar.getManifest();
+        if (manifest != null) {
+            String value = manifest.getMainAttributes().getValue(MANIFEST_EXTENSION_CLASS);
+            if (value != null) {
+                for (String className : value.trim().split("[,\\s]+")) {
+                    if (!className.isEmpty() && !classNames.contains(className)) {
+                        classNames.add(className);
+                    }
+                }
+            }
+            if (!classNames.isEmpty()) {
+                return classNames;
+            }
+        }
+
+        for (String serviceName : new String[]{extensionClass.getName(), AppExtension.class.getName()}) {
+            JarEntry entry = jar.getJarEntry(SERVICES_PREFIX + serviceName);
+            if (entry != null) {
+                String data = FileSystemUtil.readStreamToString(jar.getInputStream(entry), "UTF-8");
+                for (String line : data.split("\\R")) {
+                    int commentStart = line.indexOf('#');
+                    String className = (commentStart >= 0 ? line.substring(0, commentStart) : line).trim();
+                    if (!className.isEmpty() && !classNames.contains(className)) {
+                        classNames.add(className);
+                    }
+                }
+                if (!classNames.isEmpty()) {
+                    return classNames;
+                }
+            }
+        }
+
+        return classNames;
     }
 
     /**
@@ -490,14 +2350,19 @@ public abstract class ExtensionManager<T extends AppExtension> {
      * and null is returned.
      * <p>
      *     <b>Packaging an extInfo.json file into your extension jar</b><br>
-     *     Your jar file should contain an extInfo.json file somewhere in its resources.
-     *     We'll scan every entry in the jar file looking for it, so the exact location
-     *     doesn't matter, but a good convention is:
-     *     resources/fully/qualified/main/package/extInfo.json
+     *     Your jar file should contain an extInfo.json file. The best place for it is
+     *     META-INF/extInfo.json (see EXT_INFO_LOCATION), because we can go straight to it
+     *     there. If it has to live somewhere else, you can name its location with an
+     *     "Extension-Info" attribute in the main section of your jar manifest. Failing
+     *     both of those, we'll scan every entry in the jar file looking for it, which
+     *     works, but is slow for large jars - and if your jar bundles a library that ships
+     *     its own extInfo.json, there's no telling which one we'll find first.
      * </p>
      * <p>
      *     You can easily generate an extInfo.json by populating an AppExtensionInfo
-     *     object and invoking toJson() on it.
+     *     object and invoking toJson() on it. Setting the extensionClass field in there
+     *     is strongly recommended, so that we don't have to search your jar for it
+     *     when it's time to load your extension.
      * </p>
      *
      * @param jarFile The jar file in question.
@@ -506,19 +2371,35 @@ public abstract class ExtensionManager<T extends AppExtension> {
     public AppExtensionInfo extractExtInfo(File jarFile) {
         logger.log(Level.FINE, "ExtensionManager.extractExtInfo({0})", jarFile.getAbsolutePath());
         try {
-            try (JarFile jar = new JarFile(jarFile.getAbsolutePath())) {
-                Enumeration<JarEntry> e = jar.entries();
-                while (e.hasMoreElements()) {
-                    JarEntry entry = e.nextElement();
-                    if (!entry.isDirectory() && entry.getName().endsWith("extInfo.json")) {
-                        String data = FileSystemUtil.readStreamToString(jar.getInputStream(entry), "UTF-8");
-                        AppExtensionInfo extInfo = AppExtensionInfo.fromJson(data);
-                        if (extInfo == null) {
-                            logger.log(Level.WARNING, "ExtensionManager.extractExtInfo: jar file {0} contains an invalid extInfo.json - skipping.", jarFile.getAbsolutePath());
-                            return null;
-                        }
-                        return extInfo;
+            // The lightweight reader is much cheaper than opening a JarFile, but it doesn't
+            // handle everything - if it gives up, we fall back to doing it the long way.
+            // Either way, the json is parsed straight off the entry's stream:
+            JarFile jar = null;
+            try {
+                InputStream in;
+                try {
+                    in = JarMetadataReader.openExtInfo(jarFile);
+                } catch (IOException ioe) {
+                    logger.log(Level.FINE, "ExtensionManager.extractExtInfo: falling back to JarFile for "
+                            + jarFile.getAbsolutePath() + ": " + ioe.getMessage());
+                    jar = new JarFile(jarFile.getAbsolutePath());
+                    JarEntry entry = findExtInfoEntry(jar);
+                    in = entry == null ? null : jar.getInputStream(entry);
+                }
+                if (in != null) {
+                    AppExtensionInfo extInfo;
+                    try (InputStream stream = in) {
+                        extInfo = AppExtensionInfo.fromStream(stream);
+                    }
+                    if (extInfo == null) {
+                        logger.log(Level.WARNING, "ExtensionManager.extractExtInfo: jar file {0} contains an invalid or oversized extInfo.json - skipping.", jarFile.getAbsolutePath());
+                        return null;
                     }
+                    return extInfo;
+                }
+            } finally {
+                if (jar != null) {
+                    jar.close();
                 }
             }
         } catch (IOException ioe) {
@@ -529,16 +2410,347 @@ public abstract class ExtensionManager<T extends AppExtension> {
         return null;
     }
 
+    /**
+     * Invoked internally to find the extInfo.json entry in the given jar file. We look it up
+     * directly at the canonical location first, then at the location named by the jar manifest,
+     * and only if neither of those exists do we fall back to enumerating the jar's entries.
+     *
+     * @param jar The jar file to search.
+     * @return The JarEntry for the extInfo.json file, or null if there isn't one.
+     * @throws IOException If the jar manifest can't be read.
+     */
+    protected JarEntry findExtInfoEntry(JarFile jar) throws IOException {
+        JarEntry canonical = jar.getJarEntry(EXT_INFO_LOCATION);
+        if (canonical != null && !canonical.isDirectory()) {
+            return canonical;
+        }
+
+        Manifest manifest = jar.getManifest();
+        String location = manifest == null ? null : manifest.getMainAttributes().getValue(MANIFEST_EXTENSION_INFO);
+        if (location != null && !location.isBlank()) {
+            JarEntry declared = jar.getJarEntry(location.trim());
+            if (declared != null && !declared.isDirectory()) {
+                return declared;
+            }
+            logger.log(Level.WARNING, "Jar file {0} names {1} as its extInfo.json, but there is no such entry.",
+                    new Object[]{jar.getName(), location.trim()});
+        }
+
+        Enumeration<JarEntry> e = jar.entries();
+        while (e.hasMoreElements()) {
+            JarEntry entry = e.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith("extInfo.json")) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invoked internally to get the AppExtensionInfo for the given jar file, either from
+     * our scan cache if we have one and the jar hasn't changed, or via extractExtInfo().
+     *
+     * @param jarFile The jar file in question.
+     * @return An AppExtensionInfo, or null.
+     */
+    protected AppExtensionInfo extractExtInfoCached(File jarFile) {
+        ExtensionScanCache cache = scanCache;
+        if (cache == null) {
+            return extractExtInfo(jarFile);
+        }
+        if (cache.isCached(jarFile)) {
+            logger.log(Level.FINE, "ExtensionManager: using cached scan result for {0}", jarFile.getAbsolutePath());
+            return cache.getExtInfo(jarFile);
+        }
+        AppExtensionInfo extInfo = extractExtInfo(jarFile);
+        cache.putExtInfo(jarFile, extInfo);
+        return extInfo;
+    }
+
+    /**
+     * Invoked internally to prune and save our scan cache after a scan, if we have one.
+     */
+    protected void saveScanCache() {
+        ExtensionScanCache cache = scanCache;
+        if (cache != null) {
+            cache.pruneMissing();
+            cache.save();
+        }
+    }
+
     /**
      * Invoked internally to return a list of all loaded extension wrappers, sorted
-     * by the extension name.
+     * by the extension name. The list is an unmodifiable snapshot of the registry.
      *
      * @return A List of ExtensionWrappers, sorted by extension name;
      */
     protected List<ExtensionWrapper> getAllLoadedExtensionWrappers() {
-        List<ExtensionWrapper> wrapperList = new ArrayList<>(loadedExtensions.values());
-        wrapperList.sort(null);
-        return wrapperList;
+        return getInstantiatedRegistry(false).sortedWrappers;
+    }
+
+    /**
+     * Invoked internally to add the given wrapper to the registry. A new copy of the registry
+     * is published, so that readers never see a partially updated map.
+     *
+     * @param className       The fully qualified class name of the extension.
+     * @param wrapper         The wrapper to register.
+     * @param replaceExisting Whether to replace any extension already registered under that class name.
+     * @return true if the wrapper was registered, false if one was already present and replaceExisting was false.
+     */
+    protected boolean registerWrapper(String className, ExtensionWrapper wrapper, boolean replaceExisting) {
+        wrapper.name = wrapper.isDeferred ? wrapper.extInfo.getName() : wrapper.extension.getInfo().getName();
+        synchronized (registryLock) {
+            if (!replaceExisting && registry.byClassName.containsKey(className)) {
+                return false;
+            }
+            Map<String, ExtensionWrapper> newMap = new HashMap<>(registry.byClassName);
+            newMap.put(className, wrapper);
+            registry = new Registry(newMap);
+            return true;
+        }
+    }
+
+    /**
+     * Invoked internally to remove the named extension from the registry, if present.
+     *
+     * @param className The fully qualified class name of the extension to remove.
+     * @return The wrapper that was removed, or null if there was no such extension.
+     */
+    protected ExtensionWrapper unregisterWrapper(String className) {
+        synchronized (registryLock) {
+            ExtensionWrapper wrapper = registry.byClassName.get(className);
+            if (wrapper == null) {
+                return null;
+            }
+            Map<String, ExtensionWrapper> newMap = new HashMap<>(registry.byClassName);
+            newMap.remove(className);
+            registry = new Registry(newMap);
+            return wrapper;
+        }
+    }
+
+    /**
+     * Keeps track of what happened to each jar during a load, and sends progress updates
+     * to the callback, if there is one. The callback is invoked outside of our lock.
+     */
+    private static class LoadTracker {
+
+        private final Consumer<LoadProgress> progressCallback;
+        private final BooleanSupplier cancelCheck;
+        private final long startTime = System.nanoTime();
+        private final Map<File, List<String>> loaded = new LinkedHashMap<>();
+        private final Map<File, String> rejected = new LinkedHashMap<>();
+        private final Map<File, String> failed = new LinkedHashMap<>();
+        private int jarCount;
+        private int scannedCount;
+
+        LoadTracker(Consumer<LoadProgress> progressCallback, BooleanSupplier cancelCheck) {
+            this.progressCallback = progressCallback;
+            this.cancelCheck = cancelCheck;
+        }
+
+        synchronized void setJarCount(int jarCount) {
+            this.jarCount = jarCount;
+        }
+
+        void scanned(File jarFile) {
+            LoadProgress progress;
+            synchronized (this) {
+                scannedCount++;
+                progress = snapshot(jarFile);
+            }
+            fire(progress);
+        }
+
+        void loaded(File jarFile, List<String> classNames) {
+            record(loaded, jarFile, classNames);
+        }
+
+        void rejected(File jarFile, String reason) {
+            record(rejected, jarFile, reason);
+        }
+
+        void failed(File jarFile, String reason) {
+            record(failed, jarFile, reason);
+        }
+
+        boolean isCancelled() {
+            return cancelCheck != null && cancelCheck.getAsBoolean();
+        }
+
+        synchronized LoadReport toReport() {
+            return new LoadReport(jarCount, loaded, rejected, failed, isCancelled(),
+                                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+
+        private <V> void record(Map<File, V> outcomes, File jarFile, V detail) {
+            LoadProgress progress;
+            synchronized (this) {
+                outcomes.put(jarFile, detail);
+                progress = snapshot(jarFile);
+            }
+            fire(progress);
+        }
+
+        private LoadProgress snapshot(File jarFile) {
+            return new LoadProgress(jarCount, scannedCount, loaded.size(), rejected.size(), failed.size(), jarFile);
+        }
+
+        private void fire(LoadProgress progress) {
+            if (progressCallback == null) {
+                return;
+            }
+            try {
+                progressCallback.accept(progress);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Extension load progress callback threw an exception.", e);
+            }
+        }
+    }
+
+    /**
+     * Wraps a single asynchronous hook invocation, and keeps track of how long it took.
+     */
+    private static class TimedHook<S, R> {
+
+        final S extension;
+        final FutureTask<R> task;
+        final long submittedAt;
+        volatile long elapsedNanos = -1;
+
+        TimedHook(S extension, Function<? super S, ? extends R> hook) {
+            this.extension = extension;
+            this.submittedAt = System.nanoTime();
+            this.task = new FutureTask<>(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hook.apply(extension);
+                } finally {
+                    elapsedNanos = System.nanoTime() - start;
+                }
+            });
+        }
+
+        /**
+         * Returns how long the hook ran for if it has finished, otherwise how long it has been
+         * since it was submitted.
+         */
+        long getElapsedNanos() {
+            long elapsed = elapsedNanos;
+            return elapsed >= 0 ? elapsed : System.nanoTime() - submittedAt;
+        }
+    }
+
+    /**
+     * Holder for the default dispatch Executor, so that it's only created if somebody needs it.
+     * The threads are daemon threads, and are discarded after a minute of idleness.
+     */
+    private static class DefaultDispatchExecutor {
+
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ExtensionManager-dispatch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * An immutable snapshot of the registry, along with the various sorted views of it that
+     * our query methods return. Everything here is computed once, when the snapshot is
+     * created, so that the (very frequently called) query methods don't have to do any
+     * copying or sorting.
+     * <p>
+     * Only the structure of the snapshot is immutable: the ExtensionWrappers in it are shared
+     * with older and newer snapshots, and their isEnabled, isDeferred and extension fields are
+     * updated in place (under registryLock, followed by publishing a new snapshot). So a caller
+     * holding an older snapshot sees the current enabled state of each wrapper, but the lists
+     * as they were when that snapshot was taken.
+     * </p>
+     */
+    private class Registry {
+
+        final Map<String, ExtensionWrapper> byClassName;
+        final List<ExtensionWrapper> sortedWrappers;
+        final List<T> allExtensions;
+        final List<T> enabledExtensions;
+        final Map<Class<?>, List<T>> enabledByType;
+        final boolean hasDeferred; // if so, the lists above leave out the deferred extensions
+        final boolean hasDeferredEnabled; // likewise, but only counting enabled ones
+
+        /**
+         * The given map must never be modified afterwards - anybody who wants to change the registry
+         * copies it and builds a new Registry from the copy. It is deliberately not wrapped with
+         * Collections.unmodifiableMap(): the same map is passed along to the next snapshot whenever
+         * only the wrappers' state changes, and before Java 17 that would add another wrapper layer
+         * on every enable or disable.
+         */
+        Registry(Map<String, ExtensionWrapper> map) {
+            byClassName = map;
+            List<ExtensionWrapper> wrappers = new ArrayList<>(map.values());
+            wrappers.sort(null);
+            List<T> all = new ArrayList<>(wrappers.size());
+            List<T> enabled = new ArrayList<>(wrappers.size());
+            boolean deferred = false;
+            boolean deferredEnabled = false;
+            for (ExtensionWrapper wrapper : wrappers) {
+                T extension = wrapper.extension;
+                if (wrapper.isDeferred || extension == null) {
+                    deferred = true;
+                    deferredEnabled |= wrapper.isEnabled;
+                    continue;
+                }
+                all.add(extension);
+                if (wrapper.isEnabled) {
+                    enabled.add(extension);
+                }
+            }
+            hasDeferred = deferred;
+            hasDeferredEnabled = deferredEnabled;
+            sortedWrappers = Collections.unmodifiableList(wrappers);
+            allExtensions = Collections.unmodifiableList(all);
+            enabledExtensions = Collections.unmodifiableList(enabled);
+            enabledByType = buildTypeIndex(enabled);
+        }
+
+        /**
+         * Indexes the given extensions by every class and interface that they extend or
+         * implement, so that getEnabledExtensions(Class) is a simple map lookup.
+         * The order of the given list is preserved within each index entry.
+         */
+        private Map<Class<?>, List<T>> buildTypeIndex(List<T> extensions) {
+            Map<Class<?>, List<T>> index = new HashMap<>();
+            for (T extension : extensions) {
+                for (Class<?> type : getSupertypes(extension.getClass())) {
+                    index.computeIfAbsent(type, k -> new ArrayList<>()).add(extension);
+                }
+            }
+            for (Map.Entry<Class<?>, List<T>> entry : index.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            return index;
+        }
+
+        private Set<Class<?>> getSupertypes(Class<?> clazz) {
+            Set<Class<?>> types = new HashSet<>();
+            Deque<Class<?>> queue = new ArrayDeque<>();
+            queue.add(clazz);
+            while (!queue.isEmpty()) {
+                Class<?> type = queue.poll();
+                if (type == Object.class || !types.add(type)) { // Object is handled by getEnabledExtensions()
+                    continue;
+                }
+                if (type.getSuperclass() != null) {
+                    queue.add(type.getSuperclass());
+                }
+                queue.addAll(Arrays.asList(type.getInterfaces()));
+            }
+            return types;
+        }
     }
 
     /**
@@ -547,13 +2759,19 @@ public abstract class ExtensionManager<T extends AppExtension> {
      */
     protected class ExtensionWrapper implements Comparable<ExtensionWrapper> {
 
-        boolean isEnabled;
+        volatile boolean isEnabled;
         File sourceJar;
-        T extension;
+        volatile T extension;
+        String name; // captured at registration time, so sorting doesn't race with unloading
+        URLClassLoader classLoader; // null for extensions added via addExtension()
+        AtomicInteger loaderRefs; // shared by extensions from the same jar, null if there's only one
+        volatile boolean isDeferred; // registered but not yet instantiated - see setLazyLoading()
+        AppExtensionInfo extInfo; // from the jar's extInfo.json, null if not known (e.g. for addExtension())
+        Class<T> extensionClass; // only set for deferred extensions
 
         @Override
         public int compareTo(ExtensionWrapper o) {
-            return extension.getInfo().getName().compareTo(o.extension.getInfo().getName());
+            return name.compareTo(o.name);
         }
     }
 }
@@ -0,0 +1,62 @@
+package ca.corbett.extensions;
+
+/**
+ * Allows client code to listen for events from an ExtensionManager. All methods have empty
+ * default implementations, so you only need to override the ones you care about.
+ * <p>
+ * Events may be fired from any thread (for example, from a hook dispatch thread), so
+ * listeners that touch the UI should hand off to the event dispatch thread themselves.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public interface ExtensionManagerListener {
+
+    /**
+     * Invoked after an extension has been loaded and registered, whether from a jar file or
+     * via addExtension(). The extension has not necessarily been activated yet.
+     *
+     * @param source    The ExtensionManager that fired the event.
+     * @param className The fully qualified class name of the extension that was loaded.
+     */
+    public default void extensionLoaded(ExtensionManager<?> source, String className) {
+    }
+
+    /**
+     * Invoked after an extension has been deactivated (if it was enabled) and unloaded.
+     *
+     * @param source    The ExtensionManager that fired the event.
+     * @param className The fully qualified class name of the extension that was unloaded.
+     */
+    public default void extensionUnloaded(ExtensionManager<?> source, String className) {
+    }
+
+    /**
+     * Invoked after a loaded extension has been swapped for a new version via
+     * ExtensionManager.replaceExtension() - for example, when its jar was replaced on disk and
+     * picked up by an ExtensionDirectoryWatcher. The new version is already in place (and
+     * activated, if the extension is enabled), and the old version has been deactivated and
+     * unloaded. Anything you cached from the old version, such as its config properties,
+     * should be refreshed.
+     *
+     * @param source    The ExtensionManager that fired the event.
+     * @param className The fully qualified class name of the extension that was replaced.
+     */
+    public default void extensionReplaced(ExtensionManager<?> source, String className) {
+    }
+
+    /**
+     * Invoked when the circuit breaker for an extension changes state. When the breaker opens,
+     * the extension has already been disabled via setExtensionEnabled(), and when it moves to
+     * half-open or closed, the extension has already been re-enabled.
+     *
+     * @param source    The ExtensionManager that fired the event.
+     * @param className The fully qualified class name of the extension in question.
+     * @param oldState  The previous state of the circuit breaker.
+     * @param newState  The new state of the circuit breaker.
+     */
+    public default void circuitBreakerStateChanged(ExtensionManager<?> source, String className,
+                                                   CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+    }
+}
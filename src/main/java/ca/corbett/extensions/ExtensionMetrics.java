@@ -0,0 +1,172 @@
+package ca.corbett.extensions;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds runtime metrics for a single extension: for each operation that ExtensionManager
+ * has invoked on it (the onActivate and onDeactivate lifecycle methods, plus any hooks sent
+ * through ExtensionManager.dispatch()), we count invocations, errors and timeouts, and keep a
+ * LatencyHistogram of how long each invocation took. All recording is lock-free.
+ * <p>
+ * Instances are created and updated by ExtensionManager - use ExtensionManager.getMetrics()
+ * to retrieve them.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionMetrics {
+
+    /**
+     * The operation name under which onActivate() calls are recorded.
+     */
+    public static final String ON_ACTIVATE = "onActivate";
+
+    /**
+     * The operation name under which onDeactivate() calls are recorded.
+     */
+    public static final String ON_DEACTIVATE = "onDeactivate";
+
+    private final String className;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    public ExtensionMetrics(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Returns the fully qualified class name of the extension that these metrics describe.
+     *
+     * @return An extension class name.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the names of all operations that have been recorded for this extension, in
+     * alphabetical order.
+     *
+     * @return A Set of operation names, possibly empty.
+     */
+    public Set<String> getOperationNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(operations.keySet()));
+    }
+
+    /**
+     * Returns the metrics for the named operation, or null if it has never been recorded.
+     *
+     * @param operationName A hook name, or ON_ACTIVATE or ON_DEACTIVATE.
+     * @return The metrics for that operation, or null.
+     */
+    public Operation getOperation(String operationName) {
+        return operations.get(operationName);
+    }
+
+    /**
+     * Records a single invocation of the named operation.
+     *
+     * @param operationName A hook name, or ON_ACTIVATE or ON_DEACTIVATE.
+     * @param elapsedNanos  How long the invocation took.
+     * @param status        The outcome of the invocation.
+     */
+    public void record(String operationName, long elapsedNanos, DispatchResult.Status status) {
+        operations.computeIfAbsent(operationName, Operation::new).record(elapsedNanos, status);
+    }
+
+    /**
+     * Discards all metrics recorded so far for this extension.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(className);
+        for (String name : getOperationNames()) {
+            sb.append("\n  ").append(operations.get(name));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Metrics for a single operation on a single extension.
+     */
+    public static class Operation {
+
+        private final String name;
+        private final LongAdder invocationCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder timeoutCount = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public Operation(String name) {
+            this.name = name;
+        }
+
+        void record(long elapsedNanos, DispatchResult.Status status) {
+            invocationCount.increment();
+            if (status == DispatchResult.Status.FAILED) {
+                errorCount.increment();
+            } else if (status == DispatchResult.Status.TIMED_OUT) {
+                timeoutCount.increment();
+            }
+            latency.record(elapsedNanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getInvocationCount() {
+            return invocationCount.sum();
+        }
+
+        /**
+         * Returns the number of invocations that threw an exception.
+         *
+         * @return The error count.
+         */
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        /**
+         * Returns the number of invocations that were abandoned because they exceeded
+         * the dispatch timeout. These are not included in getErrorCount().
+         *
+         * @return The timeout count.
+         */
+        public long getTimeoutCount() {
+            return timeoutCount.sum();
+        }
+
+        /**
+         * Returns the histogram of invocation latencies, in nanoseconds. This includes
+         * failed and timed out invocations (for a timeout, the time we waited before giving up).
+         *
+         * @return A LatencyHistogram of elapsed nanoseconds.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return name
+                    + ": invocations=" + getInvocationCount()
+                    + ", errors=" + getErrorCount()
+                    + ", timeouts=" + getTimeoutCount()
+                    + ", p50=" + TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50)) + "us"
+                    + ", p99=" + TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99)) + "us"
+                    + ", max=" + TimeUnit.NANOSECONDS.toMicros(latency.getMax()) + "us";
+        }
+    }
+}
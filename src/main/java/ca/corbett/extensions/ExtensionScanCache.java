@@ -0,0 +1,322 @@
+package ca.corbett.extensions;
+
+import ca.corbett.extras.io.FileSystemUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides a persistent on-disk index of the results of scanning extension jars, so that
+ * unchanged jar files don't have to be opened and interrogated on every application launch.
+ * Each jar file is keyed by its absolute path, and an entry is only considered valid if the
+ * size and last modified time of the jar still match what they were when the entry was recorded.
+ * Any change to the jar therefore invalidates its entry automatically, and it will be rescanned.
+ * <p>
+ * For each jar we remember the parsed AppExtensionInfo (or the fact that the jar has no
+ * usable extInfo.json), and, once it has been loaded at least once, the fully qualified name
+ * of the extension class that was found inside it. ExtensionManager uses that class name to
+ * go straight to the extension class instead of searching for it.
+ * </p>
+ * <p>
+ * <b>Usage:</b> create one with forDirectory() (or point it at any file you like) and hand it
+ * to ExtensionManager.setScanCache() before loading extensions. ExtensionManager will load and
+ * save it as needed. If the cache file is missing, unreadable, corrupt, or was written
+ * by an incompatible version of this class, it is simply discarded and a full scan is done.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ExtensionScanCache {
+
+    private static final Logger logger = Logger.getLogger(ExtensionScanCache.class.getName());
+
+    /**
+     * The cache file name used by forDirectory().
+     */
+    public static final String DEFAULT_FILE_NAME = ".extScanCache.json";
+
+    /**
+     * Bump this whenever the format of the cache file changes, so that old caches are discarded.
+     * Version 2: extensionClass may hold a comma-separated list of class names.
+     */
+    protected static final int FORMAT_VERSION = 2;
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(AppExtensionInfo.class, new AppExtensionInfoTypeAdapter())
+            .create();
+
+    private final File cacheFile;
+    private volatile Map<String, Entry> entries;
+    private volatile boolean isLoaded;
+    private volatile boolean isDirty;
+
+    /**
+     * Creates a scan cache that will be persisted to the given file. The file does not
+     * need to exist yet.
+     *
+     * @param cacheFile The file in which to store the cache.
+     */
+    public ExtensionScanCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Convenience factory for a cache that lives inside the given extensions directory.
+     *
+     * @param extensionDir The directory containing extension jars.
+     * @return An ExtensionScanCache backed by a file in that directory.
+     */
+    public static ExtensionScanCache forDirectory(File extensionDir) {
+        return new ExtensionScanCache(new File(extensionDir, DEFAULT_FILE_NAME));
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Loads the cache from disk, discarding anything currently in memory. If the cache file
+     * does not exist or can't be parsed, we start with an empty cache. This is invoked
+     * automatically by ExtensionManager the first time the cache is consulted.
+     * <p>
+     * The file is read into a new map, which is swapped in only once it's complete, so
+     * other threads never see a half-loaded cache.
+     * </p>
+     */
+    public synchronized void load() {
+        Map<String, Entry> loaded = new ConcurrentHashMap<>();
+        if (cacheFile.exists()) {
+            try {
+                CacheFile data = gson.fromJson(FileSystemUtil.readFileToString(cacheFile), CacheFile.class);
+                if (data == null || data.formatVersion != FORMAT_VERSION || data.entries == null) {
+                    logger.log(Level.INFO, "ExtensionScanCache: ignoring outdated or empty cache file {0}", cacheFile.getAbsolutePath());
+                } else {
+                    for (Entry entry : data.entries) {
+                        if (entry != null && entry.path != null) {
+                            loaded.put(entry.path, entry);
+                        }
+                    }
+                }
+            } catch (IOException | JsonParseException e) {
+                // A corrupt cache is not a big deal, we'll just do a full scan:
+                logger.log(Level.WARNING, "ExtensionScanCache: discarding unreadable cache file " + cacheFile.getAbsolutePath(), e);
+                loaded.clear();
+            }
+        }
+        entries = loaded;
+        isDirty = false;
+        isLoaded = true;
+    }
+
+    /**
+     * Writes the cache to disk if anything has changed since it was loaded or last saved.
+     * Failure to write the cache is logged but is otherwise harmless.
+     */
+    public synchronized void save() {
+        if (!isDirty) {
+            return;
+        }
+        // Clear the flag before taking our copy, so that a change made while we're writing
+        // leaves the cache dirty for next time:
+        isDirty = false;
+        CacheFile data = new CacheFile();
+        data.formatVersion = FORMAT_VERSION;
+        data.entries = new ArrayList<>(new TreeMap<>(entries).values());
+        try {
+            FileSystemUtil.writeStringToFile(gson.toJson(data), cacheFile);
+        } catch (IOException ioe) {
+            isDirty = true;
+            logger.log(Level.WARNING, "ExtensionScanCache: unable to write cache file " + cacheFile.getAbsolutePath(), ioe);
+        }
+    }
+
+    /**
+     * Reports whether we have an up-to-date entry for the given jar file. If this returns true,
+     * then getExtInfo() will return what a fresh scan of that jar would have returned.
+     *
+     * @param jarFile The jar file in question.
+     * @return true if the jar is in the cache and has not changed since it was recorded.
+     */
+    public boolean isCached(File jarFile) {
+        return getValidEntry(jarFile) != null;
+    }
+
+    /**
+     * Returns the cached AppExtensionInfo for the given jar file. A null return can mean either
+     * that the jar isn't cached (or has changed), or that the jar has no usable extInfo.json;
+     * use isCached() to distinguish the two.
+     *
+     * @param jarFile The jar file in question.
+     * @return The cached AppExtensionInfo, or null.
+     */
+    public AppExtensionInfo getExtInfo(File jarFile) {
+        Entry entry = getValidEntry(jarFile);
+        return entry == null ? null : entry.extInfo;
+    }
+
+    /**
+     * Returns the fully qualified name of the extension class that was last loaded from the
+     * given jar file, if we know it and the jar hasn't changed since.
+     *
+     * @param jarFile The jar file in question.
+     * @return A class name, or null if not known.
+     */
+    public String getExtensionClassName(File jarFile) {
+        List<String> classNames = getExtensionClassNames(jarFile);
+        return classNames.isEmpty() ? null : classNames.get(0);
+    }
+
+    /**
+     * Returns the fully qualified names of all extension classes that were last loaded from the
+     * given jar file, if we know them and the jar hasn't changed since.
+     *
+     * @param jarFile The jar file in question.
+     * @return A List of class names, empty if not known.
+     */
+    public List<String> getExtensionClassNames(File jarFile) {
+        Entry entry = getValidEntry(jarFile);
+        String classNames = entry == null ? null : entry.extensionClass;
+        return classNames == null || classNames.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.asList(classNames.split(",")));
+    }
+
+    /**
+     * Records the result of scanning the given jar file. The extInfo can be null to indicate
+     * that the jar file contains no usable extInfo.json - it won't be reopened until it changes.
+     *
+     * @param jarFile The jar file that was scanned.
+     * @param extInfo The AppExtensionInfo parsed out of it, or null.
+     */
+    public void putExtInfo(File jarFile, AppExtensionInfo extInfo) {
+        ensureLoaded();
+        Entry entry = new Entry();
+        entry.path = jarFile.getAbsolutePath();
+        entry.size = jarFile.length();
+        entry.lastModified = jarFile.lastModified();
+        entry.extInfo = extInfo;
+        entries.put(entry.path, entry);
+        isDirty = true;
+    }
+
+    /**
+     * Records the name of the extension class that was loaded from the given jar file.
+     * This is ignored if we have no valid entry for that jar.
+     *
+     * @param jarFile   The jar file in question.
+     * @param className The fully qualified class name of the extension found in that jar.
+     */
+    public void putExtensionClassName(File jarFile, String className) {
+        putExtensionClassNames(jarFile, Collections.singletonList(className));
+    }
+
+    /**
+     * Records the names of all extension classes that were loaded from the given jar file.
+     * This is ignored if we have no valid entry for that jar.
+     *
+     * @param jarFile    The jar file in question.
+     * @param classNames The fully qualified class names of the extensions found in that jar.
+     */
+    public void putExtensionClassNames(File jarFile, List<String> classNames) {
+        Entry entry = getValidEntry(jarFile);
+        String joined = String.join(",", classNames);
+        if (entry != null && !joined.equals(entry.extensionClass)) {
+            entry.extensionClass = joined;
+            isDirty = true;
+        }
+    }
+
+    /**
+     * Removes any entry for the given jar file, forcing a rescan the next time it's encountered.
+     *
+     * @param jarFile The jar file to forget about.
+     */
+    public void invalidate(File jarFile) {
+        ensureLoaded();
+        if (entries.remove(jarFile.getAbsolutePath()) != null) {
+            isDirty = true;
+        }
+    }
+
+    /**
+     * Removes entries for jar files that no longer exist, so that the cache doesn't grow
+     * forever as extensions come and go.
+     */
+    public void pruneMissing() {
+        ensureLoaded();
+        List<String> missing = new ArrayList<>();
+        for (String path : entries.keySet()) {
+            if (!new File(path).exists()) {
+                missing.add(path);
+            }
+        }
+        for (String path : missing) {
+            entries.remove(path);
+            isDirty = true;
+        }
+    }
+
+    /**
+     * Empties the cache. The next save() will write an empty cache file.
+     */
+    public void clear() {
+        ensureLoaded();
+        entries.clear();
+        isDirty = true;
+    }
+
+    private Entry getValidEntry(File jarFile) {
+        ensureLoaded();
+        Entry entry = entries.get(jarFile.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.size != jarFile.length() || entry.lastModified != jarFile.lastModified()) {
+            return null;
+        }
+        return entry;
+    }
+
+    private void ensureLoaded() {
+        if (!isLoaded) {
+            synchronized (this) {
+                if (!isLoaded) {
+                    load();
+                }
+            }
+        }
+    }
+
+    /**
+     * The on-disk representation of the cache.
+     */
+    private static class CacheFile {
+        int formatVersion;
+        List<Entry> entries;
+    }
+
+    /**
+     * A single cached scan result for one jar file.
+     */
+    private static class Entry {
+        String path;
+        long size;
+        long lastModified;
+        AppExtensionInfo extInfo;
+        volatile String extensionClass; // comma-separated if the jar has several extensions
+    }
+}
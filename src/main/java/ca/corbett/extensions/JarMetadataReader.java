@@ -0,0 +1,409 @@
+package ca.corbett.extensions;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A very lightweight reader for pulling the extInfo.json out of an extension jar, for
+ * metadata-only passes such as ExtensionManager.findCandidateExtensionJars(). Opening a
+ * java.util.jar.JarFile builds an index of every entry in the jar and sets up the manifest
+ * and signature verification machinery, none of which we need just to read one small file.
+ * Instead, we read the end of the zip file to find the central directory, read the central
+ * directory itself into a single buffer, and walk it in place - comparing entry names as raw
+ * bytes, so that no objects are created for the entries we skip. Only the entry we want is
+ * inflated, and that is done as it's read, straight off the file.
+ * <p>
+ * The extInfo.json is located exactly as ExtensionManager.findExtInfoEntry() does it:
+ * the canonical location first, then the location named by the jar manifest, and then the
+ * first entry (in central directory order) whose name ends with extInfo.json.
+ * </p>
+ * <p>
+ * Zip64 archives, encrypted entries and compression methods other than stored and deflated
+ * are not supported. For those, and for anything that doesn't look like a valid zip file
+ * (including truncated or corrupt ones), an IOException is thrown, and callers should fall
+ * back to JarFile. Every offset and length read from the file is checked before it's used.
+ * The file is read with ordinary reads rather than memory-mapped, so nothing keeps it open
+ * (or, on Windows, locked) once the returned stream has been closed.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class JarMetadataReader {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_HEADER_SIZE = 30;
+
+    /**
+     * Central directories bigger than this (a few hundred thousand entries) are left to JarFile,
+     * rather than reading them into one buffer.
+     */
+    private static final int MAX_DIRECTORY_SIZE = 64 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final byte[] EXT_INFO_NAME = "extInfo.json".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CANONICAL_NAME = ExtensionManager.EXT_INFO_LOCATION.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MANIFEST_NAME = "META-INF/MANIFEST.MF".getBytes(StandardCharsets.UTF_8);
+
+    private JarMetadataReader() {
+    }
+
+    /**
+     * Reads the contents of the extInfo.json from the given jar file.
+     *
+     * @param jarFile The jar file in question.
+     * @return The contents of its extInfo.json, or null if it doesn't have one.
+     * @throws IOException If the jar can't be read, or isn't something this reader can handle.
+     */
+    public static String readExtInfoJson(File jarFile) throws IOException {
+        try (InputStream in = openExtInfo(jarFile)) {
+            return in == null ? null : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Opens a stream over the extInfo.json in the given jar file, which is inflated as it is read.
+     * The stream keeps the jar file open until it is closed, so be sure to close it.
+     *
+     * @param jarFile The jar file in question.
+     * @return A stream over its extInfo.json, or null if it doesn't have one.
+     * @throws IOException If the jar can't be read, or isn't something this reader can handle.
+     */
+    public static InputStream openExtInfo(File jarFile) throws IOException {
+        FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ);
+        InputStream result = null;
+        try {
+            result = openExtInfo(channel);
+            return result;
+        } catch (RuntimeException re) {
+            // Anything that slipped past our checks still means "not something we can read":
+            throw new IOException("Unable to read " + jarFile.getAbsolutePath() + ": " + re, re);
+        } finally {
+            if (result == null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Does the work for openExtInfo(File). The returned stream takes ownership of the channel.
+     */
+    private static InputStream openExtInfo(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer directory = readCentralDirectory(channel, fileSize);
+
+        // One pass to find all three of our candidates:
+        int canonical = -1;
+        int manifest = -1;
+        int firstMatch = -1;
+        for (int pos = 0, next; pos < directory.limit(); pos = next) {
+            next = checkEntry(directory, pos);
+            int nameStart = pos + CEN_HEADER_SIZE;
+            int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+            if (nameLength == 0 || directory.get(nameStart + nameLength - 1) == '/') {
+                continue; // directory entry
+            }
+            if (canonical < 0 && nameEquals(directory, nameStart, nameLength, CANONICAL_NAME)) {
+                canonical = pos;
+            }
+            else if (manifest < 0 && nameEquals(directory, nameStart, nameLength, MANIFEST_NAME)) {
+                manifest = pos;
+            }
+            if (firstMatch < 0 && nameEndsWith(directory, nameStart, nameLength, EXT_INFO_NAME)) {
+                firstMatch = pos;
+            }
+        }
+
+        if (canonical >= 0) {
+            return openEntry(channel, fileSize, directory, canonical, true);
+        }
+        if (manifest >= 0) {
+            Manifest mf;
+            try (InputStream in = openEntry(channel, fileSize, directory, manifest, false)) {
+                mf = new Manifest(in);
+            }
+            String location = mf.getMainAttributes().getValue(ExtensionManager.MANIFEST_EXTENSION_INFO);
+            if (location != null && !location.isBlank()) {
+                int declared = findEntry(directory, location.trim().getBytes(StandardCharsets.UTF_8));
+                if (declared >= 0) {
+                    return openEntry(channel, fileSize, directory, declared, true);
+                }
+            }
+        }
+        return firstMatch < 0 ? null : openEntry(channel, fileSize, directory, firstMatch, true);
+    }
+
+    /**
+     * Finds the end of central directory record, and reads in the central directory that it describes.
+     */
+    private static ByteBuffer readCentralDirectory(FileChannel channel, long fileSize) throws IOException {
+        if (fileSize < EOCD_SIZE) {
+            throw new IOException("Not a zip file (too short)");
+        }
+
+        // The EOCD record is at the end of the file, but it might be followed by a comment:
+        long tailStart = Math.max(0, fileSize - EOCD_SIZE - MAX_COMMENT_LENGTH);
+        ByteBuffer tail = ByteBuffer.allocate((int)(fileSize - tailStart)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, tailStart);
+        int eocd = -1;
+        for (int pos = tail.limit() - EOCD_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) == EOCD_SIGNATURE
+                    && pos + EOCD_SIZE + (tail.getShort(pos + 20) & 0xFFFF) == tail.limit()) {
+                eocd = pos;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a zip file (no end of central directory record)");
+        }
+
+        int entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("Zip64 archives are not supported");
+        }
+        if (directoryOffset + directorySize > tailStart + eocd) {
+            throw new IOException("Invalid central directory location");
+        }
+        if (directorySize > MAX_DIRECTORY_SIZE) {
+            throw new IOException("Central directory is too large (" + directorySize + " bytes)");
+        }
+
+        // Usually the whole directory is already in our tail buffer:
+        if (directoryOffset >= tailStart) {
+            int start = (int)(directoryOffset - tailStart);
+            return tail.duplicate().position(start).limit(start + (int)directorySize).slice()
+                       .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer directory = ByteBuffer.allocate((int)directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, directory, directoryOffset);
+        return directory;
+    }
+
+    /**
+     * Checks that the central directory record at the given position is valid and lies entirely
+     * within the directory, and returns the position of the record after it.
+     */
+    private static int checkEntry(ByteBuffer directory, int pos) throws IOException {
+        if (pos + CEN_HEADER_SIZE > directory.limit()) {
+            throw new IOException("Truncated central directory");
+        }
+        if (directory.getInt(pos) != CEN_SIGNATURE) {
+            throw new IOException("Invalid central directory entry");
+        }
+        int next = pos + CEN_HEADER_SIZE
+                + (directory.getShort(pos + 28) & 0xFFFF)
+                + (directory.getShort(pos + 30) & 0xFFFF)
+                + (directory.getShort(pos + 32) & 0xFFFF);
+        if (next > directory.limit()) {
+            throw new IOException("Truncated central directory");
+        }
+        return next;
+    }
+
+    private static int findEntry(ByteBuffer directory, byte[] name) throws IOException {
+        for (int pos = 0, next; pos < directory.limit(); pos = next) {
+            next = checkEntry(directory, pos);
+            if (nameEquals(directory, pos + CEN_HEADER_SIZE, directory.getShort(pos + 28) & 0xFFFF, name)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean nameEquals(ByteBuffer directory, int nameStart, int nameLength, byte[] name) {
+        return nameLength == name.length && nameEndsWith(directory, nameStart, nameLength, name);
+    }
+
+    private static boolean nameEndsWith(ByteBuffer directory, int nameStart, int nameLength, byte[] suffix) {
+        if (nameLength < suffix.length || nameStart + nameLength > directory.limit()) {
+            return false;
+        }
+        int offset = nameStart + nameLength - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (directory.get(offset + i) != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens a stream over the entry whose central directory record (already checked by checkEntry)
+     * is at the given position. We trust the sizes in the central directory, since the local header
+     * doesn't have them if the jar was written with data descriptors. If closeChannel is set, closing
+     * the returned stream also closes the channel.
+     */
+    private static InputStream openEntry(FileChannel channel, long fileSize, ByteBuffer directory, int pos,
+                                         boolean closeChannel) throws IOException {
+        int flags = directory.getShort(pos + 8) & 0xFFFF;
+        int method = directory.getShort(pos + 10) & 0xFFFF;
+        long compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+        long size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+        long localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+        if ((flags & FLAG_ENCRYPTED) != 0) {
+            throw new IOException("Encrypted entries are not supported");
+        }
+        if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression method " + method);
+        }
+        if (method == METHOD_STORED && compressedSize != size) {
+            throw new IOException("Invalid stored entry");
+        }
+        if (localHeaderOffset + LOC_HEADER_SIZE > fileSize) {
+            throw new IOException("Invalid local header offset");
+        }
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOC_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, localHeader, localHeaderOffset);
+        if (localHeader.getInt(0) != LOC_SIGNATURE) {
+            throw new IOException("Invalid local header");
+        }
+        long dataOffset = localHeaderOffset + LOC_HEADER_SIZE
+                + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+        if (dataOffset + compressedSize > fileSize) {
+            throw new IOException("Truncated entry");
+        }
+        return new EntryInputStream(channel, closeChannel, dataOffset, compressedSize,
+                                    method == METHOD_DEFLATED, size);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * Reads a single entry straight off the file, inflating it if need be.
+     */
+    private static final class EntryInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final boolean closeChannel;
+        private long position;
+        private long compressedRemaining;
+        private Inflater inflater;
+        private byte[] input;
+        private long remaining;
+
+        EntryInputStream(FileChannel channel, boolean closeChannel, long offset, long compressedSize,
+                         boolean isDeflated, long size) {
+            this.channel = channel;
+            this.closeChannel = closeChannel;
+            this.position = offset;
+            this.compressedRemaining = compressedSize;
+            this.remaining = size;
+            if (isDeflated) {
+                inflater = new Inflater(true);
+                input = new byte[(int)Math.min(READ_BUFFER_SIZE, Math.max(1, compressedSize))];
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int max = (int)Math.min(len, remaining);
+            int n;
+            if (inflater == null) {
+                n = readRaw(b, off, (int)Math.min(max, compressedRemaining));
+            }
+            else {
+                n = inflate(b, off, max);
+            }
+            if (n <= 0) {
+                throw new EOFException("Entry is shorter than expected");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        private int inflate(byte[] b, int off, int len) throws IOException {
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        return n;
+                    }
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        return -1;
+                    }
+                    if (inflater.needsInput()) {
+                        int count = readRaw(input, 0, (int)Math.min(input.length, compressedRemaining));
+                        if (count <= 0) {
+                            return -1;
+                        }
+                        inflater.setInput(input, 0, count);
+                    }
+                }
+            } catch (DataFormatException dfe) {
+                throw new IOException("Invalid deflated entry", dfe);
+            }
+        }
+
+        /**
+         * Reads up to len bytes of the entry's raw data, returning -1 if there is none left.
+         */
+        private int readRaw(byte[] b, int off, int len) throws IOException {
+            if (len <= 0) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+                compressedRemaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int)Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+            remaining = 0;
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+}
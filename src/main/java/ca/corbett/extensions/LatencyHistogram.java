@@ -0,0 +1,167 @@
+package ca.corbett.extensions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A compact, lock-free histogram of latency values, in the style of HdrHistogram. Values
+ * are bucketed by their magnitude (the position of their highest bit), and each magnitude is
+ * split into 32 linear sub-buckets, so that every recorded value is accurate to within about 3%
+ * no matter how large it is. The whole histogram is a fixed-size array of counters, so recording
+ * a value is just a couple of shifts and an atomic increment - cheap enough to leave on all the time.
+ * <p>
+ * Recording is safe from any number of threads at once. Queries are also safe at any time,
+ * but they are not atomic snapshots - a value recorded while a query is in progress may or may
+ * not be counted by that query.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted exactly, one bucket per value.
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+    /**
+     * Enough buckets to cover every non-negative long value.
+     */
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a single value. Negative values are recorded as zero.
+     *
+     * @param value The value to record - typically an elapsed time in nanoseconds.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalValue.add(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded so far.
+     *
+     * @return The count of recorded values.
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the largest value recorded so far (exact, not bucketed), or 0 if nothing has been recorded.
+     *
+     * @return The maximum recorded value.
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of all recorded values (exact, not bucketed), or 0 if nothing
+     * has been recorded.
+     *
+     * @return The mean recorded value.
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double)totalValue.sum() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile - for example, getValueAtPercentile(99.0)
+     * returns a value that 99% of recorded values are less than or equal to. The returned
+     * value is the upper bound of the bucket in which that percentile falls, so it may
+     * overstate the true value by up to about 3%, but it will never exceed getMax().
+     *
+     * @param percentile A percentile from 0 to 100.
+     * @return The value at that percentile, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(clamped / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Discards all recorded values. This is not atomic with respect to concurrent recording,
+     * so values recorded while the reset is in progress may be partially retained.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalValue.reset();
+        maxValue.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + ", mean=" + Math.round(getMean())
+                + ", p50=" + getValueAtPercentile(50)
+                + ", p99=" + getValueAtPercentile(99)
+                + ", max=" + getMax();
+    }
+
+    /**
+     * Works out which bucket the given non-negative value falls into. Small values get a bucket
+     * each. Above that, the top SUB_BUCKET_BITS + 1 significant bits of the value pick the bucket,
+     * and the number of bits shifted away picks the magnitude.
+     */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int)value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_COUNT) + (int)(value >>> shift);
+    }
+
+    /**
+     * Returns the largest value that would land in the given bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index / SUB_BUCKET_COUNT) - 1;
+        long top = (index % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+        long upper = ((top + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,104 @@
+package ca.corbett.extensions;
+
+import java.io.File;
+
+/**
+ * A snapshot of how far along an ExtensionManager.loadExtensionsAsync() call is. A new
+ * LoadProgress is sent to the progress callback each time a jar file is scanned, loaded,
+ * rejected, or fails to load.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class LoadProgress {
+
+    private final int jarCount;
+    private final int scannedCount;
+    private final int loadedCount;
+    private final int rejectedCount;
+    private final int failedCount;
+    private final File currentJar;
+
+    public LoadProgress(int jarCount, int scannedCount, int loadedCount, int rejectedCount, int failedCount, File currentJar) {
+        this.jarCount = jarCount;
+        this.scannedCount = scannedCount;
+        this.loadedCount = loadedCount;
+        this.rejectedCount = rejectedCount;
+        this.failedCount = failedCount;
+        this.currentJar = currentJar;
+    }
+
+    /**
+     * Returns the total number of jar files found in the extension directory.
+     *
+     * @return The number of jar files that will be scanned.
+     */
+    public int getJarCount() {
+        return jarCount;
+    }
+
+    /**
+     * Returns the number of jar files whose extInfo.json has been read so far.
+     *
+     * @return The number of jars scanned.
+     */
+    public int getScannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * Returns the number of jar files from which one or more extensions have been loaded so far.
+     *
+     * @return The number of loaded jars.
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Returns the number of jar files that were skipped without being loaded - because they
+     * have no extInfo.json, target some other application or version, have unsatisfied
+     * dependencies, or contain an extension that is already loaded.
+     *
+     * @return The number of jars rejected.
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Returns the number of jar files that we tried to load an extension from, but couldn't.
+     *
+     * @return The number of jars that failed to load.
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Returns the jar file whose change in status triggered this progress update.
+     *
+     * @return A jar file.
+     */
+    public File getCurrentJar() {
+        return currentJar;
+    }
+
+    /**
+     * Returns the number of jar files that have been fully dealt with, one way or another.
+     * Once this reaches getJarCount(), loading is finished.
+     *
+     * @return The number of loaded, rejected, and failed jars.
+     */
+    public int getCompletedCount() {
+        return loadedCount + rejectedCount + failedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "scanned " + scannedCount + "/" + jarCount
+                + ", loaded " + loadedCount
+                + ", rejected " + rejectedCount
+                + ", failed " + failedCount;
+    }
+}
@@ -0,0 +1,124 @@
+package ca.corbett.extensions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the outcome of loading extensions from a directory. Every jar file found in the
+ * directory ends up in exactly one of three places: it was loaded, it was rejected (skipped
+ * without trying to load it), or it failed (we tried to load it, but couldn't).
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class LoadReport {
+
+    private final int jarCount;
+    private final Map<File, List<String>> loaded;
+    private final Map<File, String> rejected;
+    private final Map<File, String> failed;
+    private final boolean isCancelled;
+    private final long elapsedMillis;
+
+    public LoadReport(int jarCount, Map<File, List<String>> loaded, Map<File, String> rejected, Map<File, String> failed,
+                      boolean isCancelled, long elapsedMillis) {
+        this.jarCount = jarCount;
+        Map<File, List<String>> loadedCopy = new LinkedHashMap<>();
+        for (Map.Entry<File, List<String>> entry : loaded.entrySet()) {
+            loadedCopy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.loaded = Collections.unmodifiableMap(loadedCopy);
+        this.rejected = Collections.unmodifiableMap(new LinkedHashMap<>(rejected));
+        this.failed = Collections.unmodifiableMap(new LinkedHashMap<>(failed));
+        this.isCancelled = isCancelled;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the number of jar files that were found in the extension directory.
+     *
+     * @return The count of jar files found.
+     */
+    public int getJarCount() {
+        return jarCount;
+    }
+
+    /**
+     * Returns the jar files that were successfully loaded, in load order, along with the class
+     * names of the extensions that were loaded from each. Usually that's just one extension,
+     * but a jar can declare several.
+     *
+     * @return A Map of jar file to extension class names.
+     */
+    public Map<File, List<String>> getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the class names of all extensions that were loaded, in load order.
+     *
+     * @return A List of zero or more extension class names.
+     */
+    public List<String> getLoadedClassNames() {
+        List<String> classNames = new ArrayList<>();
+        for (List<String> list : loaded.values()) {
+            classNames.addAll(list);
+        }
+        return Collections.unmodifiableList(classNames);
+    }
+
+    /**
+     * Returns the jar files that were skipped without being loaded, along with the reason for each.
+     *
+     * @return A Map of jar file to rejection reason.
+     */
+    public Map<File, String> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the jar files that we tried and failed to load, along with the reason for each.
+     *
+     * @return A Map of jar file to failure reason.
+     */
+    public Map<File, String> getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of extensions that were loaded. This can be more than the number of
+     * jars that were loaded, if some jars contain more than one extension.
+     *
+     * @return The count of loaded extensions.
+     */
+    public int getLoadedCount() {
+        return getLoadedClassNames().size();
+    }
+
+    /**
+     * Reports whether loading was cancelled before all jar files were dealt with. If so,
+     * the remaining jar files are not mentioned in this report.
+     *
+     * @return true if loading was cancelled.
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "found " + jarCount + " jars: loaded " + getLoadedCount() + " extensions from " + loaded.size() + " jars"
+                + ", rejected " + rejected.size()
+                + ", failed " + failed.size()
+                + (isCancelled ? " (cancelled)" : "")
+                + " in " + elapsedMillis + "ms";
+    }
+}
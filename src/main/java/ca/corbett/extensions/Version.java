@@ -0,0 +1,225 @@
+package ca.corbett.extensions;
+
+import java.util.Arrays;
+
+/**
+ * A parsed, comparable version number, such as "1.9", "1.10", or "2.1.3". Versions are made
+ * up of any number of dot-separated numeric segments, compared numerically from left to right,
+ * so "1.10" is newer than "1.9". Missing trailing segments count as zero, so "2", "2.0" and
+ * "2.0.0" are all the same version.
+ * <p>
+ * A version may also carry a pre-release qualifier after a dash, as in "2.0-beta.1", in which
+ * case it comes before the same version without one. Qualifiers are compared the way semantic
+ * versioning does it: dot-separated, with numeric parts compared as numbers. Build metadata
+ * after a "+" is ignored, and so is a leading "v".
+ * </p>
+ * <p>
+ * Versions are immutable, so parse them once and compare them as often as you like.
+ * See VersionRange for matching a version against a constraint.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class Version implements Comparable<Version> {
+
+    /**
+     * The version "0", which is older than every other version except for 0 pre-releases.
+     */
+    public static final Version ZERO = new Version("0", new int[0], null);
+
+    private final String text;
+    private final int[] segments; // with trailing zeros removed
+    private final String[] qualifier; // null if there is none
+
+    private Version(String text, int[] segments, String[] qualifier) {
+        this.text = text;
+        this.segments = segments;
+        this.qualifier = qualifier;
+    }
+
+    /**
+     * Parses the given version string.
+     *
+     * @param version A version string, such as "1.2.3" or "2.0-beta".
+     * @return The parsed Version.
+     * @throws IllegalArgumentException If the string isn't a valid version.
+     */
+    public static Version parse(String version) {
+        if (version == null) {
+            throw new IllegalArgumentException("Version must not be null");
+        }
+        String text = version.trim();
+        String remainder = text;
+        if (remainder.startsWith("v") || remainder.startsWith("V")) {
+            remainder = remainder.substring(1);
+        }
+        int plus = remainder.indexOf('+');
+        if (plus >= 0) {
+            remainder = remainder.substring(0, plus);
+        }
+        String[] qualifier = null;
+        int dash = remainder.indexOf('-');
+        if (dash >= 0) {
+            String qualifierText = remainder.substring(dash + 1);
+            if (qualifierText.isEmpty()) {
+                throw new IllegalArgumentException("Invalid version: \"" + version + "\"");
+            }
+            qualifier = qualifierText.split("\\.", -1);
+            for (String part : qualifier) {
+                if (part.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid version: \"" + version + "\"");
+                }
+            }
+            remainder = remainder.substring(0, dash);
+        }
+
+        String[] parts = remainder.split("\\.", -1);
+        int[] segments = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (!isNumeric(parts[i])) {
+                throw new IllegalArgumentException("Invalid version: \"" + version + "\"");
+            }
+            try {
+                segments[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Invalid version: \"" + version + "\"", nfe);
+            }
+        }
+        int length = segments.length;
+        while (length > 0 && segments[length - 1] == 0) {
+            length--;
+        }
+        return new Version(text, Arrays.copyOf(segments, length), qualifier);
+    }
+
+    /**
+     * Returns the numeric segment at the given position (0 for major, 1 for minor, and so on).
+     * Segments beyond the end of the version are zero.
+     *
+     * @param index The position of the segment.
+     * @return The value of that segment.
+     */
+    public int getSegment(int index) {
+        return index < segments.length ? segments[index] : 0;
+    }
+
+    /**
+     * Returns the number of significant numeric segments - that is, not counting trailing zeros.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public boolean isPreRelease() {
+        return qualifier != null;
+    }
+
+    /**
+     * Returns a new Version made up of the first count segments of this one, with the last of
+     * those incremented, and no qualifier. For example, "1.9.2".increment(1) is "2", and
+     * "1.9.2".increment(2) is "1.10".
+     *
+     * @param count The number of segments to keep, which must be at least 1.
+     * @return The incremented Version.
+     */
+    public Version increment(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = getSegment(i);
+        }
+        result[count - 1]++;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : ".").append(result[i]);
+        }
+        return new Version(text.toString(), result, null);
+    }
+
+    @Override
+    public int compareTo(Version other) {
+        int length = Math.max(segments.length, other.segments.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(getSegment(i), other.getSegment(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        // A pre-release comes before the release itself:
+        if (qualifier == null || other.qualifier == null) {
+            return qualifier == null ? (other.qualifier == null ? 0 : 1) : -1;
+        }
+        for (int i = 0; i < Math.min(qualifier.length, other.qualifier.length); i++) {
+            int result = compareQualifierPart(qualifier[i], other.qualifier[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(qualifier.length, other.qualifier.length);
+    }
+
+    public boolean isNewerThan(Version other) {
+        return compareTo(other) > 0;
+    }
+
+    public boolean isOlderThan(Version other) {
+        return compareTo(other) < 0;
+    }
+
+    /**
+     * Returns the version string that this Version was parsed from.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(segments) + Arrays.hashCode(qualifier);
+    }
+
+    /**
+     * Two Versions are equal if they compare as equal, so "2.0" equals "2".
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Version other = (Version)obj;
+        return Arrays.equals(segments, other.segments) && Arrays.equals(qualifier, other.qualifier);
+    }
+
+    private static int compareQualifierPart(String a, String b) {
+        boolean aNumeric = isNumeric(a);
+        boolean bNumeric = isNumeric(b);
+        if (aNumeric && bNumeric) {
+            int result = Integer.compare(a.length(), b.length()); // avoids overflow on long runs of digits
+            return result != 0 ? result : a.compareTo(b);
+        }
+        if (aNumeric != bNumeric) {
+            return aNumeric ? -1 : 1; // numeric identifiers come first
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
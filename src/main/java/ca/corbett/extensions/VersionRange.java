@@ -0,0 +1,180 @@
+package ca.corbett.extensions;
+
+/**
+ * A range of acceptable versions. Ranges are parsed from strings in any of these forms:
+ * <ul>
+ *     <li><b>"1.9"</b> - a bare version means "1.9 or newer".</li>
+ *     <li><b>"[1.9,2.0)"</b> - interval notation, where a square bracket includes that end of
+ *         the range and a round bracket excludes it. Either end may be left empty, as in
+ *         "[1.9,)" or "(,2.0)". "[1.9]" means exactly 1.9.</li>
+ *     <li><b>"^1.9"</b> - "compatible with 1.9": 1.9 or newer, up to but not including the
+ *         next major version (2.0). As with other tools that use this notation, the first
+ *         non-zero segment is treated as the major version, so "^0.3" means [0.3,0.4).</li>
+ * </ul>
+ * <p>
+ * Ranges are immutable, and their end points are parsed up front, so checking a Version against
+ * a VersionRange is just a couple of numeric comparisons. ExtensionManager parses the
+ * application's version requirement once per scan, and then matches every candidate jar
+ * against it.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class VersionRange {
+
+    private final String text;
+    private final Version lower; // null for no lower bound
+    private final boolean lowerInclusive;
+    private final Version upper; // null for no upper bound
+    private final boolean upperInclusive;
+
+    private VersionRange(String text, Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+        this.text = text;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    /**
+     * Parses the given range string. See the class documentation for the accepted forms.
+     *
+     * @param range A range string, such as "1.9", "[1.9,2.0)" or "^1.9".
+     * @return The parsed VersionRange.
+     * @throws IllegalArgumentException If the string isn't a valid range.
+     */
+    public static VersionRange parse(String range) {
+        if (range == null || range.isBlank()) {
+            throw new IllegalArgumentException("Version range must not be empty");
+        }
+        String text = range.trim();
+        char first = text.charAt(0);
+        if (first == '^') {
+            Version lower = Version.parse(text.substring(1));
+            int major = 0;
+            while (major < lower.getSegmentCount() - 1 && lower.getSegment(major) == 0) {
+                major++;
+            }
+            return new VersionRange(text, lower, true, lower.increment(major + 1), false);
+        }
+        if (first != '[' && first != '(') {
+            return new VersionRange(text, Version.parse(text), true, null, false);
+        }
+
+        char last = text.charAt(text.length() - 1);
+        if (text.length() < 3 || (last != ']' && last != ')')) {
+            throw new IllegalArgumentException("Invalid version range: \"" + range + "\"");
+        }
+        boolean lowerInclusive = first == '[';
+        boolean upperInclusive = last == ']';
+        String body = text.substring(1, text.length() - 1);
+        int comma = body.indexOf(',');
+        if (comma < 0) {
+            // "[1.9]" is an exact version:
+            if (!lowerInclusive || !upperInclusive) {
+                throw new IllegalArgumentException("Invalid version range: \"" + range + "\"");
+            }
+            Version exact = Version.parse(body);
+            return new VersionRange(text, exact, true, exact, true);
+        }
+        if (body.indexOf(',', comma + 1) >= 0) {
+            throw new IllegalArgumentException("Invalid version range: \"" + range + "\"");
+        }
+        String lowerText = body.substring(0, comma).trim();
+        String upperText = body.substring(comma + 1).trim();
+        Version lower = lowerText.isEmpty() ? null : Version.parse(lowerText);
+        Version upper = upperText.isEmpty() ? null : Version.parse(upperText);
+        if (lower != null && upper != null && lower.isNewerThan(upper)) {
+            throw new IllegalArgumentException("Invalid version range: \"" + range + "\" (lower bound is above upper bound)");
+        }
+        return new VersionRange(text, lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    /**
+     * Returns a range that contains only the given version.
+     */
+    public static VersionRange exactly(Version version) {
+        return new VersionRange("[" + version + "]", version, true, version, true);
+    }
+
+    /**
+     * Returns a range that contains the given version and everything newer.
+     */
+    public static VersionRange atLeast(Version version) {
+        return new VersionRange(version.toString(), version, true, null, false);
+    }
+
+    /**
+     * Reports whether the given version falls within this range.
+     *
+     * @param version The Version to check.
+     * @return true if the version is acceptable.
+     */
+    public boolean contains(Version version) {
+        if (lower != null) {
+            int result = version.compareTo(lower);
+            if (result < 0 || (result == 0 && !lowerInclusive)) {
+                return false;
+            }
+        }
+        if (upper != null) {
+            int result = version.compareTo(upper);
+            return result < 0 || (result == 0 && upperInclusive);
+        }
+        return true;
+    }
+
+    /**
+     * Reports whether there is any version that falls within both this range and the given one.
+     *
+     * @param other Another VersionRange.
+     * @return true if the two ranges overlap.
+     */
+    public boolean intersects(VersionRange other) {
+        return isBelow(lower, lowerInclusive, other.upper, other.upperInclusive)
+                && isBelow(other.lower, other.lowerInclusive, upper, upperInclusive);
+    }
+
+    /**
+     * Returns the lower bound of this range, or null if it has none.
+     */
+    public Version getLowerBound() {
+        return lower;
+    }
+
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    /**
+     * Returns the upper bound of this range, or null if it has none.
+     */
+    public Version getUpperBound() {
+        return upper;
+    }
+
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    /**
+     * Returns the string that this range was parsed from.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Reports whether a range that starts at the given lower bound can reach a range that ends
+     * at the given upper bound. A null bound is unbounded.
+     */
+    private static boolean isBelow(Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+        if (lower == null || upper == null) {
+            return true;
+        }
+        int result = lower.compareTo(upper);
+        return result < 0 || (result == 0 && lowerInclusive && upperInclusive);
+    }
+}
@@ -1,14 +1,20 @@
 package ca.corbett.extensions;
 
+import com.google.gson.GsonBuilder;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.InputStream;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AppExtensionInfoTest {
 
@@ -72,6 +78,18 @@ public class AppExtensionInfoTest {
         assertEquals(info.getCustomFieldValue("custom2"), info2.getCustomFieldValue("custom2"));
     }
 
+    @Test
+    public void fromJson_withDependencies_shouldParseThem() {
+        AppExtensionInfo info = AppExtensionInfo.fromJson("{ \"name\": \"test\", \"dependencies\": ["
+                + "{ \"name\": \"other\", \"version\": \"1.2\" },"
+                + "{ \"name\": \"maybe\", \"optional\": true } ] }");
+        assertNotNull(info);
+        assertEquals(2, info.getDependencies().size());
+        assertEquals(new ExtensionDependency("other", "1.2", false), info.getDependencies().get(0));
+        assertEquals(new ExtensionDependency("maybe", null, true), info.getDependencies().get(1));
+        assertEquals(info, AppExtensionInfo.fromJson(info.toJson()));
+    }
+
     @Test
     public void testFromStream() throws Exception {
         AppExtensionInfo info = new AppExtensionInfo.Builder("test")
@@ -95,4 +113,74 @@ public class AppExtensionInfoTest {
         assertNotNull(info2);
         assertEquals(info, info2);
     }
+
+    @Test
+    public void fromStream_withOversizedInput_shouldStopReadingEarly() {
+        // GIVEN a stream that would go on far longer than any sensible extInfo.json:
+        long[] bytesRead = new long[1];
+        InputStream endless = new InputStream() {
+            private final byte[] prefix = "{ \"name\": \"test\", \"longDescription\": \"".getBytes(StandardCharsets.UTF_8);
+
+            @Override
+            public int read() {
+                long pos = bytesRead[0]++;
+                return pos < prefix.length ? prefix[(int)pos] : 'x';
+            }
+        };
+
+        // WHEN we parse it:
+        AppExtensionInfo info = AppExtensionInfo.fromStream(endless);
+
+        // THEN it should be rejected without reading much past the limit:
+        assertNull(info);
+        assertTrue(bytesRead[0] <= AppExtensionInfo.MAX_DOCUMENT_LENGTH + 64 * 1024);
+    }
+
+    @Test
+    public void fromStreamAndFromJson_withOverlongField_shouldReject() {
+        // GIVEN a document that fits, but has one field that is too long:
+        String json = new AppExtensionInfo.Builder("test")
+                .setReleaseNotes("x".repeat(AppExtensionInfo.MAX_FIELD_LENGTH + 1))
+                .build().toJson();
+
+        // WHEN we parse it / THEN it should be rejected either way:
+        assertNull(AppExtensionInfo.fromJson(json));
+        assertNull(AppExtensionInfo.fromStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void fromStream_withTrailingGarbage_shouldReject() {
+        String json = new AppExtensionInfo.Builder("test").build().toJson() + " trailing";
+        assertNull(AppExtensionInfo.fromStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void typeAdapter_shouldMatchReflectiveGson() {
+        // GIVEN an AppExtensionInfo with every kind of field populated:
+        AppExtensionInfo info = new AppExtensionInfo.Builder("test")
+                .setAuthor("me")
+                .setVersion("1.0")
+                .setTargetAppName("Test app")
+                .setTargetAppVersion("2.0")
+                .setLongDescription("line one\nline \"two\"")
+                .addCustomField("custom1", "custom1value")
+                .setExtensionClass("com.example.First")
+                .addExtensionClass("com.example.Second")
+                .addActivateAfter("other")
+                .addDependency("base", "1.2")
+                .addOptionalDependency("extra", null)
+                .build();
+        GsonBuilder reflective = new GsonBuilder().setPrettyPrinting();
+
+        // WHEN we write it with the type adapter / THEN it should match what reflection produced:
+        String json = info.toJson();
+        assertEquals(reflective.create().toJson(info), json);
+
+        // AND it should read back the same, with unknown fields ignored:
+        assertEquals(info, AppExtensionInfo.fromJson(json));
+        assertEquals(reflective.create().fromJson(json, AppExtensionInfo.class), AppExtensionInfo.fromJson(json));
+        AppExtensionInfo withExtra = AppExtensionInfo.fromJson("{ \"name\": \"test\", \"future\": { \"a\": [1, 2] } }");
+        assertNotNull(withExtra);
+        assertEquals("test", withExtra.getName());
+    }
 }
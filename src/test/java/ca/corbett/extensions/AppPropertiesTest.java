@@ -10,8 +10,10 @@ import java.util.List;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AppPropertiesTest {
 
@@ -35,6 +37,71 @@ class AppPropertiesTest {
         assertNull(appProps.getPropertiesManager().getProperty("General.General.testProperty"));
     }
 
+    @Test
+    public void isExtensionEnabled_withQuarantinedExtension_shouldOnlyPersistIfRequested() throws Exception {
+        // GIVEN an extension that has been quarantined by the circuit breaker:
+        ExtensionManager<AppExtension> extManager = new ExtensionManagerImpl();
+        AppExtension ext = new AppExtensionImpl1("ext1");
+        extManager.addExtension(ext, true);
+        extManager.setCircuitBreakerPolicy(new CircuitBreakerPolicy.Builder().setMinimumCalls(1).setOpenMillis(60_000).build());
+        File f = File.createTempFile("blah", ".blah");
+        f.deleteOnExit();
+        TestAppProperties appProps = new TestAppProperties(f, extManager);
+        appProps.load();
+        String propName = "extension.enabled." + ext.getClass().getName();
+        extManager.broadcast("hook", e -> {
+            throw new IllegalStateException("boom");
+        }, DispatchMode.SERIAL, 0);
+        assertFalse(extManager.isExtensionEnabled(ext.getClass().getName()));
+
+        // WHEN we aren't persisting quarantine, THEN the saved status should be unchanged:
+        assertFalse(appProps.isExtensionEnabled(ext.getClass().getName(), true));
+        assertTrue(appProps.getPropertiesManager().getPropertiesInstance().getBoolean(propName, true));
+
+        // WHEN we are persisting quarantine, THEN the saved status should follow it:
+        extManager.resetCircuitBreaker(ext.getClass().getName());
+        appProps.setPersistQuarantine(true);
+        extManager.broadcast("hook", e -> {
+            throw new IllegalStateException("boom");
+        }, DispatchMode.SERIAL, 0);
+        assertFalse(appProps.getPropertiesManager().getPropertiesInstance().getBoolean(propName, true));
+
+        // WHEN we close it, THEN it should stop listening:
+        appProps.close();
+        extManager.resetCircuitBreaker(ext.getClass().getName());
+        appProps.getPropertiesManager().getPropertiesInstance().setBoolean(propName, true);
+        extManager.broadcast("hook", e -> {
+            throw new IllegalStateException("boom");
+        }, DispatchMode.SERIAL, 0);
+        assertFalse(extManager.isExtensionEnabled(ext.getClass().getName()));
+        assertTrue(appProps.getPropertiesManager().getPropertiesInstance().getBoolean(propName, false));
+    }
+
+    @Test
+    public void extensionLoaded_withExtensionDisabledInProps_shouldDisableIt() throws Exception {
+        // GIVEN loaded properties in which an extension is disabled:
+        ExtensionManager<AppExtension> extManager = new ExtensionManagerImpl();
+        File f = File.createTempFile("blah", ".blah");
+        f.deleteOnExit();
+        TestAppProperties appProps = new TestAppProperties(f, extManager);
+        appProps.load();
+        appProps.getPropertiesManager().getPropertiesInstance().setBoolean("extension.enabled." + AppExtensionImpl1.class.getName(), false);
+
+        // WHEN that extension and another one are loaded afterwards:
+        extManager.addExtension(new AppExtensionImpl1("ext1"), true);
+        extManager.addExtension(new AppExtensionImpl2("ext2"), true);
+
+        // THEN only the disabled one should be disabled:
+        assertFalse(extManager.isExtensionEnabled(AppExtensionImpl1.class.getName()));
+        assertTrue(extManager.isExtensionEnabled(AppExtensionImpl2.class.getName()));
+
+        // WHEN we close it, THEN it should leave newly loaded extensions alone:
+        appProps.close();
+        extManager.unloadAllExtensions();
+        extManager.addExtension(new AppExtensionImpl1("ext1"), true);
+        assertTrue(extManager.isExtensionEnabled(AppExtensionImpl1.class.getName()));
+    }
+
     public static class TestAppProperties extends AppProperties<AppExtension> {
 
         public TestAppProperties(File f, ExtensionManager<AppExtension> extManager) {
@@ -0,0 +1,89 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void recordCall_belowMinimumCalls_shouldStayClosed() {
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder().setMinimumCalls(5).build());
+        for (int i = 0; i < 4; i++) {
+            assertNull(breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void recordCall_withHighFailureRate_shouldOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder()
+                .setWindowSize(10).setMinimumCalls(10).setFailureRateThreshold(0.5).build());
+        for (int i = 0; i < 5; i++) {
+            assertNull(breaker.recordCall(FAST, DispatchResult.Status.SUCCEEDED, 0));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertNull(breaker.recordCall(FAST, DispatchResult.Status.TIMED_OUT, 0));
+        }
+        CircuitBreaker.Transition transition = breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0);
+        assertNotNull(transition);
+        assertEquals(CircuitBreaker.State.CLOSED, transition.getOldState());
+        assertEquals(CircuitBreaker.State.OPEN, transition.getNewState());
+    }
+
+    @Test
+    public void recordCall_withOldFailuresOutsideWindow_shouldStayClosed() {
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder()
+                .setWindowSize(4).setMinimumCalls(4).setFailureRateThreshold(0.5).build());
+        breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0);
+        for (int i = 0; i < 20; i++) {
+            assertNull(breaker.recordCall(FAST, DispatchResult.Status.SUCCEEDED, 0));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void recordCall_withSlowCalls_shouldOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder()
+                .setMinimumCalls(3).setSlowCallMillis(100).setSlowCallRateThreshold(1.0).build());
+        breaker.recordCall(SLOW, DispatchResult.Status.SUCCEEDED, 0);
+        breaker.recordCall(SLOW, DispatchResult.Status.SUCCEEDED, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.recordCall(SLOW, DispatchResult.Status.SUCCEEDED, 0).getNewState());
+    }
+
+    @Test
+    public void checkOpenTimeout_afterOpenPeriod_shouldProbeAndClose() {
+        // GIVEN a breaker that has just opened:
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder()
+                .setMinimumCalls(1).setOpenMillis(1000).setHalfOpenProbeCount(2).build());
+        breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // WHEN time passes:
+        assertNull(breaker.checkOpenTimeout(TimeUnit.MILLISECONDS.toNanos(999)));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.checkOpenTimeout(TimeUnit.MILLISECONDS.toNanos(1000)).getNewState());
+
+        // THEN enough good probes should close it:
+        assertNull(breaker.recordCall(FAST, DispatchResult.Status.SUCCEEDED, 0));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.recordCall(FAST, DispatchResult.Status.SUCCEEDED, 0).getNewState());
+    }
+
+    @Test
+    public void recordCall_withFailedProbe_shouldReopen() {
+        CircuitBreaker breaker = new CircuitBreaker(new CircuitBreakerPolicy.Builder()
+                .setMinimumCalls(1).setOpenMillis(0).build());
+        breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0);
+        breaker.checkOpenTimeout(0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        CircuitBreaker.Transition transition = breaker.recordCall(FAST, DispatchResult.Status.FAILED, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, transition.getOldState());
+        assertEquals(CircuitBreaker.State.OPEN, transition.getNewState());
+    }
+}
@@ -0,0 +1,94 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassFileHeaderTest {
+
+    @Test
+    public void read_withConcreteClass_shouldReturnHierarchy() throws Exception {
+        ClassFileHeader header = readHeader(ExtensionManagerTest.AppExtensionImpl1.class);
+        assertEquals("ca/corbett/extensions/ExtensionManagerTest$AppExtensionImpl1", header.getClassName());
+        assertEquals("java/lang/Object", header.getSuperClassName());
+        assertEquals(List.of("ca/corbett/extensions/AppExtension"), header.getInterfaceNames());
+        assertTrue(header.isConcrete());
+    }
+
+    @Test
+    public void read_withInterface_shouldNotBeConcrete() throws Exception {
+        ClassFileHeader header = readHeader(AppExtension.class);
+        assertTrue(header.isInterface());
+        assertFalse(header.isConcrete());
+        assertTrue(header.getInterfaceNames().isEmpty());
+    }
+
+    @Test
+    public void read_withAbstractClassAndWideConstants_shouldParse() throws Exception {
+        // Longs and doubles take up two constant pool slots, so make sure we skip them properly:
+        ClassFileHeader header = readHeader(WideConstants.class);
+        assertEquals("ca/corbett/extensions/ClassFileHeaderTest$WideConstants", header.getClassName());
+        assertTrue(header.isAbstract());
+        assertEquals(List.of("java/lang/Runnable"), header.getInterfaceNames());
+
+        assertNull(readHeader(Object.class).getSuperClassName());
+    }
+
+    @Test
+    public void parse_withGarbage_shouldThrow() {
+        assertThrows(IOException.class, () -> ClassFileHeader.parse(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}));
+        assertThrows(IOException.class, () -> ClassFileHeader.parse(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}));
+    }
+
+    @Test
+    public void parse_withTruncatedOrCorruptClassFile_shouldOnlyThrowIOException() throws Exception {
+        // GIVEN a real class file:
+        byte[] original;
+        try (InputStream in = WideConstants.class.getResourceAsStream("ClassFileHeaderTest$WideConstants.class")) {
+            original = in.readAllBytes();
+        }
+
+        // WHEN we parse every truncation of it, and a lot of randomly corrupted copies of it,
+        // THEN we should either get a header or an IOException, and nothing else:
+        for (int length = 0; length < original.length; length++) {
+            parseOrIOException(Arrays.copyOf(original, length));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            byte[] corrupt = original.clone();
+            for (int j = 0; j < 3; j++) {
+                corrupt[8 + random.nextInt(corrupt.length - 8)] = (byte)random.nextInt(256);
+            }
+            parseOrIOException(corrupt);
+        }
+    }
+
+    private static void parseOrIOException(byte[] data) {
+        try {
+            ClassFileHeader.parse(data);
+        } catch (IOException expected) {
+            // fine
+        }
+    }
+
+    private static ClassFileHeader readHeader(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            return ClassFileHeader.read(in);
+        }
+    }
+
+    private static abstract class WideConstants implements Runnable {
+        long bigNumber = 123456789012345L;
+        double pi = 3.14159265358979;
+    }
+}
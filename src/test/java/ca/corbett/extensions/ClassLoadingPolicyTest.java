@@ -0,0 +1,43 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassLoadingPolicyTest {
+
+    @Test
+    public void isChildFirst_withNoRules_shouldBeParentFirst() {
+        ClassLoadingPolicy policy = new ClassLoadingPolicy.Builder().build();
+        assertFalse(policy.isChildFirst("com.example.Thing"));
+    }
+
+    @Test
+    public void isChildFirst_withNestedRules_shouldUseMostSpecificRule() {
+        ClassLoadingPolicy policy = new ClassLoadingPolicy.Builder()
+                .addChildFirstPackage("com.example.*")
+                .addParentFirstPackage("com.example.api")
+                .build();
+        assertTrue(policy.isChildFirst("com.example.Thing"));
+        assertTrue(policy.isChildFirst("com.example.impl.Thing"));
+        assertFalse(policy.isChildFirst("com.example.api.Thing"));
+        assertFalse(policy.isChildFirst("com.example.api.sub.Thing"));
+        assertFalse(policy.isChildFirst("com.examples.Thing"));
+    }
+
+    @Test
+    public void isChildFirst_withChildFirstDefault_shouldStillProtectCorePackages() {
+        ClassLoadingPolicy policy = new ClassLoadingPolicy.Builder()
+                .setChildFirstByDefault(true)
+                .addChildFirstPackage("java")
+                .build();
+        assertTrue(policy.isChildFirst("com.example.Thing"));
+        assertFalse(policy.isChildFirst("java.lang.String"));
+        assertFalse(policy.isChildFirst("javax.swing.JPanel"));
+        assertFalse(policy.isChildFirst("jdk.internal.misc.Unsafe"));
+        assertFalse(policy.isChildFirst(AppExtension.class.getName()));
+        assertFalse(policy.isChildFirst("ca.corbett.extras.properties.AbstractProperty"));
+        assertTrue(policy.isChildFirst("javaxx.Thing"));
+    }
+}
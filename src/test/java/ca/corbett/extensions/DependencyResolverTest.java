@@ -0,0 +1,121 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DependencyResolverTest {
+
+    private final Map<File, AppExtensionInfo> candidates = new LinkedHashMap<>();
+
+    @Test
+    public void resolve_withDependencies_shouldLoadDependenciesFirst() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("B", "2.0"));
+        File b = candidate(new AppExtensionInfo.Builder("B").setVersion("2.1").addOptionalDependency("C", null));
+        File c = candidate(new AppExtensionInfo.Builder("C").setVersion("1.0"));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+        assertEquals(List.of(c, b, a), result.getLoadOrder());
+        assertTrue(result.getRejected().isEmpty());
+    }
+
+    @Test
+    public void resolve_withMissingDependency_shouldRejectTransitively() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("B", null));
+        File b = candidate(new AppExtensionInfo.Builder("B").setVersion("1.0").addDependency("Missing", null));
+        File c = candidate(new AppExtensionInfo.Builder("C").setVersion("1.0").addOptionalDependency("Missing", null));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+        assertEquals(List.of(c), result.getLoadOrder());
+        assertEquals(2, result.getRejected().size());
+        assertTrue(result.getRejected().get(b).contains("Missing"));
+        assertTrue(result.getRejected().containsKey(a));
+    }
+
+    @Test
+    public void resolve_withDependencyTooOld_shouldReject() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("B", "1.10"));
+        candidate(new AppExtensionInfo.Builder("B").setVersion("1.9"));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+        assertEquals(1, result.getLoadOrder().size());
+        assertTrue(result.getRejected().containsKey(a));
+    }
+
+    @Test
+    public void resolve_withAlreadyLoadedDependency_shouldAccept() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("Builtin", "1.0"));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of("Builtin", "1.2"));
+        assertEquals(List.of(a), result.getLoadOrder());
+    }
+
+    @Test
+    public void resolve_withRequiredCycle_shouldRejectCycleAndDependents() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("B", null));
+        File b = candidate(new AppExtensionInfo.Builder("B").setVersion("1.0").addDependency("C", null));
+        File c = candidate(new AppExtensionInfo.Builder("C").setVersion("1.0").addDependency("B", null));
+        File d = candidate(new AppExtensionInfo.Builder("D").setVersion("1.0"));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+        assertEquals(List.of(d), result.getLoadOrder());
+        assertTrue(result.getRejected().get(b).contains("cycle"));
+        assertTrue(result.getRejected().get(c).contains("cycle"));
+        assertTrue(result.getRejected().containsKey(a));
+    }
+
+    @Test
+    public void resolve_withOptionalCycle_shouldLoadBoth() {
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addOptionalDependency("B", null));
+        File b = candidate(new AppExtensionInfo.Builder("B").setVersion("1.0").addOptionalDependency("A", null));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+        assertEquals(List.of(a, b), result.getLoadOrder());
+    }
+
+    @Test
+    public void resolve_withCycleBrokenByAnotherProvider_shouldLoadEverything() {
+        // GIVEN A and B requiring each other, but with another candidate that also satisfies A's requirement:
+        File a = candidate(new AppExtensionInfo.Builder("A").setVersion("1.0").addDependency("B", null));
+        File b = candidate(new AppExtensionInfo.Builder("B").setVersion("1.0").addDependency("A", null));
+        File otherB = candidate(new AppExtensionInfo.Builder("B").setVersion("2.0"));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+
+        // THEN nothing should be rejected, and each should come after something that satisfies it:
+        assertTrue(result.getRejected().isEmpty());
+        assertEquals(List.of(otherB, a, b), result.getLoadOrder());
+    }
+
+    @Test
+    public void resolve_withMultiExtensionJar_shouldMatchOnlyTheJarLevelName() {
+        // GIVEN a jar that provides two extensions under its extInfo name "Pair", and two dependents:
+        File pair = candidate(new AppExtensionInfo.Builder("Pair").setVersion("1.0")
+                                      .setExtensionClass("com.example.First").addExtensionClass("com.example.Second"));
+        File onPair = candidate(new AppExtensionInfo.Builder("OnPair").setVersion("1.0").addDependency("Pair", "1.0"));
+        File onSecond = candidate(new AppExtensionInfo.Builder("OnSecond").setVersion("1.0").addDependency("Second", null));
+        DependencyResolver.Result result = DependencyResolver.resolve(candidates, Map.of());
+
+        // THEN only the dependency on the jar's extInfo name can be resolved up front:
+        assertEquals(List.of(pair, onPair), result.getLoadOrder());
+        assertTrue(result.getRejected().get(onSecond).contains("not available"));
+
+        // THEN once the jar is loaded, its individual extensions can satisfy dependencies:
+        candidates.clear();
+        candidates.put(onSecond, new AppExtensionInfo.Builder("OnSecond").setVersion("1.0").addDependency("Second", null).build());
+        result = DependencyResolver.resolve(candidates, Map.of("First", "1.0", "Second", "1.0"));
+        assertEquals(List.of(onSecond), result.getLoadOrder());
+    }
+
+    @Test
+    public void compareVersions_shouldCompareNumerically() {
+        assertTrue(ExtensionDependency.compareVersions("1.10", "1.9") > 0);
+        assertEquals(0, ExtensionDependency.compareVersions("2.0", "2"));
+        assertTrue(ExtensionDependency.compareVersions("1.0", "1.0.1") < 0);
+    }
+
+    private File candidate(AppExtensionInfo.Builder builder) {
+        File jar = new File("/extensions/" + candidates.size() + ".jar");
+        candidates.put(jar, builder.build());
+        return jar;
+    }
+}
@@ -4,13 +4,41 @@ import ca.corbett.extras.properties.AbstractProperty;
 import ca.corbett.extras.properties.IntegerProperty;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ExtensionManagerTest {
@@ -116,6 +144,1020 @@ public class ExtensionManagerTest {
         assertEquals(0, extManager.getAllLoadedExtensions().size());
     }
 
+    @Test
+    public void testEnabledExtensionsSnapshot() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        List<AppExtension> enabled = extManager.getEnabledLoadedExtensions();
+        assertSame(enabled, extManager.getEnabledLoadedExtensions());
+        assertEquals(List.of(ext1, ext2), enabled); // sorted by name: "Test", "Test2"
+
+        extManager.setExtensionEnabled(ext1.getClass().getName(), false, false);
+        List<AppExtension> afterDisable = extManager.getEnabledLoadedExtensions();
+        assertNotSame(enabled, afterDisable);
+        assertEquals(List.of(ext2), afterDisable);
+        assertEquals(2, enabled.size()); // old snapshot is unaffected
+        assertThrows(UnsupportedOperationException.class, () -> afterDisable.add(ext1));
+    }
+
+    @Test
+    public void testGetEnabledExtensionsByType() {
+        AppExtensionImpl3 ext3 = new AppExtensionImpl3("test3");
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext3, true);
+
+        assertEquals(List.of(ext3), extManager.getEnabledExtensions(ExtraCapability.class));
+        assertEquals(List.of(ext3), extManager.getEnabledExtensions(AppExtensionImpl3.class));
+        assertEquals(2, extManager.getEnabledExtensions(AppExtensionImpl1.class).size());
+        assertEquals(2, extManager.getEnabledExtensions(AppExtension.class).size());
+        assertEquals(extManager.getEnabledLoadedExtensions(), extManager.getEnabledExtensions(Object.class));
+        assertTrue(extManager.getEnabledExtensions(Runnable.class).isEmpty());
+        assertSame(extManager.getEnabledExtensions(ExtraCapability.class), extManager.getEnabledExtensions(ExtraCapability.class));
+
+        extManager.setExtensionEnabled(ext3.getClass().getName(), false, false);
+        assertTrue(extManager.getEnabledExtensions(ExtraCapability.class).isEmpty()); // disabled ones drop out
+    }
+
+    @Test
+    public void testConcurrentRegistryAccess() throws Exception {
+        extManager.addExtension(ext1, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean done = new AtomicBoolean(false);
+        try {
+            // Readers hammer the query methods while we mutate the registry:
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (!done.get()) {
+                        for (AppExtension extension : extManager.getEnabledLoadedExtensions()) {
+                            assertNotNull(extension);
+                        }
+                        extManager.isExtensionEnabled(ext2.getClass().getName());
+                        extManager.getAllLoadedExtensions();
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            for (int i = 0; i < 2000; i++) {
+                extManager.addExtension(ext2, false);
+                extManager.setExtensionEnabled(ext2.getClass().getName(), true);
+                extManager.setExtensionEnabled(ext2.getClass().getName(), false);
+                extManager.unloadExtension(ext2.getClass().getName());
+            }
+            done.set(true);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(10, TimeUnit.SECONDS) > 0);
+            }
+            assertEquals(1, extManager.getLoadedExtensionCount());
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDispatchSerial() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        DispatchResult<AppExtension, String> result = extManager.dispatch("getName",
+                ext -> ext.getInfo().getName(), DispatchMode.SERIAL, 0);
+        assertEquals(List.of("Test", "Test2"), result.getResults());
+        assertFalse(result.hasFailures());
+    }
+
+    @Test
+    public void testDispatchWithFailingExtension() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        DispatchResult<AppExtension, String> result = extManager.dispatch("explode", ext -> {
+            if (ext == ext1) {
+                throw new IllegalStateException("boom");
+            }
+            return "ok";
+        }, DispatchMode.PARALLEL, 5000);
+        assertEquals(List.of("ok"), result.getResults());
+        assertEquals(1, result.getFailures().size());
+        assertSame(ext1, result.getFailures().get(0).getExtension());
+        assertEquals(DispatchResult.Status.FAILED, result.getFailures().get(0).getStatus());
+        assertTrue(result.getFailures().get(0).getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testDispatchParallelTimeout() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        AtomicBoolean wasInterrupted = new AtomicBoolean(false);
+        long start = System.nanoTime();
+        DispatchResult<AppExtension, String> result = extManager.dispatch("slow", ext -> {
+            if (ext == ext1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException ie) {
+                    wasInterrupted.set(true);
+                }
+            }
+            return "done";
+        }, DispatchMode.PARALLEL, 200);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The slow one should be abandoned, without holding up the fast one:
+        assertTrue(elapsedMillis < 5000, "Dispatch took " + elapsedMillis + "ms");
+        assertEquals(DispatchResult.Status.TIMED_OUT, result.getOutcomes().get(0).getStatus());
+        assertEquals(DispatchResult.Status.SUCCEEDED, result.getOutcomes().get(1).getStatus());
+        assertEquals(List.of("done"), result.getResults());
+    }
+
+    @Test
+    public void testDispatchFirstResult() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        List<AppExtension> invoked = new ArrayList<>();
+        DispatchResult<AppExtension, String> result = extManager.dispatch("first", ext -> {
+            invoked.add(ext);
+            return "found";
+        }, DispatchMode.FIRST_RESULT, 0);
+        assertEquals("found", result.getFirstResult());
+        assertEquals(List.of(ext1), invoked);
+    }
+
+    @Test
+    public void testDispatchByType() {
+        extManager.addExtension(ext2, true);
+        extManager.addExtension(new AppExtensionImpl3("test3"), true);
+        DispatchResult<ExtraCapability, String> result = extManager.dispatch("extra", ExtraCapability.class,
+                ExtraCapability::doSomethingExtra, DispatchMode.SERIAL, 1000);
+        assertEquals(List.of("test3"), result.getResults());
+    }
+
+    @Test
+    public void testGetMetrics() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        extManager.activateAll();
+        for (int i = 0; i < 5; i++) {
+            extManager.dispatch("hook", ext -> {
+                if (ext == ext2) {
+                    throw new IllegalStateException("boom");
+                }
+                return "ok";
+            }, DispatchMode.SERIAL, 0);
+        }
+        extManager.deactivateAll();
+
+        ExtensionMetrics metrics1 = extManager.getMetrics(ext1.getClass().getName());
+        assertEquals(1, metrics1.getOperation(ExtensionMetrics.ON_ACTIVATE).getInvocationCount());
+        assertEquals(1, metrics1.getOperation(ExtensionMetrics.ON_DEACTIVATE).getInvocationCount());
+        assertEquals(5, metrics1.getOperation("hook").getInvocationCount());
+        assertEquals(0, metrics1.getOperation("hook").getErrorCount());
+        assertEquals(5, metrics1.getOperation("hook").getLatency().getCount());
+
+        ExtensionMetrics metrics2 = extManager.getMetrics(ext2.getClass().getName());
+        assertEquals(5, metrics2.getOperation("hook").getErrorCount());
+        assertEquals(2, extManager.getAllMetrics().size());
+
+        extManager.resetMetrics();
+        assertNull(extManager.getMetrics(ext1.getClass().getName()));
+    }
+
+    @Test
+    public void testMetricsDisabled() {
+        extManager.setMetricsEnabled(false);
+        extManager.addExtension(ext1, true);
+        extManager.activateAll();
+        extManager.broadcast("hook", ext -> { }, DispatchMode.PARALLEL, 0);
+        assertTrue(extManager.getAllMetrics().isEmpty());
+    }
+
+    @Test
+    public void testCircuitBreaker() {
+        extManager.addExtension(ext1, true);
+        extManager.addExtension(ext2, true);
+        extManager.setCircuitBreakerPolicy(new CircuitBreakerPolicy.Builder()
+                .setWindowSize(4).setMinimumCalls(4).setOpenMillis(0).setHalfOpenProbeCount(2).build());
+        List<CircuitBreaker.State> events = recordCircuitBreakerEvents(extManager);
+        AtomicBoolean isBroken = new AtomicBoolean(true);
+        Function<AppExtension, String> hook = ext -> {
+            if (ext == ext2 && isBroken.get()) {
+                throw new IllegalStateException("boom");
+            }
+            return "ok";
+        };
+
+        // Enough failures should trip the breaker, and leave the other extension alone:
+        for (int i = 0; i < 4; i++) {
+            extManager.dispatch("hook", hook, DispatchMode.SERIAL, 0);
+        }
+        assertFalse(extManager.isExtensionEnabled(ext2.getClass().getName()));
+        assertTrue(extManager.isExtensionEnabled(ext1.getClass().getName()));
+        assertEquals(CircuitBreaker.State.OPEN, extManager.getCircuitBreakerState(ext2.getClass().getName()));
+
+        // Once it gets better and the open period has passed, it should be let back in for good:
+        isBroken.set(false);
+        extManager.dispatch("hook", hook, DispatchMode.SERIAL, 0);
+        assertTrue(extManager.isExtensionEnabled(ext2.getClass().getName()));
+        extManager.dispatch("hook", hook, DispatchMode.SERIAL, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, extManager.getCircuitBreakerState(ext2.getClass().getName()));
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), events);
+    }
+
+    @Test
+    public void testCircuitBreakerWithThrowingOnDeactivate() {
+        AppExtension broken = new AppExtensionImpl1("broken") {
+            @Override
+            public void onDeactivate() {
+                throw new IllegalStateException("boom again");
+            }
+        };
+        String className = broken.getClass().getName();
+        extManager.addExtension(broken, true);
+        extManager.addExtension(ext1, true);
+        extManager.setCircuitBreakerPolicy(new CircuitBreakerPolicy.Builder()
+                .setWindowSize(2).setMinimumCalls(2).setOpenMillis(60_000).build());
+        List<CircuitBreaker.State> events = recordCircuitBreakerEvents(extManager);
+        Consumer<AppExtension> hook = ext -> {
+            if (ext == broken) {
+                throw new IllegalStateException("boom");
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            extManager.broadcast("hook", hook, DispatchMode.PARALLEL, 0); // shouldn't throw
+        }
+
+        assertFalse(extManager.isExtensionEnabled(className));
+        assertTrue(extManager.isExtensionEnabled(ext1.getClass().getName()));
+        assertEquals(CircuitBreaker.State.OPEN, extManager.getCircuitBreakerState(className));
+        assertEquals(List.of(CircuitBreaker.State.OPEN), events);
+    }
+
+    @Test
+    public void testComputeActivationWaves() {
+        // C after B, B after A, and D on its own:
+        OrderedExtension a = new OrderedExtension("A");
+        OrderedExtension b = new OrderedExtension("B", "A");
+        OrderedExtension c = new OrderedExtension("C", "B", "NotLoaded");
+        OrderedExtension d = new OrderedExtension("D");
+        List<List<OrderedExtension>> waves = new OrderedExtensionManager().computeActivationWaves(List.of(a, b, c, d));
+        assertEquals(List.of(List.of(a, d), List.of(b), List.of(c)), waves);
+    }
+
+    @Test
+    public void testComputeActivationWavesWithCycle() {
+        OrderedExtension a = new OrderedExtension("A");
+        OrderedExtension b = new OrderedExtension("B", "C");
+        OrderedExtension c = new OrderedExtension("C", "B");
+        List<List<OrderedExtension>> waves = new OrderedExtensionManager().computeActivationWaves(List.of(a, b, c));
+        assertEquals(List.of(List.of(a), List.of(b, c)), waves); // the cycle goes last
+    }
+
+    @Test
+    public void testActivateAllInParallelWithSlowAndFailingExtensions() {
+        OrderedExtensionManager manager = new OrderedExtensionManager();
+        OrderedExtension slow = new SlowExtension("Slow", 10_000);
+        OrderedExtension failing = new FailingExtension("Failing");
+        OrderedExtension waiter = new OrderedExtension("Waiter", "Slow");
+        manager.addExtension(slow, true);
+        manager.addExtension(failing, true);
+        manager.addExtension(waiter, true);
+
+        ActivationReport report = manager.activateAllInParallel(300);
+
+        // The slow one should time out, and the one waiting for it should never get its turn:
+        assertTrue(report.getElapsedMillis() < 5000);
+        assertEquals(2, report.getWaves().size());
+        assertEquals(ActivationReport.Status.TIMED_OUT, report.getStatus(SlowExtension.class.getName()));
+        assertEquals(ActivationReport.Status.FAILED, report.getStatus(FailingExtension.class.getName()));
+        assertTrue(report.getError(FailingExtension.class.getName()) instanceof IllegalStateException);
+        assertEquals(ActivationReport.Status.SKIPPED, report.getStatus(OrderedExtension.class.getName()));
+        assertFalse(report.isComplete());
+    }
+
+    @Test
+    public void testActivateAllInParallelRunsConcurrently() {
+        OrderedExtensionManager manager = new OrderedExtensionManager();
+        manager.addExtension(new SlowExtension("Slow", 500), true);
+        manager.addExtension(new SlowExtension2("Slow2", 500), true);
+        ActivationReport report = manager.activateAllInParallel(0);
+        assertTrue(report.isComplete());
+        assertEquals(1, report.getWaves().size());
+        assertTrue(report.getElapsedMillis() < 950, "Took " + report.getElapsedMillis() + "ms");
+    }
+
+    @Test
+    public void testExtractExtInfoWithShadedExtInfo(@TempDir File dir) throws Exception {
+        // Each of these jars also bundles a library's extInfo.json, ahead of its own:
+        String shaded = "com/example/shaded/extInfo.json";
+        File canonical = new TestJarBuilder()
+                .addEntry(shaded, TestJarBuilder.extInfo("Shaded", "9.0").toJson())
+                .addEntry(ExtensionManager.EXT_INFO_LOCATION, TestJarBuilder.extInfo("Canonical", "1.0").toJson())
+                .build(new File(dir, "canonical.jar"));
+        File declared = new TestJarBuilder()
+                .addManifestAttribute(ExtensionManager.MANIFEST_EXTENSION_INFO, "com/example/mine/extInfo.json")
+                .addEntry(shaded, TestJarBuilder.extInfo("Shaded", "9.0").toJson())
+                .addEntry("com/example/mine/extInfo.json", TestJarBuilder.extInfo("Declared", "1.0").toJson())
+                .build(new File(dir, "declared.jar"));
+        File legacy = new TestJarBuilder()
+                .addExtInfo(TestJarBuilder.extInfo("Legacy", "1.0"))
+                .build(new File(dir, "legacy.jar"));
+
+        assertEquals("Canonical", extManager.extractExtInfo(canonical).getName());
+        assertEquals("Declared", extManager.extractExtInfo(declared).getName());
+        assertEquals("Legacy", extManager.extractExtInfo(legacy).getName()); // found by the fallback scan
+    }
+
+    @Test
+    public void testLoadExtensionsWithDependencies(@TempDir File dir) throws Exception {
+        // The dependent's jar sorts first, and the orphan's dependency can't be satisfied:
+        buildExtensionJar(new File(dir, "a.jar"),
+                TestJarBuilder.extInfoBuilder("Dependent", "1.0").addDependency("Base", "1.0").build());
+        buildExtensionJar(new File(dir, "b.jar"), "Base");
+        buildExtensionJar(new File(dir, "c.jar"),
+                TestJarBuilder.extInfoBuilder("Orphan", "1.0").addDependency("Base", "2.0").build());
+        List<String> opened = new ArrayList<>();
+        ExtensionManagerImpl manager = new ExtensionManagerImpl() {
+            @Override
+            protected List<ExtensionWrapper> loadExtensionWrappers(File jarFile, Class<AppExtension> extensionClass,
+                                                                   List<String> declaredClassNames) {
+                opened.add(jarFile.getName());
+                return super.loadExtensionWrappers(jarFile, extensionClass, declaredClassNames);
+            }
+        };
+
+        assertEquals(2, manager.loadExtensions(dir, AppExtension.class, "Test app", "1.0"));
+        assertEquals(List.of("b.jar", "a.jar"), opened); // the orphan is never opened
+        assertTrue(manager.isExtensionLoaded("com.example.Dependent"));
+        assertFalse(manager.isExtensionLoaded("com.example.Orphan"));
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testLoadExtensionsWithDependencyOnMultiExtensionJar(@TempDir File dir) throws Exception {
+        File pairs = new File(dir, "pairs");
+        File later = new File(dir, "later");
+        assertTrue(pairs.mkdir());
+        assertTrue(later.mkdir());
+        buildPairJar(new File(pairs, "a_pair.jar"));
+        buildExtensionJar(new File(pairs, "b_onpair.jar"),
+                TestJarBuilder.extInfoBuilder("OnPair", "1.0").addDependency("Pair", "1.0").build());
+        buildExtensionJar(new File(later, "onfirst.jar"),
+                TestJarBuilder.extInfoBuilder("OnFirst", "1.0").addDependency("First", "1.0").build());
+
+        // The jar's extInfo name should satisfy a dependency, and so should the name of each extension in it:
+        assertEquals(3, extManager.loadExtensions(pairs, AppExtension.class, "Test app", "1.0"));
+        assertTrue(extManager.isExtensionLoaded("com.example.OnPair"));
+        assertEquals(1, extManager.loadExtensions(later, AppExtension.class, "Test app", "1.0"));
+        assertTrue(extManager.isExtensionLoaded("com.example.OnFirst"));
+        extManager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testLoadMultiExtensionJar(@TempDir File dir) throws Exception {
+        File jarFile = buildPairJar(new File(dir, "pair.jar"));
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+
+        LoadReport report = manager.loadExtensionsAsync(dir, AppExtension.class, "Test app", "1.0", null).get();
+
+        assertEquals(2, report.getLoadedCount());
+        assertEquals(List.of("com.example.First", "com.example.Second"), report.getLoaded().get(jarFile));
+        assertEquals(List.of("com.example.First", "com.example.Second"), manager.findExtensionsLoadedFrom(jarFile));
+        AppExtension first = manager.getLoadedExtension("com.example.First");
+        AppExtension second = manager.getLoadedExtension("com.example.Second");
+        assertEquals("First", first.getInfo().getName());
+        assertEquals("Second", second.getInfo().getName());
+        URLClassLoader classLoader = (URLClassLoader)first.getClass().getClassLoader();
+        assertSame(classLoader, second.getClass().getClassLoader());
+
+        // They should be enabled and disabled individually:
+        manager.setExtensionEnabled("com.example.First", false);
+        assertFalse(manager.isExtensionEnabled("com.example.First"));
+        assertTrue(manager.isExtensionEnabled("com.example.Second"));
+
+        // And their class loader should stay open until the last of them is unloaded:
+        manager.unloadExtension("com.example.First");
+        assertNotNull(classLoader.findResource("ca/corbett/test/extInfo.json"));
+        manager.unloadExtension("com.example.Second");
+        assertNull(classLoader.findResource("ca/corbett/test/extInfo.json"));
+    }
+
+    @Test
+    public void testLoadExtensionsAsync(@TempDir File dir) throws Exception {
+        // A good jar, a jar for some other app, a jar with no extInfo, and a jar with nothing to load:
+        buildExtensionJar(new File(dir, "a.jar"), "Good");
+        buildOtherAppJar(new File(dir, "b.jar"));
+        buildNonExtensionJar(new File(dir, "c.jar"));
+        new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("Empty", "1.0")).build(new File(dir, "d.jar"));
+        List<LoadProgress> updates = new CopyOnWriteArrayList<>();
+        List<Integer> visibleWhenLoaded = new ArrayList<>();
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+
+        LoadReport report = manager.loadExtensionsAsync(dir, AppExtension.class, "Test app", "1.0", progress -> {
+            updates.add(progress);
+            if (progress.getLoadedCount() == 1 && visibleWhenLoaded.isEmpty()) {
+                visibleWhenLoaded.add(manager.getLoadedExtensionCount());
+            }
+        }).get(30, TimeUnit.SECONDS);
+
+        assertEquals(4, report.getJarCount());
+        assertEquals(List.of("com.example.Good"), report.getLoadedClassNames());
+        assertEquals(2, report.getRejected().size());
+        assertEquals(1, report.getFailed().size());
+        assertTrue(report.getFailed().containsKey(new File(dir, "d.jar")));
+        assertFalse(report.isCancelled());
+        assertEquals(List.of(1), visibleWhenLoaded); // visible as soon as it was loaded
+        LoadProgress last = updates.get(updates.size() - 1);
+        assertEquals(4, last.getScannedCount());
+        assertEquals(4, last.getCompletedCount());
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testLoadExtensionsAsyncCancel(@TempDir File dir) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            buildExtensionJar(new File(dir, "ext" + i + ".jar"), "Ext" + i);
+        }
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        AtomicReference<CompletableFuture<LoadReport>> future = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Hold up the loader thread until we've had a chance to cancel after the first load:
+            future.set(manager.loadExtensionsAsync(dir, AppExtension.class, "Test app", "1.0", executor, progress -> {
+                if (progress.getLoadedCount() == 1) {
+                    try {
+                        started.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                    future.get().cancel(false);
+                }
+            }));
+            started.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertTrue(future.get().isCancelled());
+            assertEquals(1, manager.getLoadedExtensionCount());
+        } finally {
+            executor.shutdownNow();
+            manager.unloadAllExtensions();
+        }
+    }
+
+    @Test
+    public void testStreamCandidateExtensionJars(@TempDir File dir) throws Exception {
+        File subDir = new File(dir, "nested");
+        assertTrue(subDir.mkdir());
+        for (int i = 0; i < 4; i++) {
+            buildExtensionJar(new File(i % 2 == 0 ? dir : subDir, "ext" + i + ".JAR"), "Ext" + i);
+        }
+        buildNonExtensionJar(new File(dir, "notAnExtension.jar"));
+        buildOtherAppJar(new File(subDir, "other.jar"));
+
+        // Load the candidates as they are streamed:
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        List<File> streamed = new ArrayList<>();
+        try (Stream<ExtensionCandidate> candidates = manager.streamCandidateExtensionJars(dir, "Test app", "1.0")) {
+            candidates.forEach(candidate -> {
+                streamed.add(candidate.getJarFile());
+                assertTrue(manager.loadExtension(candidate, AppExtension.class));
+            });
+        }
+
+        Map<File, AppExtensionInfo> eager = manager.findCandidateExtensionJars(dir, "Test app", "1.0");
+        assertEquals(eager.keySet(), new HashSet<>(streamed));
+        assertEquals(4, manager.getLoadedExtensionCount());
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testWatchDirectory(@TempDir File tempDir) throws Exception {
+        File dir = new File(tempDir, "extensions");
+        File staging = new File(tempDir, "staging");
+        assertTrue(dir.mkdir());
+        assertTrue(staging.mkdir());
+        List<String> events = new CopyOnWriteArrayList<>();
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        manager.addExtensionManagerListener(new ExtensionManagerListener() {
+            @Override
+            public void extensionLoaded(ExtensionManager<?> source, String className) {
+                events.add("loaded " + className);
+            }
+
+            @Override
+            public void extensionUnloaded(ExtensionManager<?> source, String className) {
+                events.add("unloaded " + className);
+            }
+
+            @Override
+            public void extensionReplaced(ExtensionManager<?> source, String className) {
+                events.add("replaced " + className);
+            }
+        });
+        ExtensionDirectoryWatcher<AppExtension> watcher = manager.watchDirectory(dir, AppExtension.class, "Test app", "1.0");
+        assertNotNull(watcher);
+        watcher.setDebounceMillis(200);
+        File jar = new File(dir, "ext.jar");
+        try {
+            // Dropping a jar in should load it:
+            moveIntoPlace(buildWatchedJar(staging, "1.0"), jar);
+            waitFor(() -> manager.isExtensionLoaded("com.example.Watched"));
+            assertEquals("1.0", manager.getLoadedExtension("com.example.Watched").getInfo().getVersion());
+
+            // Replacing it should swap the new version in:
+            moveIntoPlace(buildWatchedJar(staging, "2.0"), jar);
+            waitFor(() -> events.size() == 2);
+            assertEquals("2.0", manager.getLoadedExtension("com.example.Watched").getInfo().getVersion());
+            assertTrue(manager.isExtensionEnabled("com.example.Watched"));
+
+            // Deleting it should unload it:
+            assertTrue(jar.delete());
+            waitFor(() -> events.size() == 3);
+            assertFalse(manager.isExtensionLoaded("com.example.Watched"));
+            assertEquals(List.of("loaded com.example.Watched", "replaced com.example.Watched",
+                                 "unloaded com.example.Watched"), events);
+        } finally {
+            watcher.close();
+            manager.unloadAllExtensions();
+        }
+        assertFalse(watcher.isRunning());
+    }
+
+    @Test
+    public void testWatchDirectoryWithUnloadedJarAndRemovedSubdirectory(@TempDir File tempDir) throws Exception {
+        // This jar was dropped in before the watcher started, but never loaded:
+        File dir = new File(tempDir, "extensions");
+        File subdir = new File(dir, "sub");
+        File elsewhere = new File(tempDir, "elsewhere");
+        assertTrue(subdir.mkdirs());
+        assertTrue(elsewhere.mkdir());
+        moveIntoPlace(buildWatchedJar(tempDir, "1.0"), new File(subdir, "ext.jar"));
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        ExtensionDirectoryWatcher<AppExtension> watcher = manager.watchDirectory(dir, AppExtension.class, "Test app", "1.0");
+        assertNotNull(watcher);
+        watcher.setDebounceMillis(200);
+        try {
+            waitFor(() -> manager.isExtensionLoaded("com.example.Watched"));
+
+            // Moving the whole subdirectory away should unload its extension:
+            Files.move(subdir.toPath(), new File(elsewhere, "sub").toPath());
+            waitFor(() -> !manager.isExtensionLoaded("com.example.Watched"));
+        } finally {
+            watcher.close();
+            manager.unloadAllExtensions();
+        }
+    }
+
+    @Test
+    public void testWatchDirectoryWithDisabledExtension(@TempDir File tempDir) throws Exception {
+        File dir = new File(tempDir, "extensions");
+        assertTrue(dir.mkdir());
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        manager.addExtensionManagerListener(new ExtensionManagerListener() {
+            @Override
+            public void extensionLoaded(ExtensionManager<?> source, String className) {
+                if (className.equals("com.example.Watched")) {
+                    source.setExtensionEnabled(className, false, false); // as if the user had disabled it
+                }
+            }
+        });
+        ExtensionDirectoryWatcher<AppExtension> watcher = manager.watchDirectory(dir, AppExtension.class, "Test app", "1.0");
+        assertNotNull(watcher);
+        watcher.setDebounceMillis(200);
+        try {
+            moveIntoPlace(buildWatchedJar(tempDir, "1.0"), new File(dir, "ext.jar"));
+            waitFor(() -> manager.isExtensionLoaded("com.example.Watched"));
+
+            // Changes are handled in order, so once this one is activated, the first one has been dealt with:
+            moveIntoPlace(buildExtensionJar(new File(tempDir, "other.jar"), "Other"), new File(dir, "other.jar"));
+            waitFor(() -> getActivationCount(manager, "com.example.Other") == 1);
+            assertFalse(manager.isExtensionEnabled("com.example.Watched"));
+            assertEquals(0, getActivationCount(manager, "com.example.Watched"));
+        } finally {
+            watcher.close();
+            manager.unloadAllExtensions();
+        }
+    }
+
+    @Test
+    public void testReplaceExtension(@TempDir File dir) throws Exception {
+        File v1 = buildWatchedJar(dir, "1.0");
+        File v2 = buildWatchedJar(dir, "2.0");
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        assertTrue(manager.loadExtension(new ExtensionCandidate(v1, TestJarBuilder.extInfo("Watched", "1.0")), AppExtension.class));
+        AppExtension oldVersion = manager.getLoadedExtension("com.example.Watched");
+        ClassLoader oldLoader = oldVersion.getClass().getClassLoader();
+
+        // Readers hammer on it from another thread while we replace it:
+        AtomicBoolean sawGap = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (manager.getLoadedExtension("com.example.Watched") == null
+                        || manager.getEnabledLoadedExtensions().isEmpty()) {
+                    sawGap.set(true);
+                }
+            }
+        });
+        reader.start();
+        boolean replaced;
+        try {
+            replaced = manager.replaceExtension("com.example.Watched", v2, AppExtension.class);
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        assertTrue(replaced);
+        assertFalse(sawGap.get());
+        AppExtension newVersion = manager.getLoadedExtension("com.example.Watched");
+        assertEquals("2.0", newVersion.getInfo().getVersion());
+        assertNotSame(oldLoader, newVersion.getClass().getClassLoader());
+        assertEquals(v2, manager.getSourceJar("com.example.Watched"));
+        assertEquals(1, manager.getLoadedExtensionCount());
+        assertEquals(1, manager.getMetrics("com.example.Watched").getOperation(ExtensionMetrics.ON_ACTIVATE).getInvocationCount());
+        assertEquals(1, manager.getMetrics("com.example.Watched").getOperation(ExtensionMetrics.ON_DEACTIVATE).getInvocationCount());
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testReplaceExtensionWithFailingActivation(@TempDir File dir) throws Exception {
+        File v1 = buildWatchedJar(dir, "1.0");
+        File broken = new TestJarBuilder()
+                .addSource("com.example.Watched", TestJarBuilder.extensionSource("com.example.Watched", "Watched", "2.0")
+                        .replace("public void onActivate() { }", "public void onActivate() { throw new IllegalStateException(); }"))
+                .build(new File(dir, "broken.jar"));
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        assertTrue(manager.loadExtension(new ExtensionCandidate(v1, TestJarBuilder.extInfo("Watched", "1.0")), AppExtension.class));
+        AppExtension oldVersion = manager.getLoadedExtension("com.example.Watched");
+
+        assertFalse(manager.replaceExtension("com.example.Watched", broken, AppExtension.class));
+        assertFalse(manager.replaceExtension("com.example.Missing", v1, AppExtension.class));
+        assertSame(oldVersion, manager.getLoadedExtension("com.example.Watched")); // still in service
+        assertEquals(v1, manager.getSourceJar("com.example.Watched"));
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testSharedLibraryDirectory(@TempDir File dir) throws Exception {
+        // A shared library, and two extensions that each bundle their own copy of it:
+        File libs = new File(dir, "libs");
+        File extensions = new File(dir, "extensions");
+        assertTrue(libs.mkdir());
+        assertTrue(extensions.mkdir());
+        String librarySource = "package com.example.lib;\npublic class Shared { }\n";
+        new TestJarBuilder().addSource("com.example.lib.Shared", librarySource).build(new File(libs, "shared.jar"));
+        for (int i = 0; i < 2; i++) {
+            extensionJar("Ext" + i)
+                    .addSource("com.example.lib.Shared", librarySource)
+                    .build(new File(extensions, "ext" + i + ".jar"));
+        }
+
+        // With the default parent-first policy, both should get the one shared copy:
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        assertTrue(manager.setSharedLibraryDirectory(libs));
+        assertEquals(2, manager.loadExtensions(extensions, AppExtension.class, "Test app", "1.0"));
+        Class<?> shared0 = manager.getLoadedExtension("com.example.Ext0").getClass().getClassLoader().loadClass("com.example.lib.Shared");
+        Class<?> shared1 = manager.getLoadedExtension("com.example.Ext1").getClass().getClassLoader().loadClass("com.example.lib.Shared");
+        assertSame(shared0, shared1);
+        assertEquals("extension-shared-libraries", shared0.getClassLoader().getName());
+        assertFalse(manager.setSharedLibraryDirectory(null)); // can't change it while loaded
+        manager.unloadAllExtensions();
+
+        // With that package marked child-first, each should get its own bundled copy:
+        manager.setClassLoadingPolicy(new ClassLoadingPolicy.Builder().addChildFirstPackage("com.example.lib").build());
+        assertEquals(2, manager.loadExtensions(extensions, AppExtension.class, "Test app", "1.0"));
+        ClassLoader loader0 = manager.getLoadedExtension("com.example.Ext0").getClass().getClassLoader();
+        ClassLoader loader1 = manager.getLoadedExtension("com.example.Ext1").getClass().getClassLoader();
+        assertSame(loader0, loader0.loadClass("com.example.lib.Shared").getClassLoader());
+        assertSame(loader1, loader1.loadClass("com.example.lib.Shared").getClassLoader());
+        assertSame(AppExtension.class, loader0.loadClass(AppExtension.class.getName()));
+        manager.unloadAllExtensions();
+        assertTrue(manager.setSharedLibraryDirectory(null));
+    }
+
+    @Test
+    public void testChildFirstWithBundledApiClasses(@TempDir File dir) throws Exception {
+        // An extension jar that bundles its own copies of the API classes it was compiled against:
+        extensionJar("Bundler")
+                .addClassFileCopy(AppExtension.class)
+                .addClassFileCopy(AppExtensionInfo.class)
+                .addClassFileCopy(AbstractProperty.class)
+                .build(new File(dir, "bundler.jar"));
+
+        // Even with everything child-first, the application's copies must win:
+        ExtensionManagerImpl manager = new ExtensionManagerImpl();
+        manager.setClassLoadingPolicy(new ClassLoadingPolicy.Builder().setChildFirstByDefault(true).build());
+        assertEquals(1, manager.loadExtensions(dir, AppExtension.class, "Test app", "1.0"));
+        AppExtension extension = manager.getLoadedExtension("com.example.Bundler");
+        assertNotNull(extension);
+        assertNotNull(extension.getInfo());
+        assertNull(extension.getConfigProperties());
+        ClassLoader loader = extension.getClass().getClassLoader();
+        assertSame(AppExtension.class, loader.loadClass(AppExtension.class.getName()));
+        assertSame(AppExtensionInfo.class, loader.loadClass(AppExtensionInfo.class.getName()));
+        assertSame(AbstractProperty.class, loader.loadClass(AbstractProperty.class.getName()));
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testLazyLoading(@TempDir File dir) throws Exception {
+        // Two jars that declare their extension class, one that doesn't, and one whose declared class is missing:
+        for (String name : new String[]{"Lazy1", "Lazy2"}) {
+            buildExtensionJar(new File(dir, name + ".jar"),
+                    TestJarBuilder.extInfoBuilder(name, "1.0").setExtensionClass("com.example." + name).build());
+        }
+        buildExtensionJar(new File(dir, "Eager.jar"), "Eager");
+        new TestJarBuilder()
+                .addExtInfo(TestJarBuilder.extInfoBuilder("Broken", "1.0").setExtensionClass("com.example.Broken").build())
+                .build(new File(dir, "Broken.jar"));
+        List<String> loadersCreated = new CopyOnWriteArrayList<>();
+        ExtensionManagerImpl manager = new ExtensionManagerImpl() {
+            @Override
+            protected URLClassLoader createExtensionClassLoader(File jarFile) throws IOException {
+                loadersCreated.add(jarFile.getName());
+                return super.createExtensionClassLoader(jarFile);
+            }
+        };
+        manager.setLazyLoading(true);
+
+        // Only the undeclared one should be instantiated, but all should be registered:
+        assertEquals(4, manager.loadExtensions(dir, AppExtension.class, "Test app", "1.0"));
+        assertEquals(List.of("Eager.jar"), loadersCreated);
+        assertTrue(manager.isExtensionLoaded("com.example.Lazy1"));
+        assertFalse(manager.isExtensionInstantiated("com.example.Lazy1"));
+        assertTrue(manager.isExtensionInstantiated("com.example.Eager"));
+        assertEquals("Lazy2", manager.getLoadedExtensionInfo("com.example.Lazy2").getName());
+
+        // Asking for one should instantiate only that one:
+        AppExtension lazy1 = manager.getLoadedExtension("com.example.Lazy1");
+        assertNotNull(lazy1);
+        assertEquals("com.example.Lazy1", lazy1.getClass().getName());
+        assertEquals(List.of("Eager.jar", "Lazy1.jar"), loadersCreated);
+        assertFalse(manager.isExtensionInstantiated("com.example.Lazy2"));
+
+        // Broadcasting to the enabled ones should leave a disabled one deferred:
+        manager.setExtensionEnabled("com.example.Lazy2", false, false);
+        manager.broadcast("hook", ext -> { }, DispatchMode.SERIAL, 0);
+        assertEquals(2, manager.getEnabledExtensions(AppExtension.class).size());
+        assertFalse(manager.isExtensionInstantiated("com.example.Lazy2"));
+        assertFalse(loadersCreated.contains("Lazy2.jar"));
+        manager.setExtensionEnabled("com.example.Lazy2", true, false);
+        assertFalse(manager.isExtensionInstantiated("com.example.Lazy2"));
+
+        // Asking for the whole list should instantiate the rest, and drop the broken one:
+        assertEquals(3, manager.getEnabledLoadedExtensions().size());
+        assertTrue(manager.isExtensionInstantiated("com.example.Lazy2"));
+        assertFalse(manager.isExtensionLoaded("com.example.Broken"));
+        assertSame(lazy1, manager.getLoadedExtension("com.example.Lazy1"));
+        assertEquals(4, loadersCreated.size());
+        manager.unloadAllExtensions();
+    }
+
+    @Test
+    public void testJarFileMeetsRequirementsVersions() {
+        File jarFile = new File("test.jar");
+        Function<String, AppExtensionInfo> targeting = version -> new AppExtensionInfo.Builder("Versioned")
+                .setTargetAppName("Test app").setTargetAppVersion(version).build();
+
+        // Version segments should compare as numbers:
+        assertTrue(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("1.10"), "Test app", "1.9"));
+        assertTrue(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.1.3"), "Test app", "2.1"));
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("1.8.9"), "Test app", "1.9"));
+
+        // A targeted range should be accepted only if it overlaps:
+        assertTrue(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("^1.9"), "Test app", "1.9.5"));
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("^1.9"), "Test app", "2.0"));
+
+        // A range from the app should reject versions outside of it:
+        assertTrue(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.4"), "Test app", "[2.0,3.0)"));
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("3.1"), "Test app", "[2.0,3.0)"));
+
+        // Anything that isn't a valid version should be rejected:
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.x"), "Test app", "1.0"));
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.0"), "Test app", "not a version"));
+
+        // A null requirement should skip the version check:
+        assertTrue(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.x"), "Test app", null));
+        assertFalse(extManager.jarFileMeetsRequirements(jarFile, targeting.apply("2.0"), "Other app", null));
+    }
+
+    @Test
+    public void testFindCandidateExtensionJarsParallel(@TempDir File dir) throws Exception {
+        for (int i = 0; i < 12; i++) {
+            new TestJarBuilder()
+                    .addExtInfo(TestJarBuilder.extInfo("ext" + i, "1." + i))
+                    .build(new File(dir, "ext" + i + ".jar"));
+        }
+        buildNonExtensionJar(new File(dir, "notAnExtension.jar"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Map<File, AppExtensionInfo> serial = extManager.findCandidateExtensionJars(dir, "Test app", "1.0");
+            Map<File, AppExtensionInfo> parallel = extManager.findCandidateExtensionJars(dir, "Test app", "1.0", executor);
+            assertEquals(12, parallel.size());
+            assertEquals(serial, parallel);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadDeclaredExtensionClass(@TempDir File dir) throws Exception {
+        TestJarBuilder builder = twoExtensionJar();
+        File undeclared = builder.build(new File(dir, "undeclared.jar"));
+        File declared = builder.addManifestAttribute(ExtensionManager.MANIFEST_EXTENSION_CLASS, "com.example.zzz.MyExtension")
+                               .build(new File(dir, "declared.jar"));
+
+        // The scan should pick the first one, but the declared one should win when declared:
+        assertEquals("com.example.aaa.FirstExtension", extManager.loadExtensionFromJar(undeclared, AppExtension.class).getClass().getName());
+        assertEquals("com.example.zzz.MyExtension", extManager.loadExtensionFromJar(declared, AppExtension.class).getClass().getName());
+    }
+
+    @Test
+    public void testDeclaredExtensionClassPrecedence(@TempDir File dir) throws Exception {
+        File jarFile = twoExtensionJar()
+                .addExtInfo(TestJarBuilder.extInfoBuilder("ext", "1.0").setExtensionClass("com.example.aaa.FirstExtension").build())
+                .addManifestAttribute(ExtensionManager.MANIFEST_EXTENSION_CLASS, "com.example.zzz.MyExtension")
+                .build(new File(dir, "both.jar"));
+
+        // The extInfo declaration should win over the manifest:
+        try (JarFile jar = new JarFile(jarFile)) {
+            assertEquals(List.of("com.example.aaa.FirstExtension"), extManager.findDeclaredExtensionClasses(jar, AppExtension.class));
+        }
+        assertEquals("com.example.aaa.FirstExtension", extManager.loadExtensionFromJar(jarFile, AppExtension.class).getClass().getName());
+    }
+
+    @Test
+    public void testLoadExtensionFromJarWithBrokenClass(@TempDir File dir) throws Exception {
+        // Broken can't be loaded, because its superclass is missing:
+        File jar = new TestJarBuilder()
+                .addSource("com.example.Base", "package com.example; public class Base { }")
+                .addSource("com.example.aaa.Broken", "package com.example.aaa; public class Broken extends com.example.Base { }")
+                .addExtension("com.example.zzz.MyExtension", "ext", "1.0")
+                .excludeEntry("com/example/Base.class")
+                .build(new File(dir, "broken.jar"));
+
+        AppExtension loaded = extManager.loadExtensionFromJar(jar, AppExtension.class);
+        assertNotNull(loaded);
+        assertEquals("com.example.zzz.MyExtension", loaded.getClass().getName()); // Broken was never defined
+    }
+
+    @Test
+    public void testFindExtensionClassNames(@TempDir File dir) throws Exception {
+        File jar = new TestJarBuilder()
+                .addSource("com.example.AbstractExt", "package com.example; public abstract class AbstractExt implements ca.corbett.extensions.AppExtension { }")
+                .addSource("com.example.SubInterface", "package com.example; public interface SubInterface extends ca.corbett.extensions.AppExtension { }")
+                .addSource("com.example.Unrelated", "package com.example; public class Unrelated { }")
+                .addSource("com.example.ViaAbstract", "package com.example; public class ViaAbstract extends AbstractExt {"
+                        + " public ca.corbett.extensions.AppExtensionInfo getInfo() { return null; }"
+                        + " public java.util.List<ca.corbett.extras.properties.AbstractProperty> getConfigProperties() { return null; }"
+                        + " public void onActivate() { } public void onDeactivate() { } }")
+                .addSource("com.example.ViaInterface", "package com.example; public abstract class ViaInterface implements SubInterface { }")
+                .build(new File(dir, "hierarchy.jar"));
+        try (JarFile jarFile = new JarFile(jar);
+             URLClassLoader cl = new URLClassLoader(new URL[]{jar.toURI().toURL()})) {
+            List<String> names = extManager.findExtensionClassNames(jarFile, cl, AppExtension.class);
+            assertEquals(List.of("com.example.ViaAbstract"), names);
+        }
+    }
+
+    @Test
+    public void testLoadExtensionFromServicesFile(@TempDir File dir) throws Exception {
+        File jar = new TestJarBuilder()
+                .addExtension("com.example.MyExtension", "ext", "1.0")
+                .addEntry(ExtensionManager.SERVICES_PREFIX + AppExtension.class.getName(), "# comment\ncom.example.MyExtension\n")
+                .build(new File(dir, "services.jar"));
+        AppExtension loaded = extManager.loadExtensionFromJar(jar, AppExtension.class);
+        assertNotNull(loaded);
+        assertEquals("com.example.MyExtension", loaded.getClass().getName());
+    }
+
+    @Test
+    public void testClassLoaderStaysOpenWhileLoaded(@TempDir File dir) throws Exception {
+        buildExtensionJar(new File(dir, "ext.jar"), "MyExtension");
+        assertEquals(1, extManager.loadExtensions(dir, AppExtension.class, "Test app", "1.0"));
+        AppExtension extension = extManager.getLoadedExtension("com.example.MyExtension");
+        assertNotNull(extension.getClass().getClassLoader().getResource("ca/corbett/test/extInfo.json"));
+    }
+
+    @Test
+    public void testUnloadReleasesClassLoaders(@TempDir File dir) throws Exception {
+        buildExtensionJar(new File(dir, "ext.jar"), "MyExtension");
+        List<WeakReference<ClassLoader>> loaderRefs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            loaderRefs.add(loadAndUnload(dir));
+        }
+
+        // Give the garbage collector a chance to collect every one of those class loaders:
+        for (int attempt = 0; attempt < 50 && loaderRefs.stream().anyMatch(ref -> ref.get() != null); attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        for (WeakReference<ClassLoader> ref : loaderRefs) {
+            assertNull(ref.get());
+        }
+    }
+
+    private WeakReference<ClassLoader> loadAndUnload(File dir) {
+        assertEquals(1, extManager.loadExtensions(dir, AppExtension.class, "Test app", "1.0"));
+        AppExtension extension = extManager.getLoadedExtension("com.example.MyExtension");
+        WeakReference<ClassLoader> ref = new WeakReference<>(extension.getClass().getClassLoader());
+        assertTrue(extManager.unloadExtension("com.example.MyExtension"));
+        assertFalse(extManager.isExtensionLoaded("com.example.MyExtension"));
+        return ref;
+    }
+
+    private static long getActivationCount(ExtensionManager<?> manager, String className) {
+        ExtensionMetrics metrics = manager.getMetrics(className);
+        ExtensionMetrics.Operation operation = metrics == null ? null : metrics.getOperation(ExtensionMetrics.ON_ACTIVATE);
+        return operation == null ? 0 : operation.getInvocationCount();
+    }
+
+    private static List<CircuitBreaker.State> recordCircuitBreakerEvents(ExtensionManager<?> manager) {
+        List<CircuitBreaker.State> events = new CopyOnWriteArrayList<>();
+        manager.addExtensionManagerListener(new ExtensionManagerListener() {
+            @Override
+            public void circuitBreakerStateChanged(ExtensionManager<?> source, String className,
+                                                   CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+                events.add(newState);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Returns a builder for a jar holding a single extension, com.example.[name], with a matching extInfo.
+     */
+    private static TestJarBuilder extensionJar(String name) {
+        return new TestJarBuilder()
+                .addExtInfo(TestJarBuilder.extInfo(name, "1.0"))
+                .addExtension("com.example." + name, name, "1.0");
+    }
+
+    private static File buildExtensionJar(File jarFile, String name) throws Exception {
+        return extensionJar(name).build(jarFile);
+    }
+
+    /**
+     * Builds a jar holding the single extension com.example.[name], described by the given extInfo.
+     */
+    private static File buildExtensionJar(File jarFile, AppExtensionInfo extInfo) throws Exception {
+        String name = extInfo.getName();
+        return new TestJarBuilder()
+                .addExtInfo(extInfo)
+                .addExtension("com.example." + name, name, extInfo.getVersion())
+                .build(jarFile);
+    }
+
+    /**
+     * Builds a jar whose extInfo, named "Pair", declares the two extensions com.example.First and com.example.Second.
+     */
+    private static File buildPairJar(File jarFile) throws Exception {
+        return new TestJarBuilder()
+                .addExtInfo(TestJarBuilder.extInfoBuilder("Pair", "1.0")
+                                    .setExtensionClass("com.example.First")
+                                    .addExtensionClass("com.example.Second").build())
+                .addExtension("com.example.First", "First", "1.0")
+                .addExtension("com.example.Second", "Second", "1.0")
+                .build(jarFile);
+    }
+
+    private static TestJarBuilder twoExtensionJar() {
+        return new TestJarBuilder()
+                .addExtension("com.example.aaa.FirstExtension", "first", "1.0")
+                .addExtension("com.example.zzz.MyExtension", "ext", "1.0");
+    }
+
+    private static File buildOtherAppJar(File jarFile) throws Exception {
+        return new TestJarBuilder()
+                .addExtInfo(new AppExtensionInfo.Builder("Other").setVersion("1.0").setTargetAppName("Other app").build())
+                .build(jarFile);
+    }
+
+    private static File buildNonExtensionJar(File jarFile) throws Exception {
+        return new TestJarBuilder().addEntry("readme.txt", "hello").build(jarFile);
+    }
+
+    private static File buildWatchedJar(File staging, String version) throws Exception {
+        return new TestJarBuilder()
+                .addExtInfo(TestJarBuilder.extInfo("Watched", version))
+                .addExtension("com.example.Watched", "Watched", version)
+                .build(new File(staging, "ext-" + version + ".jar"));
+    }
+
+    private static void moveIntoPlace(File source, File target) throws Exception {
+        // Make sure the replacement looks different even on file systems with coarse timestamps:
+        assertTrue(source.setLastModified(System.currentTimeMillis() + (target.exists() ? 10_000 : 0)));
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for condition");
+            Thread.sleep(50);
+        }
+    }
+
     public static class AppExtensionImpl1 implements AppExtension {
 
         private final String name;
@@ -198,7 +1240,81 @@ public class ExtensionManagerTest {
         }
     }
 
+    public interface ExtraCapability {
+        String doSomethingExtra();
+    }
+
+    public static class AppExtensionImpl3 extends AppExtensionImpl1 implements ExtraCapability {
+
+        public AppExtensionImpl3(String name) {
+            super(name);
+        }
+
+        @Override
+        public String doSomethingExtra() {
+            return getName();
+        }
+    }
+
     public static class ExtensionManagerImpl extends ExtensionManager<AppExtension> {
     }
 
+    public static class OrderedExtension extends AppExtensionImpl1 {
+
+        private final AppExtensionInfo info;
+
+        public OrderedExtension(String name, String... activateAfter) {
+            super(name);
+            AppExtensionInfo.Builder builder = new AppExtensionInfo.Builder(name).setVersion("1.0");
+            for (String predecessor : activateAfter) {
+                builder.addActivateAfter(predecessor);
+            }
+            info = builder.build();
+        }
+
+        @Override
+        public AppExtensionInfo getInfo() {
+            return info;
+        }
+    }
+
+    public static class SlowExtension extends OrderedExtension {
+
+        private final long sleepMillis;
+
+        public SlowExtension(String name, long sleepMillis) {
+            super(name);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void onActivate() {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static class SlowExtension2 extends SlowExtension {
+        public SlowExtension2(String name, long sleepMillis) {
+            super(name, sleepMillis);
+        }
+    }
+
+    public static class FailingExtension extends OrderedExtension {
+        public FailingExtension(String name) {
+            super(name);
+        }
+
+        @Override
+        public void onActivate() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    public static class OrderedExtensionManager extends ExtensionManager<OrderedExtension> {
+    }
+
 }
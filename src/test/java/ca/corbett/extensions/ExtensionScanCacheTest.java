@@ -0,0 +1,169 @@
+package ca.corbett.extensions;
+
+import ca.corbett.extras.io.FileSystemUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExtensionScanCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void saveAndLoad_withEntries_shouldRoundTrip() throws Exception {
+        // GIVEN a cache with a positive and a negative entry:
+        File jar1 = new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext1", "1.0")).build(new File(tempDir, "ext1.jar"));
+        File jar2 = new TestJarBuilder().addEntry("readme.txt", "hello").build(new File(tempDir, "ext2.jar"));
+        ExtensionScanCache cache = ExtensionScanCache.forDirectory(tempDir);
+        cache.putExtInfo(jar1, TestJarBuilder.extInfo("ext1", "1.0"));
+        cache.putExtensionClassName(jar1, "com.example.Ext1");
+        cache.putExtInfo(jar2, null);
+
+        // WHEN we save it and load it into a fresh instance:
+        cache.save();
+        ExtensionScanCache reloaded = ExtensionScanCache.forDirectory(tempDir);
+
+        // THEN everything should come back:
+        assertTrue(reloaded.isCached(jar1));
+        assertEquals(TestJarBuilder.extInfo("ext1", "1.0"), reloaded.getExtInfo(jar1));
+        assertEquals("com.example.Ext1", reloaded.getExtensionClassName(jar1));
+        assertTrue(reloaded.isCached(jar2));
+        assertNull(reloaded.getExtInfo(jar2));
+    }
+
+    @Test
+    public void isCached_withModifiedJar_shouldBeInvalid() throws Exception {
+        File jar = new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext1", "1.0")).build(new File(tempDir, "ext1.jar"));
+        ExtensionScanCache cache = ExtensionScanCache.forDirectory(tempDir);
+        cache.putExtInfo(jar, TestJarBuilder.extInfo("ext1", "1.0"));
+        assertTrue(cache.isCached(jar));
+
+        // Rebuild the jar with different content:
+        new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext1-but-longer", "2.0")).build(jar);
+        jar.setLastModified(jar.lastModified() + 5000);
+
+        assertFalse(cache.isCached(jar));
+        assertNull(cache.getExtensionClassName(jar));
+    }
+
+    @Test
+    public void load_withCorruptCacheFile_shouldStartEmpty() throws Exception {
+        File jar = new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext1", "1.0")).build(new File(tempDir, "ext1.jar"));
+        FileSystemUtil.writeStringToFile("{ this is not [ valid json", new File(tempDir, ExtensionScanCache.DEFAULT_FILE_NAME));
+        ExtensionScanCache cache = ExtensionScanCache.forDirectory(tempDir);
+        assertFalse(cache.isCached(jar));
+    }
+
+    @Test
+    public void findCandidateExtensionJars_withScanCache_shouldNotReopenUnchangedJars() throws Exception {
+        // GIVEN a directory of extension jars that has already been scanned once:
+        for (int i = 0; i < 3; i++) {
+            new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext" + i, "1.0")).build(new File(tempDir, "ext" + i + ".jar"));
+        }
+        CountingExtensionManager extManager = new CountingExtensionManager();
+        extManager.setScanCache(ExtensionScanCache.forDirectory(tempDir));
+        assertEquals(3, extManager.findCandidateExtensionJars(tempDir, "Test app", "1.0").size());
+        assertEquals(3, extManager.extractCount);
+
+        // WHEN we scan again with a brand new manager and cache instance:
+        CountingExtensionManager extManager2 = new CountingExtensionManager();
+        extManager2.setScanCache(ExtensionScanCache.forDirectory(tempDir));
+
+        // THEN we should get the same answer without opening anything:
+        assertEquals(3, extManager2.findCandidateExtensionJars(tempDir, "Test app", "1.0").size());
+        assertEquals(0, extManager2.extractCount);
+    }
+
+    private static class CountingExtensionManager extends ExtensionManager<AppExtension> {
+        int extractCount;
+
+        @Override
+        public AppExtensionInfo extractExtInfo(File jarFile) {
+            extractCount++;
+            return super.extractExtInfo(jarFile);
+        }
+    }
+
+    @Test
+    public void load_withOlderFormatVersion_shouldStartEmpty() throws Exception {
+        // GIVEN a cache file that is otherwise valid, but was written by an older version:
+        File jar = new TestJarBuilder().addExtInfo(TestJarBuilder.extInfo("ext1", "1.0")).build(new File(tempDir, "ext1.jar"));
+        ExtensionScanCache writer = ExtensionScanCache.forDirectory(tempDir);
+        writer.putExtInfo(jar, TestJarBuilder.extInfo("ext1", "1.0"));
+        writer.putExtensionClassName(jar, "com.example.Ext1");
+        writer.save();
+        File cacheFile = new File(tempDir, ExtensionScanCache.DEFAULT_FILE_NAME);
+        String json = FileSystemUtil.readFileToString(cacheFile);
+        String current = "\"formatVersion\":" + ExtensionScanCache.FORMAT_VERSION;
+        assertTrue(json.contains(current));
+        FileSystemUtil.writeStringToFile(json.replace(current, "\"formatVersion\":1"), cacheFile);
+
+        // WHEN we load it / THEN it should be discarded:
+        ExtensionScanCache cache = ExtensionScanCache.forDirectory(tempDir);
+        assertFalse(cache.isCached(jar));
+        assertNull(cache.getExtensionClassName(jar));
+    }
+
+    @Test
+    public void putExtInfo_concurrentWithFirstLoad_shouldKeepEveryEntry() throws Exception {
+        // GIVEN a large cache file on disk (entries for files that don't exist are still "valid"
+        // here, since their size and timestamp of 0 don't change):
+        ExtensionScanCache writer = ExtensionScanCache.forDirectory(tempDir);
+        for (int i = 0; i < 5000; i++) {
+            writer.putExtInfo(new File(tempDir, "old" + i + ".jar"), TestJarBuilder.extInfo("old" + i, "1.0"));
+        }
+        writer.save();
+
+        // WHEN several threads start putting entries into a fresh instance at the same time:
+        ExtensionScanCache cache = ExtensionScanCache.forDirectory(tempDir);
+        int threadCount = 8;
+        int perThread = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                boolean isOldEntryVisible = cache.isCached(new File(tempDir, "old4999.jar"));
+                for (int i = 0; i < perThread; i++) {
+                    cache.putExtInfo(new File(tempDir, "new" + thread + "_" + i + ".jar"), null);
+                    cache.putExtInfo(new File(tempDir, "old" + (4999 - thread * perThread - i) + ".jar"), null);
+                }
+                return isOldEntryVisible;
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(30, TimeUnit.SECONDS), "a reader saw the cache before it was loaded");
+        }
+        executor.shutdown();
+
+        // THEN none of the new entries or overwrites should have been lost to the load:
+        for (int t = 0; t < threadCount; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(cache.isCached(new File(tempDir, "new" + t + "_" + i + ".jar")));
+                assertNull(cache.getExtInfo(new File(tempDir, "old" + (4999 - t * perThread - i) + ".jar")));
+            }
+        }
+        assertEquals(TestJarBuilder.extInfo("old0", "1.0"), cache.getExtInfo(new File(tempDir, "old0.jar")));
+
+        // THEN the cache should still know that it needs saving:
+        cache.save();
+        assertTrue(ExtensionScanCache.forDirectory(tempDir).isCached(new File(tempDir, "new7_199.jar")));
+    }
+}
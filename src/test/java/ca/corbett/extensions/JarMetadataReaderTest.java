@@ -0,0 +1,130 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JarMetadataReaderTest {
+
+    @Test
+    public void readExtInfoJson_shouldFindSameEntryAsJarFile(@TempDir File dir) throws Exception {
+        // GIVEN jars with their extInfo.json in each of the supported places, plus a shaded decoy:
+        String shaded = "com/example/shaded/extInfo.json";
+        File canonical = new TestJarBuilder()
+                .addEntry(shaded, TestJarBuilder.extInfo("Shaded", "9.0").toJson())
+                .addEntry(ExtensionManager.EXT_INFO_LOCATION, TestJarBuilder.extInfo("Canonical", "1.0").toJson())
+                .build(new File(dir, "canonical.jar"));
+        File declared = new TestJarBuilder()
+                .addManifestAttribute(ExtensionManager.MANIFEST_EXTENSION_INFO, "com/example/mine/extInfo.json")
+                .addEntry(shaded, TestJarBuilder.extInfo("Shaded", "9.0").toJson())
+                .addEntry("com/example/mine/extInfo.json", TestJarBuilder.extInfo("Declared", "1.0").toJson())
+                .build(new File(dir, "declared.jar"));
+        File legacy = new TestJarBuilder()
+                .addEntry("com/example/other.txt", "hello")
+                .addExtInfo(TestJarBuilder.extInfo("Legacy", "1.0"))
+                .build(new File(dir, "legacy.jar"));
+        File none = new TestJarBuilder()
+                .addEntry("com/example/other.txt", "hello")
+                .build(new File(dir, "none.jar"));
+        ExtensionManagerTest.ExtensionManagerImpl manager = new ExtensionManagerTest.ExtensionManagerImpl();
+
+        // WHEN we read them / THEN we should get what the JarFile path would have found:
+        for (File jar : new File[]{canonical, declared, legacy}) {
+            AppExtensionInfo expected = manager.extractExtInfo(jar);
+            assertEquals(expected, AppExtensionInfo.fromJson(JarMetadataReader.readExtInfoJson(jar)));
+        }
+        assertEquals("Canonical", AppExtensionInfo.fromJson(JarMetadataReader.readExtInfoJson(canonical)).getName());
+        assertEquals("Declared", AppExtensionInfo.fromJson(JarMetadataReader.readExtInfoJson(declared)).getName());
+        assertNull(JarMetadataReader.readExtInfoJson(none));
+    }
+
+    @Test
+    public void readExtInfoJson_withStoredEntry_shouldReadIt(@TempDir File dir) throws Exception {
+        // GIVEN a jar whose extInfo.json is stored rather than deflated:
+        byte[] json = TestJarBuilder.extInfo("Stored", "1.0").toJson().getBytes(StandardCharsets.UTF_8);
+        File jarFile = new File(dir, "stored.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            JarEntry entry = new JarEntry(ExtensionManager.EXT_INFO_LOCATION);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(json.length);
+            entry.setCompressedSize(json.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(json);
+            out.closeEntry();
+        }
+
+        // WHEN we read it:
+        String result = JarMetadataReader.readExtInfoJson(jarFile);
+
+        // THEN we should get it back unchanged:
+        assertEquals(new String(json, StandardCharsets.UTF_8), result);
+    }
+
+    @Test
+    public void readExtInfoJson_withNonZipFile_shouldThrow(@TempDir File dir) throws Exception {
+        // GIVEN a file that isn't a zip file at all:
+        File notAJar = new File(dir, "bogus.jar");
+        Files.writeString(notAJar.toPath(), "This is not a jar file, no matter what its name says.");
+
+        // WHEN we try to read it / THEN we should get an IOException, so callers can fall back:
+        assertThrows(IOException.class, () -> JarMetadataReader.readExtInfoJson(notAJar));
+    }
+
+    @Test
+    public void readExtInfoJson_withCorruptCentralDirectory_shouldThrowIOException(@TempDir File dir) throws Exception {
+        // GIVEN jars whose central directory records point past the end of the directory:
+        File jarFile = new TestJarBuilder()
+                .addEntry("com/example/other.txt", "hello")
+                .addEntry(ExtensionManager.EXT_INFO_LOCATION, TestJarBuilder.extInfo("Corrupt", "1.0").toJson())
+                .build(new File(dir, "corrupt.jar"));
+        byte[] bytes = Files.readAllBytes(jarFile.toPath());
+        int cen = lastIndexOf(bytes, new byte[]{'P', 'K', 1, 2});
+        byte[] badName = bytes.clone();
+        badName[cen + 28] = (byte)0xFF; // file name length
+        badName[cen + 29] = (byte)0xFF;
+        File badNameJar = new File(dir, "badName.jar");
+        Files.write(badNameJar.toPath(), badName);
+        byte[] badOffset = bytes.clone();
+        badOffset[cen + 45] = (byte)0x7F; // local header offset
+        File badOffsetJar = new File(dir, "badOffset.jar");
+        Files.write(badOffsetJar.toPath(), badOffset);
+        ExtensionManagerTest.ExtensionManagerImpl manager = new ExtensionManagerTest.ExtensionManagerImpl();
+
+        // WHEN we read them / THEN we should get an IOException, not a runtime exception:
+        assertThrows(IOException.class, () -> JarMetadataReader.readExtInfoJson(badNameJar));
+        assertThrows(IOException.class, () -> JarMetadataReader.readExtInfoJson(badOffsetJar));
+
+        // THEN extractExtInfo should quietly fall back to JarFile, rather than throw:
+        manager.extractExtInfo(badNameJar);
+        manager.extractExtInfo(badOffsetJar);
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] pattern) {
+        for (int i = bytes.length - pattern.length; i >= 0; i--) {
+            boolean isMatch = true;
+            for (int j = 0; j < pattern.length && isMatch; j++) {
+                isMatch = bytes[i + j] == pattern[j];
+            }
+            if (isMatch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
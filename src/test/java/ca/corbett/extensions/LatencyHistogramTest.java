@@ -0,0 +1,74 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_shouldRoundTripWithinPrecision() {
+        long[] values = {0, 1, 63, 64, 65, 1000, 123_456, 987_654_321L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(upper >= value, "Upper bound " + upper + " below " + value);
+            assertTrue(upper - value <= value / 32, "Upper bound " + upper + " too far above " + value);
+        }
+    }
+
+    @Test
+    public void getValueAtPercentile_withUniformValues_shouldBeWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 0.001);
+        assertWithinPercent(5_000_000, histogram.getValueAtPercentile(50), 3);
+        assertWithinPercent(9_900_000, histogram.getValueAtPercentile(99), 3);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void getValueAtPercentile_withNoValues_shouldReturnZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void record_fromManyThreads_shouldCountEverything() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(49_999, histogram.getMax());
+    }
+
+    private static void assertWithinPercent(long expected, long actual, double percent) {
+        assertTrue(Math.abs(actual - expected) <= expected * percent / 100.0,
+                "Expected " + actual + " to be within " + percent + "% of " + expected);
+    }
+}
@@ -0,0 +1,210 @@
+package ca.corbett.extensions;
+
+import ca.corbett.extras.properties.AbstractProperty;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test utility for building extension jar files on the fly. Java sources added here
+ * are compiled at test time, so the resulting classes are NOT visible on the test
+ * classpath, and can only be reached through the class loader that loads the jar.
+ *
+ * @author scorbo2
+ */
+public class TestJarBuilder {
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private final Map<String, String> manifestAttributes = new LinkedHashMap<>();
+    private final List<String> excludedEntries = new ArrayList<>();
+
+    public TestJarBuilder addEntry(String name, String content) {
+        entries.put(name, content.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * Bundles a copy of the given class's own class file into the jar, the way a careless
+     * extension build might bundle a copy of its dependencies.
+     */
+    public TestJarBuilder addClassFileCopy(Class<?> clazz) throws IOException {
+        String name = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Unable to find class file for " + clazz.getName());
+            }
+            entries.put(name, in.readAllBytes());
+        }
+        return this;
+    }
+
+    public TestJarBuilder addExtInfo(AppExtensionInfo info) {
+        return addEntry("ca/corbett/test/extInfo.json", info.toJson());
+    }
+
+    public TestJarBuilder addSource(String className, String source) {
+        sources.put(className, source);
+        return this;
+    }
+
+    /**
+     * Adds a trivial extension class (see extensionSource) to the jar.
+     */
+    public TestJarBuilder addExtension(String className, String extInfoName, String version) {
+        return addSource(className, extensionSource(className, extInfoName, version));
+    }
+
+    public TestJarBuilder addManifestAttribute(String name, String value) {
+        manifestAttributes.put(name, value);
+        return this;
+    }
+
+    /**
+     * Leaves the named entry out of the jar - handy for simulating broken classes whose
+     * dependencies are missing.
+     */
+    public TestJarBuilder excludeEntry(String name) {
+        excludedEntries.add(name);
+        return this;
+    }
+
+    public File build(File jarFile) throws IOException {
+        Map<String, byte[]> allEntries = new LinkedHashMap<>(compileSources());
+        allEntries.putAll(entries);
+        allEntries.keySet().removeAll(excludedEntries);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (Map.Entry<String, String> attr : manifestAttributes.entrySet()) {
+            manifest.getMainAttributes().putValue(attr.getKey(), attr.getValue());
+        }
+        try (OutputStream out = new FileOutputStream(jarFile);
+             JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            for (Map.Entry<String, byte[]> entry : allEntries.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey()));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+    /**
+     * Generates java source for a trivial extension with the given fully qualified class name.
+     */
+    public static String extensionSource(String className, String extInfoName, String version) {
+        int lastDot = className.lastIndexOf('.');
+        String pkg = className.substring(0, lastDot);
+        String simpleName = className.substring(lastDot + 1);
+        return "package " + pkg + ";\n"
+                + "import ca.corbett.extensions.AppExtension;\n"
+                + "import ca.corbett.extensions.AppExtensionInfo;\n"
+                + "import ca.corbett.extras.properties.AbstractProperty;\n"
+                + "import java.util.List;\n"
+                + "public class " + simpleName + " implements AppExtension {\n"
+                + "  public AppExtensionInfo getInfo() {\n"
+                + "    return new AppExtensionInfo.Builder(\"" + extInfoName + "\").setVersion(\"" + version + "\")"
+                + ".setTargetAppName(\"Test app\").setTargetAppVersion(\"1.0\").build();\n"
+                + "  }\n"
+                + "  public List<AbstractProperty> getConfigProperties() { return null; }\n"
+                + "  public void onActivate() { }\n"
+                + "  public void onDeactivate() { }\n"
+                + "}\n";
+    }
+
+    public static AppExtensionInfo extInfo(String name, String version) {
+        return extInfoBuilder(name, version).build();
+    }
+
+    /**
+     * Returns a Builder for an extInfo that targets our "Test app", for tests that need more than extInfo() gives.
+     */
+    public static AppExtensionInfo.Builder extInfoBuilder(String name, String version) {
+        return new AppExtensionInfo.Builder(name)
+                .setVersion(version)
+                .setTargetAppName("Test app")
+                .setTargetAppVersion("1.0");
+    }
+
+    private Map<String, byte[]> compileSources() throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        if (sources.isEmpty()) {
+            return classes;
+        }
+        Path workDir = Files.createTempDirectory("testjar");
+        try {
+            return compileSources(workDir, classes);
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private Map<String, byte[]> compileSources(Path workDir, Map<String, byte[]> classes) throws IOException {
+        Path srcDir = workDir.resolve("src");
+        Path outDir = workDir.resolve("classes");
+        Files.createDirectories(outDir);
+        List<String> args = new ArrayList<>();
+        args.add("-d");
+        args.add(outDir.toString());
+        args.add("-classpath");
+        args.add(buildClasspath());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Path srcFile = srcDir.resolve(source.getKey().replace('.', '/') + ".java");
+            Files.createDirectories(srcFile.getParent());
+            Files.write(srcFile, source.getValue().getBytes(StandardCharsets.UTF_8));
+            args.add(srcFile.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler.run(null, null, null, args.toArray(new String[0])) != 0) {
+            throw new IOException("Unable to compile test sources.");
+        }
+        try (Stream<Path> stream = Files.walk(outDir)) {
+            for (Path classFile : stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                String entryName = outDir.relativize(classFile).toString().replace(File.separatorChar, '/');
+                classes.put(entryName, Files.readAllBytes(classFile));
+            }
+        }
+        return classes;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static String buildClasspath() throws IOException {
+        try {
+            // We need our own classes plus swing-extras for AbstractProperty:
+            return locationOf(AppExtension.class) + File.pathSeparator + locationOf(AbstractProperty.class);
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String locationOf(Class<?> clazz) throws URISyntaxException {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+}
@@ -0,0 +1,68 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VersionRangeTest {
+
+    @Test
+    public void parse_withBareVersion_shouldMeanThatOrNewer() {
+        VersionRange range = VersionRange.parse("1.9");
+        assertTrue(range.contains(Version.parse("1.9")));
+        assertTrue(range.contains(Version.parse("1.10")));
+        assertTrue(range.contains(Version.parse("3.0")));
+        assertFalse(range.contains(Version.parse("1.8.9")));
+    }
+
+    @Test
+    public void parse_withIntervalNotation_shouldRespectBrackets() {
+        VersionRange range = VersionRange.parse("[1.9,2.0)");
+        assertTrue(range.contains(Version.parse("1.9")));
+        assertTrue(range.contains(Version.parse("1.12.3")));
+        assertFalse(range.contains(Version.parse("2.0")));
+        assertFalse(range.contains(Version.parse("1.8")));
+
+        VersionRange open = VersionRange.parse("(1.9,2.0]");
+        assertFalse(open.contains(Version.parse("1.9")));
+        assertTrue(open.contains(Version.parse("2")));
+
+        assertTrue(VersionRange.parse("(,2.0)").contains(Version.parse("0.1")));
+        assertTrue(VersionRange.parse("[1.5,)").contains(Version.parse("99")));
+        assertTrue(VersionRange.parse("[1.5]").contains(Version.parse("1.5.0")));
+        assertFalse(VersionRange.parse("[1.5]").contains(Version.parse("1.5.1")));
+    }
+
+    @Test
+    public void parse_withCaret_shouldStopBeforeNextMajorVersion() {
+        VersionRange range = VersionRange.parse("^1.9");
+        assertTrue(range.contains(Version.parse("1.9")));
+        assertTrue(range.contains(Version.parse("1.99")));
+        assertFalse(range.contains(Version.parse("2.0")));
+        assertFalse(range.contains(Version.parse("1.8")));
+
+        VersionRange zeroMajor = VersionRange.parse("^0.3");
+        assertTrue(zeroMajor.contains(Version.parse("0.3.5")));
+        assertFalse(zeroMajor.contains(Version.parse("0.4")));
+    }
+
+    @Test
+    public void intersects_shouldDetectOverlap() {
+        VersionRange app = VersionRange.parse("[2.0,3.0)");
+        assertTrue(app.intersects(VersionRange.exactly(Version.parse("2.5"))));
+        assertTrue(app.intersects(VersionRange.parse("[2.9,4)")));
+        assertFalse(app.intersects(VersionRange.parse("^1.5")));
+        assertFalse(app.intersects(VersionRange.parse("[3.0,)")));
+        assertTrue(app.intersects(VersionRange.parse("(,2.0]")));
+        assertFalse(app.intersects(VersionRange.parse("(,2.0)")));
+    }
+
+    @Test
+    public void parse_withInvalidRange_shouldThrow() {
+        for (String bad : new String[]{"", "[", "[1.0,2.0", "(1.0)", "[2.0,1.0]", "[1,2,3]", "^", "[1.x,2]"}) {
+            assertThrows(IllegalArgumentException.class, () -> VersionRange.parse(bad), bad);
+        }
+    }
+}
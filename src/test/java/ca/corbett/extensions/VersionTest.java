@@ -0,0 +1,47 @@
+package ca.corbett.extensions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VersionTest {
+
+    @Test
+    public void compareTo_shouldCompareSegmentsNumerically() {
+        assertTrue(Version.parse("1.10").isNewerThan(Version.parse("1.9")));
+        assertTrue(Version.parse("2.1.3").isNewerThan(Version.parse("2.1")));
+        assertTrue(Version.parse("1.0").isOlderThan(Version.parse("1.0.1")));
+        assertEquals(Version.parse("2"), Version.parse("2.0.0"));
+        assertEquals(Version.parse("2").hashCode(), Version.parse("2.0.0").hashCode());
+        assertEquals(0, Version.parse("v1.2").compareTo(Version.parse("1.2+build.7")));
+    }
+
+    @Test
+    public void compareTo_withQualifiers_shouldPutPreReleasesFirst() {
+        // GIVEN versions in ascending order, as given by the semantic versioning spec:
+        String[] ordered = {"1.0-alpha", "1.0-alpha.1", "1.0-alpha.beta", "1.0-beta", "1.0-beta.2",
+                "1.0-beta.11", "1.0-rc.1", "1.0"};
+
+        // WHEN we compare each one with the next / THEN each should be older:
+        for (int i = 0; i < ordered.length - 1; i++) {
+            assertTrue(Version.parse(ordered[i]).isOlderThan(Version.parse(ordered[i + 1])),
+                       ordered[i] + " should be older than " + ordered[i + 1]);
+        }
+    }
+
+    @Test
+    public void parse_withInvalidVersion_shouldThrow() {
+        for (String bad : new String[]{"", "1..2", "1.x", "1.0-", "abc", "1.2.", "99999999999"}) {
+            assertThrows(IllegalArgumentException.class, () -> Version.parse(bad), bad);
+        }
+    }
+
+    @Test
+    public void increment_shouldBumpTheGivenSegment() {
+        assertEquals(Version.parse("2"), Version.parse("1.9.2").increment(1));
+        assertEquals(Version.parse("1.10"), Version.parse("1.9.2").increment(2));
+        assertEquals("0.4", Version.parse("0.3").increment(2).toString());
+    }
+}
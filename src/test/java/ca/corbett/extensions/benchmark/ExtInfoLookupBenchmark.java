@@ -0,0 +1,118 @@
+package ca.corbett.extensions.benchmark;
+
+import ca.corbett.extensions.AppExtension;
+import ca.corbett.extensions.AppExtensionInfo;
+import ca.corbett.extensions.ExtensionManager;
+import ca.corbett.extensions.TestJarBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Measures the cost of ExtensionManager.findExtInfoEntry() on an already open JarFile for a
+ * large ("fat") jar, with the extInfo.json at the canonical location (a direct getJarEntry()
+ * lookup), versus somewhere else in the jar (which falls back to enumerating every entry).
+ * The extInfo.json is written last in both jars, as a shaded build would typically do, so the
+ * fallback walks the whole jar. The jars are opened once up front, so that the cost of opening
+ * them (which is the same either way) doesn't drown out the lookup itself. Note that
+ * extractExtInfo() doesn't normally get this far, since JarMetadataReader handles most jars
+ * without a JarFile.
+ * <p>
+ * This isn't run as part of the unit tests. Run it from the test classpath with
+ * the main method here, or with the JMH runner of your choice.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtInfoLookupBenchmark {
+
+    @Param({"1000", "20000"})
+    public int entryCount;
+
+    private File tempDir;
+    private File canonicalJar;
+    private File scannedJar;
+    private JarFile canonicalJarFile;
+    private JarFile scannedJarFile;
+    private LookupExtensionManager extManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("extInfoLookup").toFile();
+        String json = new AppExtensionInfo.Builder("Benchmark").setVersion("1.0").build().toJson();
+        canonicalJar = fatJar().addEntry(ExtensionManager.EXT_INFO_LOCATION, json)
+                               .build(new File(tempDir, "canonical.jar"));
+        scannedJar = fatJar().addEntry("com/example/benchmark/extInfo.json", json)
+                             .build(new File(tempDir, "scanned.jar"));
+        canonicalJarFile = new JarFile(canonicalJar);
+        scannedJarFile = new JarFile(scannedJar);
+        extManager = new LookupExtensionManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        canonicalJarFile.close();
+        scannedJarFile.close();
+        canonicalJar.delete();
+        scannedJar.delete();
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public JarEntry canonicalLocation() throws IOException {
+        return extManager.lookUp(canonicalJarFile);
+    }
+
+    @Benchmark
+    public JarEntry enumerateEntries() throws IOException {
+        return extManager.lookUp(scannedJarFile);
+    }
+
+    private TestJarBuilder fatJar() {
+        TestJarBuilder builder = new TestJarBuilder();
+        for (int i = 0; i < entryCount; i++) {
+            builder.addEntry("com/example/library/package" + (i / 100) + "/Resource" + i + ".txt", "x");
+        }
+        return builder;
+    }
+
+    /**
+     * Just here to get at the protected findExtInfoEntry().
+     */
+    private static class LookupExtensionManager extends ExtensionManager<AppExtension> {
+        JarEntry lookUp(JarFile jar) throws IOException {
+            return findExtInfoEntry(jar);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExtInfoLookupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package ca.corbett.extensions.benchmark;
+
+import ca.corbett.extensions.AppExtensionInfo;
+import ca.corbett.extensions.AppExtensionInfoTypeAdapter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing extInfo.json documents with AppExtensionInfo.fromJson(), which uses the
+ * hand-written AppExtensionInfoTypeAdapter, against Gson's reflective binding. The batch
+ * benchmarks parse the whole batch of documents with an already warmed up Gson, and the
+ * "firstUse" benchmarks parse a single document with a brand new Gson, which is where
+ * reflective binding pays for inspecting the classes.
+ * <p>
+ * Expect the batch benchmarks to come out about even: once Gson is warmed up, the time goes into
+ * tokenizing the json, which both approaches share. The adapter's advantage is at first use
+ * (several times faster), and in not needing reflective access to AppExtensionInfo at all.
+ * </p>
+ * <p>
+ * This isn't run as part of the unit tests. Run it from the test classpath with
+ * the main method here, or with the JMH runner of your choice.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtInfoParseBenchmark {
+
+    private static final int DOCUMENT_COUNT = 5000;
+
+    private String[] documents;
+    private Gson reflectiveGson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        documents = new String[DOCUMENT_COUNT];
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            documents[i] = new AppExtensionInfo.Builder("Extension " + i)
+                    .setVersion("1." + i)
+                    .setAuthor("Author " + (i % 20))
+                    .setTargetAppName("Benchmark app")
+                    .setTargetAppVersion("2.0")
+                    .setShortDescription("Extension number " + i)
+                    .setLongDescription("A somewhat longer description of extension number " + i + ". ".repeat(10))
+                    .setReleaseNotes("1." + i + " - fixed some things\n1.0 - initial release")
+                    .addCustomField("homepage", "https://example.com/ext" + i)
+                    .addCustomField("license", "MIT")
+                    .setExtensionClass("com.example.ext" + i + ".Extension")
+                    .addDependency("Extension " + (i / 2), "1.0")
+                    .build()
+                    .toJson();
+        }
+        reflectiveGson = new GsonBuilder().create();
+    }
+
+    @Benchmark
+    public void typeAdapter(Blackhole blackhole) {
+        for (String json : documents) {
+            blackhole.consume(AppExtensionInfo.fromJson(json));
+        }
+    }
+
+    @Benchmark
+    public void reflection(Blackhole blackhole) {
+        for (String json : documents) {
+            blackhole.consume(reflectiveGson.fromJson(json, AppExtensionInfo.class));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AppExtensionInfo typeAdapterFirstUse() {
+        Gson gson = new GsonBuilder().registerTypeAdapter(AppExtensionInfo.class, new AppExtensionInfoTypeAdapter()).create();
+        return gson.fromJson(documents[0], AppExtensionInfo.class);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AppExtensionInfo reflectionFirstUse() {
+        return new GsonBuilder().create().fromJson(documents[0], AppExtensionInfo.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExtInfoParseBenchmark.class.getSimpleName()).build()).run();
+    }
+}